@@ -1,43 +1,73 @@
 package activities;
 
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.embed.swing.SwingFXUtils;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.geometry.Insets;
 import javafx.geometry.Orientation;
 import javafx.geometry.Pos;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Node;
 import javafx.scene.control.Button;
 import javafx.scene.control.*;
 import javafx.scene.control.Label;
+import javafx.scene.control.MenuItem;
 import javafx.scene.control.TextField;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.layout.TilePane;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
+import javafx.stage.Screen;
 import javafx.stage.Stage;
+import utils.DirectoryWatcher;
+import utils.ImageDecoder;
+import utils.ImageDiscovery;
 import utils.ImageFileOperations;
+import utils.PerceptualHash;
+import utils.PerceptualHashJob;
 import gui.StageManager;
+import model.MutationJournal.Mutation;
 import model.StateManager;
 import model.ImageFile;
+import model.ImageQuery;
 import model.Tag;
 import model.UserTagData;
 import org.brunocvcunha.instagram4j.Instagram4j;
 import org.brunocvcunha.instagram4j.requests.InstagramUploadPhotoRequest;
 import gui.ConfigureJFXControl;
 import gui.Dialogs;
+import utils.ImageTypeDetector;
 import utils.SearchBars;
+import utils.ThumbnailCache;
+import utils.ThumbnailLoader;
+import utils.WeightedLruCache;
+import utils.TrigramIndex;
 
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import static gui.Dialogs.turnOffLog4J;
 import static gui.PrimaryStageManager.getPrimaryStageManager;
@@ -105,10 +135,10 @@ public class BrowseImageFilesViewController implements Initializable {
     TextField imageSearchBar;
 
     /**
-     * Displays all image files in side bar
+     * Displays all image files in side bar. Only the tiles in view have nodes, which are reused as the list scrolls.
      */
     @FXML
-    TilePane imageTilePane;
+    ListView<ImageFile> imageTilePane;
 
 
     /**
@@ -160,8 +190,18 @@ public class BrowseImageFilesViewController implements Initializable {
     @FXML
     Button viewParentButton;
 
+    /**
+     * Stops fetching the images of a large directory.
+     */
+    @FXML
+    Button stopScanButton;
+
+    /**
+     * Shows the images that have near duplicates, grouped together.
+     */
+    @FXML
+    Button findDuplicatesButton;
 
-    private Label selectedImageLabel;
 
     /**
      * Store the image files names as an observable list
@@ -173,6 +213,92 @@ public class BrowseImageFilesViewController implements Initializable {
      */
     private static File targetDirectory;
 
+    /**
+     * Watches the selected directory for changes made outside the program.
+     */
+    private static DirectoryWatcher directoryWatcher;
+
+    /**
+     * Fetches the images of the selected directory in the background.
+     */
+    private static ImageDiscovery discovery;
+
+    /**
+     * Hashes the images of the selected directory in the background once they are fetched, for finding near
+     * duplicates.
+     */
+    private static PerceptualHashJob hashJob;
+
+    /**
+     * Passes the images found by the discovery to the browse screen shown.
+     */
+    private static final ImageDiscovery.Listener DISCOVERY_LISTENER = new ImageDiscovery.Listener() {
+        @Override
+        public void imagesFound(List<ImageFile> imageFiles) {
+            if (shownController != null) {
+                for (ImageFile imageFile : imageFiles) {
+                    shownController.imageFileFound(imageFile);
+                }
+            }
+        }
+
+        @Override
+        public void finished(boolean cancelled) {
+            if (shownController != null) {
+                shownController.discoveryFinished(cancelled);
+            }
+        }
+    };
+
+    /**
+     * The controller of the browse screen shown most recently, which is told about changes to the directory.
+     */
+    private static BrowseImageFilesViewController shownController;
+
+    /**
+     * Loads the thumbnails of the tiles in the background, those nearest the tiles in view first.
+     */
+    private static final ThumbnailLoader<Image> THUMBNAIL_LOADER = new ThumbnailLoader<>(
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 2),
+            BrowseImageFilesViewController::loadThumbnail, Platform::runLater);
+
+    /**
+     * The full-size images shown or prefetched recently, up to a budget of decoded pixel data in megabytes set with
+     * the cheaptags.imageCacheMb system property.
+     */
+    private static final WeightedLruCache<String, Image> FULL_IMAGE_CACHE = new WeightedLruCache<>(
+            Long.getLong("cheaptags.imageCacheMb", 256) * 1024 * 1024,
+            image -> (long) image.getWidth() * (long) image.getHeight() * 4);
+
+    /**
+     * Decodes full-size images in the background.
+     */
+    private static final ExecutorService FULL_IMAGE_DECODER = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "full-image-decoder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The callbacks waiting for each full-size image being decoded, by cache key. Only used on the JavaFX
+     * application thread.
+     */
+    private static final HashMap<String, ArrayList<Consumer<Image>>> PENDING_FULL_IMAGES = new HashMap<>();
+
+    /**
+     * The thumbnails shown on tiles recently, by image, up to a budget of decoded pixel data in megabytes set with
+     * the cheaptags.tileCacheMb system property. A search that shows an image again reuses its thumbnail instead of
+     * loading it again.
+     */
+    private static final WeightedLruCache<ImageFile, Image> TILE_THUMBNAILS = new WeightedLruCache<>(
+            Long.getLong("cheaptags.tileCacheMb", 128) * 1024 * 1024,
+            image -> (long) image.getWidth() * (long) image.getHeight() * 4);
+
+    /**
+     * The images on the tile pane, in order.
+     */
+    private final ObservableList<ImageFile> tileImageFiles = FXCollections.observableArrayList();
+
     /**
      * Store available tag options in an observable list
      */
@@ -193,6 +319,16 @@ public class BrowseImageFilesViewController implements Initializable {
      */
     private boolean unsavedChanges = false;
 
+    /**
+     * The number of search results added to the tile pane at a time.
+     */
+    private static final int SEARCH_RESULT_BATCH_SIZE = 50;
+
+    /**
+     * Counts the searches made, so results of an old search stop being added once a new one starts.
+     */
+    private int searchGeneration;
+
     /**
      * Use to prepare for image search by regex
      */
@@ -206,6 +342,7 @@ public class BrowseImageFilesViewController implements Initializable {
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
+        shownController = this;
 
         // Enable listviews to be able to display objects with the same type as their type parameter
         ConfigureJFXControl.setListViewToDisplayCustomObjects(existingTags);
@@ -221,11 +358,17 @@ public class BrowseImageFilesViewController implements Initializable {
 
         imageNames = StateManager.sessionData.getImageFileNames();
 
-        imageTilePane.setOrientation(Orientation.HORIZONTAL);
-        imageTilePane.setVgap(0);
+        // Thumbnails still loading for the previous screen are not needed anymore
+        THUMBNAIL_LOADER.cancelAll();
+        imageTilePane.setItems(tileImageFiles);
+        imageTilePane.setCellFactory(listView -> new ImageTileCell());
+        imageTilePane.skinProperty().addListener((observable, oldSkin, newSkin) -> watchTilePaneScrolling());
+        imageTilePane.addEventFilter(KeyEvent.KEY_PRESSED, this::reviewKeyPressed);
+        imageNamesListView.addEventFilter(KeyEvent.KEY_PRESSED, this::reviewKeyPressed);
         populateImageTilePane();
 
         rename.setDisable(true);
+        stopScanButton.setVisible(discovery != null && !discovery.isFinished());
         System.out.println(imageSearchPatternEnd);
     }
 
@@ -240,8 +383,7 @@ public class BrowseImageFilesViewController implements Initializable {
         if (imageNamesListView.getItems().indexOf(selectedImage) > -1) {
             selectedImageFile = StateManager.sessionData.getImageFileWithName(selectedImage);
             if (selectedImageFile != null) {
-                Image image = new Image(selectedImageFile.getThisFile().toURI().toString());
-                selectedImageView.setImage(image);
+                showSelectedImage();
                 nameOfSelectedFile.setText(selectedImageFile.getCurrentName());
                 populateImageFileTagListViews();
             }
@@ -261,7 +403,7 @@ public class BrowseImageFilesViewController implements Initializable {
             Dialogs.showErrorAlert("Error", "Nothing selected", "No image file has been selected yet. Please select a image file first.");
 
         } else if (allTagsListView.getItems().indexOf(selectedTag) > -1) {
-            if (selectedImageFile.getTagList().contains(selectedTag)) {
+            if (selectedImageFile.hasTag(selectedTag)) {
                 Dialogs.showErrorAlert("Error", "", "The selected file already contains this tag.");
             } else {
                 availableTagOptions.remove(selectedTag);
@@ -308,9 +450,7 @@ public class BrowseImageFilesViewController implements Initializable {
 
             StringBuilder sb = new StringBuilder();
 
-            selectedImageFile.getTagList().clear(); //clear all tags, since .addAll adds everything again.
-
-            selectedImageFile.getTagList().addAll(existingTagsOnImageFile);
+            selectedImageFile.setTags(existingTagsOnImageFile);
             for (Tag tag : existingTagsOnImageFile) {
                 sb.append("@").append(tag).append(" ");
             }
@@ -320,6 +460,7 @@ public class BrowseImageFilesViewController implements Initializable {
                 imageNamesObservable.remove(selectedImageFile.getCurrentName());
             }
             selectedImageFile = ImageFileOperations.renameImageFile(selectedImageFile, sb.toString());
+            StateManager.recordTagChange(selectedImageFile);
 
             unsavedChanges = false;
             rename.setDisable(true);
@@ -331,10 +472,7 @@ public class BrowseImageFilesViewController implements Initializable {
             if (imageNamesObservable != null) {
                 imageNamesObservable.add(selectedImageFile.getCurrentName());
             }
-            for (Tag i : selectedImageFile.getTagList()) {
-                i.images.add(selectedImageFile);
-            }
-            selectedImageLabel.setText(selectedImageFile.getCurrentName());
+            imageTilePane.refresh();
         }
     }
 
@@ -409,8 +547,179 @@ public class BrowseImageFilesViewController implements Initializable {
      */
     static void setNewTargetDirectory(File directory) {
         StateManager.userData.addPathToVisitedList(directory.getAbsolutePath());
-        StateManager.sessionData.startNewSession(directory);
+        StateManager.recordMutation(Mutation.VISIT_PATH, directory.getAbsolutePath());
         targetDirectory = directory;
+        watchTargetDirectory();
+        discoverImages();
+    }
+
+    /**
+     * Start a new session for the selected directory, whose images are shown as they are found.
+     */
+    private static void discoverImages() {
+        if (discovery != null) {
+            discovery.cancel();
+        }
+        if (hashJob != null) {
+            hashJob.cancel();
+            hashJob = null;
+        }
+        discovery = StateManager.sessionData.startNewSession(targetDirectory);
+        discovery.setListener(DISCOVERY_LISTENER);
+    }
+
+    /**
+     * Handles the click on the stop scanning button. The images found so far stay on the screen.
+     */
+    @FXML
+    public void stopScanButtonClick() {
+        if (discovery != null) {
+            discovery.cancel();
+        }
+    }
+
+    /**
+     * Hide the stop scanning button once the images are fetched, and go back home if there were none. Otherwise
+     * start hashing the images that were not hashed before.
+     *
+     * @param cancelled whether the fetching was stopped
+     */
+    private void discoveryFinished(boolean cancelled) {
+        stopScanButton.setVisible(false);
+        if (!cancelled && StateManager.sessionData.getNameToImageFileMap().isEmpty()) {
+            Dialogs.showErrorAlert("No Files to Load", "Uh oh!", "We didn't find any image files" +
+                    " in the directory you loaded. Please select another");
+            getPrimaryStageManager().setScreen("Cheap Tags", "/activities/home_screen_view.fxml");
+        } else if (!cancelled) {
+            hashJob = new PerceptualHashJob(StateManager.sessionData.getNameToImageFileMap().values(),
+                    Platform::runLater);
+            hashJob.start();
+        }
+    }
+
+    /**
+     * Handles the click on the find duplicates button. Shows each group of near duplicates in the directory
+     * together, largest group first. Images still being hashed are left out.
+     */
+    @FXML
+    public void findDuplicatesButtonClick() {
+        searchGeneration++;
+        imageSearchBar.setText("is:duplicate");
+        ArrayList<ImageFile> duplicates = new ArrayList<>();
+        for (int[] cluster : StateManager.userData.getPerceptualHashIndex().cluster(
+                StateManager.sessionData.getTagIndex().getAllImageIds(), PerceptualHash.NEAR_DUPLICATE_DISTANCE)) {
+            for (int imageId : cluster) {
+                ImageFile imageFile = StateManager.userData.getImageFileWithId(imageId);
+                if (imageFile != null) {
+                    duplicates.add(imageFile);
+                }
+            }
+        }
+        tileImageFiles.setAll(duplicates);
+    }
+
+    /**
+     * Show the near duplicates of an image.
+     *
+     * @param imageFile the image
+     */
+    private void findNearDuplicates(ImageFile imageFile) {
+        imageSearchBar.setText("similar:\"" + imageFile.getCurrentName() + "\"");
+        imageSearchTextChanged();
+    }
+
+    /**
+     * Watch the selected directory, turning files created and deleted outside the program into changes to the
+     * session and the tile pane.
+     */
+    private static void watchTargetDirectory() {
+        if (directoryWatcher != null) {
+            directoryWatcher.close();
+        }
+        // The listener runs on the watcher thread, so a new file is read there and only the model is updated on the
+        // JavaFX application thread
+        directoryWatcher = new DirectoryWatcher(targetDirectory, Runnable::run, new DirectoryWatcher.Listener() {
+            @Override
+            public void fileCreated(File file, BasicFileAttributes attributes) {
+                ImageFileOperations.CreatedImage createdImage = ImageFileOperations.inspectCreatedFile(file,
+                        attributes);
+                if (createdImage == null) {
+                    return;
+                }
+                Platform.runLater(() -> {
+                    ImageFile imageFile = ImageFileOperations.fetchCreatedImageFile(createdImage);
+                    if (imageFile != null && shownController != null) {
+                        shownController.imageFileFound(imageFile);
+                    }
+                });
+            }
+
+            @Override
+            public void fileDeleted(File file) {
+                Platform.runLater(() -> {
+                    for (ImageFile imageFile : ImageFileOperations.removeDeletedImageFiles(file)) {
+                        if (shownController != null) {
+                            shownController.imageFileDeleted(imageFile);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void overflowed() {
+                Platform.runLater(() -> {
+                    discoverImages();
+                    if (shownController != null) {
+                        shownController.refreshImageTilePane();
+                    }
+                });
+            }
+        });
+        try {
+            directoryWatcher.start();
+        } catch (IOException e) {
+            // Browse without watching; re-entering the directory still picks up changes
+            e.printStackTrace();
+            directoryWatcher = null;
+        }
+    }
+
+    /**
+     * Show an image that was found in the selected directory, or added to it outside the program.
+     *
+     * @param imageFile the ImageFile of the image
+     */
+    private void imageFileFound(ImageFile imageFile) {
+        imageNames.add(imageFile.getCurrentName());
+        if (imageNamesObservable != null) {
+            imageNamesObservable.add(imageFile.getCurrentName());
+        }
+        if (imageSearchBar.getText().isEmpty()) {
+            addImageToTilePane(imageFile);
+        }
+    }
+
+    /**
+     * Stop showing an image that was removed from the selected directory outside the program.
+     *
+     * @param imageFile the ImageFile of the image
+     */
+    private void imageFileDeleted(ImageFile imageFile) {
+        imageNames.remove(imageFile.getCurrentName());
+        if (imageNamesObservable != null) {
+            imageNamesObservable.remove(imageFile.getCurrentName());
+        }
+        tileImageFiles.remove(imageFile);
+        TILE_THUMBNAILS.remove(imageFile);
+    }
+
+    /**
+     * Show every image of the session again.
+     */
+    private void refreshImageTilePane() {
+        imageNames = StateManager.sessionData.getImageFileNames();
+        populateImageTilePane();
+        stopScanButton.setVisible(discovery != null && !discovery.isFinished());
     }
 
     /**
@@ -430,9 +739,7 @@ public class BrowseImageFilesViewController implements Initializable {
      * Populate the ImageTilePane with all the images in this session
      */
     private void populateImageTilePane() {
-        for (ImageFile imageFile : StateManager.sessionData.getNameToImageFileMap().values()) {
-            addImageToTilePane(imageFile);
-        }
+        tileImageFiles.setAll(StateManager.sessionData.getNameToImageFileMap().values());
     }
 
     /**
@@ -441,33 +748,132 @@ public class BrowseImageFilesViewController implements Initializable {
      * @param imageFile the ImageFile of the image to add
      */
     private void addImageToTilePane(ImageFile imageFile) {
-        Image image = null;
-        try {
-            // Set the Image object to show the image associated with this ImageFile
-            image = new Image(imageFile.getThisFile().toURI().toURL().toString(), 300,
-                    300, true, true);
-        } catch (MalformedURLException e) {
+        tileImageFiles.add(imageFile);
+    }
 
-            Dialogs.showErrorAlert("Gallery Error", "Error", "There was an error adding " +
-                    imageFile.getThisFile().getAbsolutePath() + " to the gallery. You sure it exists?");
+    /**
+     * Keep the thumbnail loader focused on the tiles in view as the tile pane scrolls.
+     */
+    private void watchTilePaneScrolling() {
+        for (Node node : imageTilePane.lookupAll(".scroll-bar")) {
+            if (node instanceof ScrollBar && ((ScrollBar) node).getOrientation() == Orientation.VERTICAL) {
+                ScrollBar scrollBar = (ScrollBar) node;
+                scrollBar.valueProperty().addListener((observable, oldValue, newValue) -> {
+                    double position = scrollBar.getMax() > scrollBar.getMin() ? (newValue.doubleValue()
+                            - scrollBar.getMin()) / (scrollBar.getMax() - scrollBar.getMin()) : 0;
+                    THUMBNAIL_LOADER.setFocus((int) Math.round(position * Math.max(0, tileImageFiles.size() - 1)));
+                });
+            }
         }
-        // Construct an ImageView for the image
-        ImageView imageView = new ImageView();
-        imageView.setImage(image);
+    }
+
+    /**
+     * A tile of the tile pane: an image and a label with its name. The list view makes only as many tiles as fit in
+     * view, and gives each one another image to show as the list scrolls or the search changes. A thumbnail shown
+     * recently is taken from the pool of thumbnails; otherwise it is loaded in the background, and the request for it
+     * is cancelled if the tile is given another image first.
+     */
+    private class ImageTileCell extends ListCell<ImageFile> {
+        private final ImageView imageView = new ImageView();
 
-        // Setup VBox to display both image and a label with the imagename
-        VBox tilePaneVBox = new VBox();
+        /**
+         * Keeps the space of the thumbnail while it loads, so the tiles do not jump.
+         */
+        private final StackPane imageFrame = new StackPane(imageView);
 
         // Construct a BEAUTIFUL label
-        Label imageNameLabel = new Label(imageFile.getCurrentName());
-        imageNameLabel.setPadding(new Insets(20, 0, 0, 0));
-        imageNameLabel.setTextFill(Color.web("#000000"));
-        ConfigureJFXControl.setFontOfLabeled("/resources/fonts/Roboto-Regular.ttf", 17, imageNameLabel);
-        tilePaneVBox.setAlignment(Pos.CENTER);
-        imageView.setOnMouseClicked(event -> imageClicked(imageFile, imageNameLabel));
-        // Add imageview and label to vbox + add vbox to tilepane
-        tilePaneVBox.getChildren().addAll(imageView, imageNameLabel);
-        imageTilePane.getChildren().add(tilePaneVBox);
+        private final Label imageNameLabel = new Label();
+
+        private final VBox tileVBox = new VBox();
+
+        /**
+         * The image whose thumbnail the image view shows, so it is not loaded again when the tile is updated for
+         * the same image.
+         */
+        private ImageFile shownImageFile;
+
+        private ThumbnailLoader<Image>.Request thumbnailRequest;
+
+        ImageTileCell() {
+            imageFrame.setMinSize(ThumbnailCache.SIZE, ThumbnailCache.SIZE);
+            imageFrame.setPrefSize(ThumbnailCache.SIZE, ThumbnailCache.SIZE);
+            // Fill the tile as the full image scaled to the tile size did, also with smaller thumbnails
+            imageView.setFitWidth(ThumbnailCache.SIZE);
+            imageView.setFitHeight(ThumbnailCache.SIZE);
+            imageView.setPreserveRatio(true);
+            imageView.setSmooth(true);
+            imageNameLabel.setPadding(new Insets(20, 0, 0, 0));
+            imageNameLabel.setTextFill(Color.web("#000000"));
+            ConfigureJFXControl.setFontOfLabeled("/resources/fonts/Roboto-Regular.ttf", 17, imageNameLabel);
+            tileVBox.setAlignment(Pos.CENTER);
+            tileVBox.getChildren().addAll(imageFrame, imageNameLabel);
+            imageView.setOnMouseClicked(event -> imageClicked(getItem()));
+            MenuItem findNearDuplicatesItem = new MenuItem("Find Near Duplicates");
+            findNearDuplicatesItem.setOnAction(event -> findNearDuplicates(getItem()));
+            ContextMenu contextMenu = new ContextMenu(findNearDuplicatesItem);
+            imageView.setOnContextMenuRequested(event ->
+                    contextMenu.show(imageView, event.getScreenX(), event.getScreenY()));
+        }
+
+        @Override
+        protected void updateItem(ImageFile imageFile, boolean empty) {
+            super.updateItem(imageFile, empty);
+            if (empty || imageFile == null) {
+                cancelThumbnail();
+                shownImageFile = null;
+                imageView.setImage(null);
+                setGraphic(null);
+                return;
+            }
+            if (imageFile != shownImageFile) {
+                cancelThumbnail();
+                shownImageFile = imageFile;
+                Image thumbnail = TILE_THUMBNAILS.get(imageFile);
+                imageView.setImage(thumbnail);
+                if (thumbnail == null) {
+                    thumbnailRequest = THUMBNAIL_LOADER.load(imageFile.getThisFile(), getIndex(), loaded -> {
+                        TILE_THUMBNAILS.put(imageFile, loaded);
+                        imageView.setImage(loaded);
+                    });
+                }
+            }
+            imageNameLabel.setText(imageFile.getCurrentName());
+            setGraphic(tileVBox);
+        }
+
+        private void cancelThumbnail() {
+            if (thumbnailRequest != null) {
+                thumbnailRequest.cancel();
+                thumbnailRequest = null;
+            }
+        }
+    }
+
+    /**
+     * Load the image shown on the tile of an image file, from the thumbnail cache if it has it. Otherwise the
+     * thumbnail is made and cached, or if that fails the file is decoded in full and scaled down as before. Runs on
+     * the threads of the thumbnail loader.
+     *
+     * @param file the image file
+     * @return the image, or null if the file cannot be found
+     */
+    private static Image loadThumbnail(File file) {
+        ThumbnailCache thumbnailCache = StateManager.thumbnailCache;
+        if (thumbnailCache != null) {
+            InputStream thumbnail = thumbnailCache.open(file);
+            if (thumbnail == null && thumbnailCache.create(file)) {
+                thumbnail = thumbnailCache.open(file);
+            }
+            if (thumbnail != null) {
+                return new Image(thumbnail);
+            }
+        }
+        try {
+            return new Image(file.toURI().toURL().toString(), ThumbnailCache.SIZE, ThumbnailCache.SIZE, true, true);
+        } catch (MalformedURLException e) {
+            e.printStackTrace();
+            return null;
+        }
     }
 
     /**
@@ -475,24 +881,149 @@ public class BrowseImageFilesViewController implements Initializable {
      *
      * @param imageFile the ImageFile that was clicked
      */
-    private void imageClicked(ImageFile imageFile, Label imageNameLabel){
-        try {
-            // Before navigating to the clicked image, alert the user if they have unset tags
-            checkForUnsavedChanges();
-            selectedImageLabel = imageNameLabel;
-            // Keep a reference to the selected image and set up right pane attributes for selected image
-            selectedImageFile = imageFile;
-            selectedImageView.setImage(new Image(selectedImageFile.getThisFile().toURI().toURL().toString(), true));
-            nameOfSelectedFile.setText(selectedImageFile.getCurrentName());
-            populateImageFileTagListViews();
+    private void imageClicked(ImageFile imageFile){
+        // Before navigating to the clicked image, alert the user if they have unset tags
+        checkForUnsavedChanges();
+        // Keep a reference to the selected image and set up right pane attributes for selected image
+        selectedImageFile = imageFile;
+        showSelectedImage();
+        nameOfSelectedFile.setText(selectedImageFile.getCurrentName());
+        populateImageFileTagListViews();
+
+        String imagePath = selectedImageFile.getThisFile().getPath();
+        getPrimaryStageManager().setWindowTitle("Browse Images - [~" + imagePath + "]");
+    }
 
-            String imagePath = selectedImageFile.getThisFile().getPath();
-            getPrimaryStageManager().setWindowTitle("Browse Images - [~" + imagePath + "]");
+    /**
+     * Show the full-size selected image once it is decoded, and start decoding the images before and after it so
+     * stepping through the images with the arrow keys does not wait.
+     */
+    private void showSelectedImage() {
+        ImageFile shownImageFile = selectedImageFile;
+        selectedImageView.setImage(null);
+        loadFullImage(shownImageFile.getThisFile(), image -> {
+            if (selectedImageFile == shownImageFile) {
+                selectedImageView.setImage(image);
+            }
+        });
+        for (int step = -1; step <= 1; step += 2) {
+            ImageFile neighbour = neighbourOf(shownImageFile, step);
+            if (neighbour != null) {
+                loadFullImage(neighbour.getThisFile(), null);
+            }
+        }
+    }
 
-        } catch (MalformedURLException e) {
-            Dialogs.showErrorAlert("Image Error", "Error", "There was an error fetching " +
-                    imageFile.getThisFile().getAbsolutePath() + " from the gallery. You sure it exists?");
+    /**
+     * Get the full-size image of a file from the cache, or decode it in the background and cache it. Must be called
+     * on the JavaFX application thread.
+     *
+     * @param file     the image file
+     * @param callback receives the image on the JavaFX application thread, or null to only cache it
+     */
+    private static void loadFullImage(File file, Consumer<Image> callback) {
+        // A file changed on disk gets a new key
+        String key = file.getAbsolutePath() + "@" + file.lastModified();
+        Image cached = FULL_IMAGE_CACHE.get(key);
+        if (cached != null) {
+            if (callback != null) {
+                callback.accept(cached);
+            }
+            return;
+        }
+        ArrayList<Consumer<Image>> waiting = PENDING_FULL_IMAGES.get(key);
+        if (waiting == null) {
+            waiting = new ArrayList<>();
+            PENDING_FULL_IMAGES.put(key, waiting);
+            Rectangle2D screen = Screen.getPrimary().getVisualBounds();
+            FULL_IMAGE_DECODER.execute(() -> {
+                Image image = decodeFullImage(file, (int) screen.getWidth(), (int) screen.getHeight());
+                Platform.runLater(() -> {
+                    if (!image.isError()) {
+                        FULL_IMAGE_CACHE.put(key, image);
+                    }
+                    for (Consumer<Image> waitingCallback : PENDING_FULL_IMAGES.remove(key)) {
+                        waitingCallback.accept(image);
+                    }
+                });
+            });
         }
+        if (callback != null) {
+            waiting.add(callback);
+        }
+    }
+
+    /**
+     * Decode the image shown in the selected image view. TIFF and BMP files, which can be huge scans, are decoded
+     * by ImageIO at about the size of the screen, without the full-resolution raster; other images are decoded in
+     * full by JavaFX. Runs on the decoding threads.
+     *
+     * @param file         the image file
+     * @param screenWidth  the width of the screen
+     * @param screenHeight the height of the screen
+     * @return the image
+     */
+    private static Image decodeFullImage(File file, int screenWidth, int screenHeight) {
+        byte imageType = ImageTypeDetector.detect(file);
+        if (imageType == ImageTypeDetector.TIFF || imageType == ImageTypeDetector.BMP) {
+            try {
+                return SwingFXUtils.toFXImage(ImageDecoder.decode(file, screenWidth, screenHeight), null);
+            } catch (IOException | RuntimeException e) {
+                // No ImageIO reader for it; let JavaFX try
+                e.printStackTrace();
+            }
+        }
+        return new Image(file.toURI().toString());
+    }
+
+    /**
+     * Get the image next to an image in the order they are shown in, on the tile pane or in the list of names.
+     *
+     * @param imageFile the image
+     * @param step      -1 for the image before, 1 for the image after
+     * @return the image next to it, or null if there is none
+     */
+    private ImageFile neighbourOf(ImageFile imageFile, int step) {
+        if (toggleButton.isSelected()) {
+            ObservableList<String> names = imageNamesListView.getItems();
+            int index = names.indexOf(imageFile.getCurrentName());
+            return index < 0 || index + step < 0 || index + step >= names.size() ? null
+                    : StateManager.sessionData.getImageFileWithName(names.get(index + step));
+        }
+        int index = tileImageFiles.indexOf(imageFile);
+        return index < 0 || index + step < 0 || index + step >= tileImageFiles.size() ? null
+                : tileImageFiles.get(index + step);
+    }
+
+    /**
+     * Step to the image before or after the selected one with the arrow keys.
+     *
+     * @param event the key press on the tile pane or the list of names
+     */
+    private void reviewKeyPressed(KeyEvent event) {
+        int step;
+        if (event.getCode() == KeyCode.UP || event.getCode() == KeyCode.LEFT) {
+            step = -1;
+        } else if (event.getCode() == KeyCode.DOWN || event.getCode() == KeyCode.RIGHT) {
+            step = 1;
+        } else {
+            return;
+        }
+        event.consume();
+        ImageFile neighbour = selectedImageFile == null ? null : neighbourOf(selectedImageFile, step);
+        if (neighbour == null) {
+            return;
+        }
+        if (toggleButton.isSelected()) {
+            int index = imageNamesListView.getItems().indexOf(neighbour.getCurrentName());
+            imageNamesListView.getSelectionModel().select(index);
+            imageNamesListView.scrollTo(index);
+        } else {
+            int index = tileImageFiles.indexOf(neighbour);
+            imageTilePane.getSelectionModel().select(index);
+            imageTilePane.scrollTo(index);
+        }
+        imageClicked(neighbour);
     }
 
     /**
@@ -530,7 +1061,22 @@ public class BrowseImageFilesViewController implements Initializable {
      * Handle text changed on the image search bar
      */
     public void imageSearchTextChanged() {
-        String input = imageSearchBar.getText().toLowerCase().replace("@", "");
+        searchGeneration++;
+        String query = imageSearchBar.getText();
+        if (ImageQuery.isQuery(query) && !query.startsWith("^")) {
+            Stream<ImageFile> results;
+            try {
+                results = ImageQuery.parsePartial(query).stream(StateManager.userData,
+                        StateManager.sessionData.getTagIndex().getAllImageIds());
+            } catch (IllegalArgumentException e) {
+                // User is currently typing the query. Must wait until it is complete.
+                return;
+            }
+            showSearchResults(results.iterator(), searchGeneration);
+            return;
+        }
+
+        String input = query.toLowerCase().replace("@", "");
         ArrayList<ImageFile> searchResultImageFileList = new ArrayList<>();
         String fullPattern;
         if (input.startsWith("^") && input.endsWith("$")) {
@@ -543,22 +1089,66 @@ public class BrowseImageFilesViewController implements Initializable {
         }
 
         Pattern imageSearchPattern = Pattern.compile(fullPattern);
-        Matcher imageSearchMatcher;
-        imageTilePane.getChildren().clear();
+        Matcher imageSearchMatcher = imageSearchPattern.matcher("");
         if (input.isEmpty()) {
             searchResultImageFileList.clear();
             populateImageTilePane();
         } else {
-            for (String name : imageNames) {
-                imageSearchMatcher = imageSearchPattern.matcher(name.toLowerCase());
+            // Only run the matcher on names that contain the literal text the search needs
+            TrigramIndex nameIndex = StateManager.sessionData.getNameIndex();
+            Collection<String> candidateNames = input.startsWith("^") ? nameIndex.candidatesForRegex(fullPattern)
+                    : nameIndex.candidates(input);
+            for (String name : candidateNames) {
+                imageSearchMatcher.reset(name.toLowerCase());
                 if (imageSearchMatcher.find()) {
                     searchResultImageFileList.add(StateManager.sessionData.getImageFileWithName(name));
                 }
             }
-            for (ImageFile imf : searchResultImageFileList) {
-                addImageToTilePane(imf);
-            }
+            // One change to the tile pane, so the tiles are updated once rather than for every result
+            tileImageFiles.setAll(searchResultImageFileList);
+        }
+    }
+
+    /**
+     * Show search results on the tile pane in place of the images shown. The first batch replaces them in one change,
+     * so tiles of images that are still shown keep their thumbnails, and the rest are added a batch at a time.
+     *
+     * @param imageFiles the results
+     * @param generation the search the results belong to
+     */
+    private void showSearchResults(Iterator<ImageFile> imageFiles, int generation) {
+        tileImageFiles.setAll(nextSearchResults(imageFiles));
+        if (imageFiles.hasNext()) {
+            Platform.runLater(() -> addImagesToTilePane(imageFiles, generation));
+        }
+    }
+
+    /**
+     * Add search results to the tile pane a batch at a time, letting the screen update between batches. Stops when
+     * a newer search has started.
+     *
+     * @param imageFiles the results left to add
+     * @param generation the search the results belong to
+     */
+    private void addImagesToTilePane(Iterator<ImageFile> imageFiles, int generation) {
+        if (generation != searchGeneration) {
+            return;
+        }
+        tileImageFiles.addAll(nextSearchResults(imageFiles));
+        if (imageFiles.hasNext()) {
+            Platform.runLater(() -> addImagesToTilePane(imageFiles, generation));
+        }
+    }
+
+    /**
+     * Take the next batch of search results.
+     */
+    private static ArrayList<ImageFile> nextSearchResults(Iterator<ImageFile> imageFiles) {
+        ArrayList<ImageFile> batch = new ArrayList<>(SEARCH_RESULT_BATCH_SIZE);
+        for (int i = 0; i < SEARCH_RESULT_BATCH_SIZE && imageFiles.hasNext(); i++) {
+            batch.add(imageFiles.next());
         }
+        return batch;
     }
 
     /**
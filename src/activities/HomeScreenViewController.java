@@ -161,16 +161,11 @@ public class HomeScreenViewController implements Initializable {
      * @param directoryPath The directory that is to be opened.
      */
      private void switchToToBrowseImageFilesView(File directoryPath) {
-        StateManager.userData.addPathToVisitedList(directoryPath.getPath());
+        // The images are fetched in the background; the browse screen fills in as they are found, and comes back
+        // here if there are none
         BrowseImageFilesViewController.setNewTargetDirectory(directoryPath);
-        if (StateManager.sessionData.getNameToImageFileMap().values().size() > 0) {
-            getPrimaryStageManager().setScreen("Browse Images - [~" + directoryPath.getAbsolutePath() + "]",
-                    "/activities/browse_imagefiles_view.fxml");
-        } else {
-            Dialogs.showErrorAlert("No Files to Load", "Uh oh!", "We didn't find any image files" +
-                    " in the directory you loaded. Please select another");
-            openDirectoryClick();
-        }
+        getPrimaryStageManager().setScreen("Browse Images - [~" + directoryPath.getAbsolutePath() + "]",
+                "/activities/browse_imagefiles_view.fxml");
     }
 
     /**
@@ -7,13 +7,16 @@ import javafx.fxml.Initializable;
 import javafx.scene.control.Button;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
+import model.StateManager;
 import utils.ImageFileOperations;
 import model.UserTagData;
 import model.Tag;
+import model.TagDictionary;
 import gui.ConfigureJFXControl;
 import model.Log;
 
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.ResourceBundle;
 
 /**
@@ -88,7 +91,7 @@ public class RevisionLogViewController implements Initializable {
             browseController.selectedImageFile.updateTagHistory(browseController.selectedImageFile.getTagList());
             browseController.selectedImageFile = ImageFileOperations.renameImageFile(browseController.selectedImageFile, specificRevision);
 
-            browseController.selectedImageFile.getTagList().clear();
+            ArrayList<Tag> tags = new ArrayList<>();
 
 
             String[] beginningName = browseController.selectedImageFile.getCurrentName().split("\\s");
@@ -97,16 +100,17 @@ public class RevisionLogViewController implements Initializable {
                     String withoutSymbol = i.substring(1, i.length());
                     Tag findTheTag = UserTagData.getTagByString(withoutSymbol);
                     if (findTheTag == null) {
-                        Tag tempTag = new Tag(withoutSymbol);
-                        browseController.selectedImageFile.getTagList().add(tempTag);
-                        tempTag.images.add(browseController.selectedImageFile);
+                        Tag tempTag = TagDictionary.intern(withoutSymbol);
+                        tags.add(tempTag);
                         UserTagData.addTag(tempTag);
                     } else {
-                        findTheTag.images.add(browseController.selectedImageFile);
-                        browseController.selectedImageFile.getTagList().add(findTheTag);
+                        tags.add(findTheTag);
                     }
                 }
             }
+            browseController.selectedImageFile.setTags(tags);
+
+            StateManager.recordTagChange(browseController.selectedImageFile);
 
             browseController.nameOfSelectedFile.setText(browseController.selectedImageFile.getCurrentName());
 
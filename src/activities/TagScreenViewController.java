@@ -12,6 +12,7 @@ import model.StateManager;
 import model.UserTagData;
 import model.ImageFile;
 import model.Tag;
+import model.TagDictionary;
 import gui.Dialogs;
 import utils.SearchBars;
 
@@ -114,7 +115,7 @@ public class TagScreenViewController implements Initializable {
 
             // else there are no duplicates, proceed with adding tag to the tag list.
             else {
-                Tag newTag = new Tag(tagInput.getText());
+                Tag newTag = TagDictionary.intern(tagInput.getText());
                 UserTagData.addTag(newTag);
                 tagView.getItems().add(newTag);
                 tagInput.clear();
@@ -137,35 +138,32 @@ public class TagScreenViewController implements Initializable {
 
             if (i - deleteNum > -1) {
                 Tag thisTag = tagView.getItems().get(i - deleteNum);
-                if (thisTag.images.size() != 0) {
-                    ButtonType renameReqResponse = Dialogs.showYesNoAlert("Could Not Delete The Tag", "This Tag Associates With " + thisTag.images.size() + " Image",
+                ArrayList<ImageFile> imagesWithTag = StateManager.userData.getImageFilesWithTag(thisTag);
+                if (imagesWithTag.size() != 0) {
+                    ButtonType renameReqResponse = Dialogs.showYesNoAlert("Could Not Delete The Tag", "This Tag Associates With " + imagesWithTag.size() + " Image",
                             "Are You Sure You Want To Delete?");
                     if (renameReqResponse == ButtonType.YES) {
-                        for (ImageFile j : thisTag.images) {
-                            j.getTagList().remove(thisTag);
+                        for (ImageFile j : imagesWithTag) {
+                            j.removeTag(thisTag);
 
-                            ArrayList<Tag> tempList = new ArrayList<>();
-                            tempList.addAll(j.getTagList());
+                            ArrayList<Tag> tempList = j.getTagList();
 
                             StringBuilder sb = new StringBuilder();
 
-                            j.getTagList().clear(); //clear all tags, since .addAll adds everything again.
-
-                            j.getTagList().addAll(tempList);
-
                             for (Tag tag : tempList) {
                                 sb.append("@").append(tag).append(" ");
                             }
                             sb.append(j.getOriginalName()); //.getOriginalName returns a name with .jpg at the end
                             ImageFileOperations.renameImageFile(j, sb.toString());
+                            StateManager.recordTagChange(j);
                         }
                         tagView.getItems().remove(i - deleteNum);
-                        UserTagData.getTagList().remove(thisTag);
+                        UserTagData.removeTag(thisTag);
                         deleteNum++;
                     }
                 } else {
                     tagView.getItems().remove(i - deleteNum);
-                    UserTagData.getTagList().remove(thisTag);
+                    UserTagData.removeTag(thisTag);
                     deleteNum++;
                 }
             }
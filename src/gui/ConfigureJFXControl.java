@@ -8,12 +8,18 @@ import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 /**
  * A series of convenience functions for javafx.scene.control.Control objects
  */
 public abstract class ConfigureJFXControl {
 
+    /**
+     * The fonts loaded so far, by font file path and size, so each font file is read only once.
+     */
+    private static final HashMap<String, Font> FONTS = new HashMap<>();
+
     /**
      * Set the font text font of any item that is an instance of Labeled, using a font file.
      *
@@ -22,7 +28,8 @@ public abstract class ConfigureJFXControl {
      * @param labeledItems one or more instances of Labeled on which the font should be applied
      */
     public static void setFontOfLabeled(String fontPath, double fontSize, Labeled... labeledItems) {
-        Font font = Font.loadFont(ConfigureJFXControl.class.getResourceAsStream(fontPath), fontSize);
+        Font font = FONTS.computeIfAbsent(fontPath + "@" + fontSize,
+                key -> Font.loadFont(ConfigureJFXControl.class.getResourceAsStream(fontPath), fontSize));
         for (Labeled labeledItem : labeledItems) {
             labeledItem.setFont(font);
         }
@@ -0,0 +1,249 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Saves checkpoints of the user's data on a background thread, at a fixed interval or after a number of changes.
+ * <p>
+ * A checkpoint never reads the data of the running session. Instead the journal is sealed (moved aside so new
+ * changes go to a fresh journal), and the sealed journal is replayed on top of a private copy of the last snapshot,
+ * which is then saved as the new snapshot. Each sealed journal has a generation, and
+ * the snapshot records the last generation it contains, so a sealed journal left behind by an interrupted
+ * checkpoint is replayed exactly once.
+ */
+public class CheckpointWorker {
+
+    /**
+     * The data file, which names the snapshot files.
+     */
+    private final File dataFile;
+
+    /**
+     * The journal of the running session.
+     */
+    private final MutationJournal journal;
+
+    /**
+     * The number of seconds between checkpoints.
+     */
+    private final long intervalSeconds;
+
+    /**
+     * The number of changes after which a checkpoint is saved without waiting for the interval.
+     */
+    private final int mutationThreshold;
+
+    /**
+     * The thread checkpoints are saved on.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * The number of changes recorded since the last checkpoint started.
+     */
+    private final AtomicInteger mutationsSinceCheckpoint = new AtomicInteger();
+
+    /**
+     * Whether a checkpoint has been requested and not started yet.
+     */
+    private final AtomicBoolean checkpointRequested = new AtomicBoolean();
+
+    /**
+     * The generation the journal will have when it is next sealed.
+     */
+    private long nextGeneration;
+
+    /**
+     * The number of milliseconds the last checkpoint took, or -1 if no checkpoint has been saved.
+     */
+    private volatile long lastCheckpointMillis = -1;
+
+    /**
+     * The size in bytes of the snapshot written by the last checkpoint, or -1 if no checkpoint has been saved.
+     */
+    private volatile long lastCheckpointBytes = -1;
+
+    /**
+     * The number of changes contained in the last checkpoint.
+     */
+    private volatile int lastCheckpointMutations;
+
+    /**
+     * Construct a checkpoint worker. No checkpoint is saved until the worker is started.
+     *
+     * @param dataFile          the data file, which names the snapshot files
+     * @param journal           the journal of the running session
+     * @param journalGeneration the last journal generation contained in the snapshot
+     * @param intervalSeconds   the number of seconds between checkpoints
+     * @param mutationThreshold the number of changes after which a checkpoint is saved early
+     */
+    public CheckpointWorker(File dataFile, MutationJournal journal, long journalGeneration, long intervalSeconds,
+                            int mutationThreshold) {
+        this.dataFile = dataFile;
+        this.journal = journal;
+        this.intervalSeconds = intervalSeconds;
+        this.mutationThreshold = mutationThreshold;
+        this.nextGeneration = journalGeneration + 1;
+        for (File sealedJournal : getSealedJournals(journal.getJournalFile())) {
+            nextGeneration = Math.max(nextGeneration, generationOf(sealedJournal) + 1);
+        }
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start saving checkpoints at the configured interval.
+     */
+    public void start() {
+        executor.scheduleWithFixedDelay(this::runCheckpoint, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Tell the worker a change was recorded in the journal. Requests a checkpoint once enough changes have been
+     * recorded.
+     */
+    public void mutationRecorded() {
+        if (mutationsSinceCheckpoint.incrementAndGet() >= mutationThreshold) {
+            requestCheckpoint();
+        }
+    }
+
+    /**
+     * Request a checkpoint as soon as possible, without waiting for the interval.
+     */
+    public void requestCheckpoint() {
+        if (checkpointRequested.compareAndSet(false, true) && !executor.isShutdown()) {
+            executor.execute(this::runCheckpoint);
+        }
+    }
+
+    /**
+     * Stop saving checkpoints. A checkpoint that is being saved is not waited for; if it is cut short, its sealed
+     * journal is replayed at the next startup.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Get the number of milliseconds the last checkpoint took.
+     *
+     * @return the duration, or -1 if no checkpoint has been saved
+     */
+    public long getLastCheckpointMillis() {
+        return lastCheckpointMillis;
+    }
+
+    /**
+     * Get the size of the snapshot written by the last checkpoint.
+     *
+     * @return the size in bytes, or -1 if no checkpoint has been saved
+     */
+    public long getLastCheckpointBytes() {
+        return lastCheckpointBytes;
+    }
+
+    /**
+     * Get the number of changes contained in the last checkpoint.
+     *
+     * @return the number of changes
+     */
+    public int getLastCheckpointMutations() {
+        return lastCheckpointMutations;
+    }
+
+    /**
+     * Save a checkpoint, reporting any error instead of stopping the worker.
+     */
+    private void runCheckpoint() {
+        checkpointRequested.set(false);
+        try {
+            checkpoint();
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Seal the journal, replay every sealed journal onto a copy of the snapshot and replace the snapshot with it.
+     */
+    private void checkpoint() throws IOException, ClassNotFoundException {
+        long startTime = System.nanoTime();
+        if (journal.getEntryCount() > 0) {
+            mutationsSinceCheckpoint.set(0);
+            journal.seal(new File(journal.getJournalFile().getPath() + "." + nextGeneration));
+            nextGeneration++;
+        }
+        List<File> sealedJournals = getSealedJournals(journal.getJournalFile());
+        if (sealedJournals.isEmpty()) {
+            return;
+        }
+
+        UserImageFileData snapshot = SerializedFileBackend.readSnapshot(dataFile);
+        int mutations = 0;
+        for (File sealedJournal : sealedJournals) {
+            long generation = generationOf(sealedJournal);
+            if (generation > snapshot.journalGeneration) {
+                mutations += new MutationJournal(sealedJournal).replay(snapshot);
+                snapshot.journalGeneration = generation;
+            }
+        }
+        if (!SerializedFileBackend.saveState(snapshot, dataFile)) {
+            // Trying again would most likely fail the same way; the journals are replayed at the next startup
+            System.err.println("Could not save a checkpoint of " + dataFile.getPath() + ", checkpoints are stopped");
+            executor.shutdown();
+            return;
+        }
+        for (File sealedJournal : sealedJournals) {
+            if (!sealedJournal.delete()) {
+                System.err.println("Could not delete sealed journal " + sealedJournal.getPath());
+            }
+        }
+
+        lastCheckpointMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        lastCheckpointBytes = SerializedFileBackend.getSnapshotFile(dataFile).length();
+        lastCheckpointMutations = mutations;
+    }
+
+    /**
+     * Get the sealed journals of the given journal, oldest first.
+     *
+     * @param journalFile the journal file
+     * @return the sealed journal files, in order of generation
+     */
+    static List<File> getSealedJournals(File journalFile) {
+        String prefix = journalFile.getName() + ".";
+        File directory = journalFile.getAbsoluteFile().getParentFile();
+        File[] sealedJournals = directory.listFiles((dir, name) -> name.startsWith(prefix)
+                && name.substring(prefix.length()).matches("\\d+"));
+        if (sealedJournals == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(sealedJournals, Comparator.comparingLong(CheckpointWorker::generationOf));
+        return Arrays.asList(sealedJournals);
+    }
+
+    /**
+     * Get the generation of a sealed journal from its file name.
+     *
+     * @param sealedJournal the sealed journal file
+     * @return its generation
+     */
+    static long generationOf(File sealedJournal) {
+        String name = sealedJournal.getName();
+        return Long.parseLong(name.substring(name.lastIndexOf('.') + 1));
+    }
+}
@@ -0,0 +1,153 @@
+package model;
+
+import utils.CompressedBitmap;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * A tree of the directories holding images, with the ids of the images directly in each directory and the number of
+ * images in each subtree. Moving an image only changes the directory it leaves and the one it enters, and the counts
+ * of their ancestors.
+ */
+public class DirectoryIndex {
+
+    private static class Node {
+        final String path;
+
+        final Node parent;
+
+        final HashMap<String, Node> children = new HashMap<>();
+
+        /**
+         * The ids of the images directly in this directory.
+         */
+        final CompressedBitmap imageIds = new CompressedBitmap();
+
+        /**
+         * The number of images in this directory and every directory below it.
+         */
+        int subtreeCount;
+
+        Node(String path, Node parent) {
+            this.path = path;
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * The node of each directory, by absolute path.
+     */
+    private final HashMap<String, Node> nodesByPath = new HashMap<>();
+
+    /**
+     * Add an image to the directory it is in. Adding an image that is already there does nothing.
+     *
+     * @param imageId   the id of the image
+     * @param imagePath the absolute path of the image
+     */
+    void addImage(int imageId, String imagePath) {
+        String directory = new File(imagePath).getParent();
+        if (directory == null) {
+            return;
+        }
+        Node node = getNode(directory, true);
+        if (node.imageIds.add(imageId)) {
+            for (Node ancestor = node; ancestor != null; ancestor = ancestor.parent) {
+                ancestor.subtreeCount++;
+            }
+        }
+    }
+
+    /**
+     * Remove an image from the directory it was in.
+     *
+     * @param imageId   the id of the image
+     * @param imagePath the absolute path the image had
+     */
+    void removeImage(int imageId, String imagePath) {
+        String directory = new File(imagePath).getParent();
+        Node node = directory == null ? null : getNode(directory, false);
+        if (node == null || !node.imageIds.remove(imageId)) {
+            return;
+        }
+        for (Node ancestor = node; ancestor != null; ancestor = ancestor.parent) {
+            ancestor.subtreeCount--;
+        }
+        // Drop directories left without images
+        while (node != null && node.subtreeCount == 0) {
+            nodesByPath.remove(node.path);
+            if (node.parent != null) {
+                node.parent.children.remove(node.path);
+            }
+            node = node.parent;
+        }
+    }
+
+    /**
+     * Remove every image.
+     */
+    void clear() {
+        nodesByPath.clear();
+    }
+
+    /**
+     * Get the number of images in the given directory and every directory below it.
+     *
+     * @param directory the directory
+     * @return the number of images
+     */
+    public int getImageCount(File directory) {
+        Node node = getNode(directory.getAbsolutePath(), false);
+        return node == null ? 0 : node.subtreeCount;
+    }
+
+    /**
+     * Get the ids of the images in the given directory.
+     *
+     * @param directory the directory
+     * @param recursive whether to include the images in every directory below it
+     * @return a new bitmap of image ids
+     */
+    public CompressedBitmap getImageIds(File directory, boolean recursive) {
+        CompressedBitmap imageIds = new CompressedBitmap();
+        Node start = getNode(directory.getAbsolutePath(), false);
+        if (start == null) {
+            return imageIds;
+        }
+        ArrayDeque<Node> nodes = new ArrayDeque<>();
+        nodes.push(start);
+        while (!nodes.isEmpty()) {
+            Node node = nodes.pop();
+            imageIds = CompressedBitmap.or(imageIds, node.imageIds);
+            if (recursive) {
+                for (Node child : node.children.values()) {
+                    nodes.push(child);
+                }
+            }
+        }
+        return imageIds;
+    }
+
+    /**
+     * Get the node of the directory with the given path.
+     *
+     * @param path   the absolute path of the directory
+     * @param create whether to create the node, and the nodes of its ancestors, if it does not exist
+     * @return the node, or null if it does not exist and create is false
+     */
+    private Node getNode(String path, boolean create) {
+        Node node = nodesByPath.get(path);
+        if (node == null && create) {
+            String parentPath = new File(path).getParent();
+            Node parent = parentPath == null ? null : getNode(parentPath, true);
+            node = new Node(path, parent);
+            nodesByPath.put(path, node);
+            if (parent != null) {
+                parent.children.put(path, node);
+            }
+        }
+        return node;
+    }
+}
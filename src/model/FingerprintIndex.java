@@ -0,0 +1,123 @@
+package model;
+
+import utils.CompressedBitmap;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An index of the content fingerprints of images, from {@link utils.ContentFingerprint}, in both directions. An image
+ * whose file was renamed or moved outside the program is found again by the fingerprint of the file.
+ */
+public class FingerprintIndex {
+
+    /**
+     * The fingerprint of each image that has one, by image id.
+     */
+    private final HashMap<Integer, Long> fingerprintsByImageId = new HashMap<>();
+
+    /**
+     * The ids of the images with each fingerprint. Copies of a file share a fingerprint.
+     */
+    private final HashMap<Long, CompressedBitmap> imageIdsByFingerprint = new HashMap<>();
+
+    /**
+     * The fingerprint of the whole contents of each image whose full fingerprint was taken, by image id. A match by
+     * fingerprint is only trusted once the full fingerprints agree too.
+     */
+    private final HashMap<Integer, Long> fullFingerprintsByImageId = new HashMap<>();
+
+    /**
+     * Set the fingerprints of an image, replacing the ones it had.
+     *
+     * @param imageId         the id of the image
+     * @param fingerprint     the quick fingerprint
+     * @param fullFingerprint the full fingerprint, or 0 if it was not taken
+     */
+    void set(int imageId, long fingerprint, long fullFingerprint) {
+        Long previous = fingerprintsByImageId.put(imageId, fingerprint);
+        if (previous != null && previous != fingerprint) {
+            removeId(previous, imageId);
+        }
+        imageIdsByFingerprint.computeIfAbsent(fingerprint, key -> new CompressedBitmap()).add(imageId);
+        if (fullFingerprint == 0) {
+            fullFingerprintsByImageId.remove(imageId);
+        } else {
+            fullFingerprintsByImageId.put(imageId, fullFingerprint);
+        }
+    }
+
+    /**
+     * Remove the fingerprint of an image.
+     *
+     * @param imageId the id of the image
+     */
+    void remove(int imageId) {
+        Long fingerprint = fingerprintsByImageId.remove(imageId);
+        if (fingerprint != null) {
+            removeId(fingerprint, imageId);
+        }
+        fullFingerprintsByImageId.remove(imageId);
+    }
+
+    /**
+     * Get the fingerprint of an image.
+     *
+     * @param imageId the id of the image
+     * @return the fingerprint, or 0 if the image has none
+     */
+    public long get(int imageId) {
+        Long fingerprint = fingerprintsByImageId.get(imageId);
+        return fingerprint == null ? 0 : fingerprint;
+    }
+
+    /**
+     * Get the full fingerprint of an image.
+     *
+     * @param imageId the id of the image
+     * @return the full fingerprint, or 0 if it was not taken
+     */
+    public long getFull(int imageId) {
+        Long fullFingerprint = fullFingerprintsByImageId.get(imageId);
+        return fullFingerprint == null ? 0 : fullFingerprint;
+    }
+
+    /**
+     * Get the ids of the images with the given fingerprint.
+     *
+     * @param fingerprint the fingerprint
+     * @return the ids, which must not be changed
+     */
+    public CompressedBitmap getImageIds(long fingerprint) {
+        CompressedBitmap imageIds = imageIdsByFingerprint.get(fingerprint);
+        return imageIds == null ? new CompressedBitmap() : imageIds;
+    }
+
+    /**
+     * Get the number of images with a fingerprint.
+     *
+     * @return the number of images
+     */
+    public int size() {
+        return fingerprintsByImageId.size();
+    }
+
+    /**
+     * Get the fingerprint of every image that has one, by image id.
+     *
+     * @return the fingerprints, which must not be changed
+     */
+    Map<Integer, Long> getFingerprints() {
+        return fingerprintsByImageId;
+    }
+
+    private void removeId(long fingerprint, int imageId) {
+        CompressedBitmap imageIds = imageIdsByFingerprint.get(fingerprint);
+        if (imageIds != null) {
+            imageIds.remove(imageId);
+            if (imageIds.isEmpty()) {
+                imageIdsByFingerprint.remove(fingerprint);
+            }
+        }
+    }
+}
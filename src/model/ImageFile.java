@@ -3,8 +3,12 @@ package model;
 import utils.ImageFileOperations;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 
 /**
  * ImageFile represents actual image file in operating system.
@@ -18,13 +22,21 @@ import java.util.ArrayList;
  */
 public class ImageFile implements Serializable, Comparable<ImageFile> {
 
+    private static final long serialVersionUID = 6758468548593508930L;
+
     /**
      * the most current name of this image
      */
     private StringBuilder currentName;
 
     /**
-     * the list of tag this image has.
+     * the ids of the tags this image has, in the order they were added.
+     */
+    private transient int[] tagIds;
+
+    /**
+     * the list of tag this image has, as saved by older versions of the program. Converted to tagIds when the data
+     * is read.
      */
     private ArrayList<Tag> tagList;
 
@@ -58,6 +70,16 @@ public class ImageFile implements Serializable, Comparable<ImageFile> {
      */
     private ArrayList<ArrayList<Tag>> tagHistory;
 
+    /**
+     * The stable id of this image, given when it is first added to the user's data. 0 if it has no id yet.
+     */
+    private int id;
+
+    /**
+     * the library file record holding the revision history and tag history, if they have not been decoded yet.
+     */
+    private transient ImageRecord undecodedHistory;
+
     /**
      * Constructs a new model.ImageFile object.
      *
@@ -74,13 +96,42 @@ public class ImageFile implements Serializable, Comparable<ImageFile> {
         underWhichDirectory = oneImageFile.getParent();
         thisFile = oneImageFile;
         String c = oneImageFile.getName();
-        String[] split = c.split("\\.");
-        imageType = ("." + split[split.length - 1]);
-        tagList = new ArrayList<>();
+        int dot = c.lastIndexOf('.');
+        imageType = dot >= 0 ? c.substring(dot) : "";
+        tagIds = new int[0];
         tagHistory = new ArrayList<>();
         origName = oneImageFile.getName();
     }
 
+    /**
+     * Constructs an ImageFile decoded from a library file. The revision history and tag history are decoded from the
+     * given record the first time they are used.
+     */
+    ImageFile(int id, String currentName, String originalName, String origName, String underWhichDirectory,
+              File thisFile, String imageType, int[] tagIds, ImageRecord undecodedHistory) {
+        this.id = id;
+        this.currentName = new StringBuilder(currentName);
+        this.originalName = originalName;
+        this.origName = origName;
+        this.underWhichDirectory = underWhichDirectory;
+        this.thisFile = thisFile;
+        this.imageType = imageType;
+        this.tagIds = tagIds;
+        this.imageLogs = new ArrayList<>();
+        this.tagHistory = new ArrayList<>();
+        this.undecodedHistory = undecodedHistory;
+    }
+
+    /**
+     * Decode the revision history and tag history from the library file if that has not been done yet.
+     */
+    private void decodeHistory() {
+        if (undecodedHistory != null) {
+            undecodedHistory.decodeHistory(imageLogs, tagHistory);
+            undecodedHistory = null;
+        }
+    }
+
     /**
      * override the generalReNameFunction but only take one parameter.
      * Change inner information of an imagefile class based on given String
@@ -88,6 +139,7 @@ public class ImageFile implements Serializable, Comparable<ImageFile> {
      * @param newName the newname for the imagefile
      */
     public void generalReName(String newName) {
+        decodeHistory();
         String tempName = currentName.toString();
         currentName = new StringBuilder();
         currentName.append(newName);
@@ -104,6 +156,7 @@ public class ImageFile implements Serializable, Comparable<ImageFile> {
      * @param newEntry an arraylist of tag
      */
     public void updateTagHistory(ArrayList<Tag> newEntry) {
+        decodeHistory();
         ArrayList<Tag> temp = new ArrayList<>();
         temp.addAll(newEntry);
         this.tagHistory.add(temp);
@@ -141,24 +194,166 @@ public class ImageFile implements Serializable, Comparable<ImageFile> {
         this.currentName = new StringBuilder(newName);
     }
 
+    /**
+     * Get the current name of this image without the @tag words in it.
+     *
+     * @return the name, with its other words separated by single spaces
+     */
+    public String getNameWithoutTags() {
+        StringBuilder name = new StringBuilder();
+        for (String word : getCurrentName().split("\\s+")) {
+            if (!word.isEmpty() && !word.startsWith("@")) {
+                if (name.length() > 0) {
+                    name.append(' ');
+                }
+                name.append(word);
+            }
+        }
+        return name.toString();
+    }
+
+    public int getId() {
+        return this.id;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
     public String getOriginalName() {
         return this.originalName;
     }
 
     public ArrayList<Log> getImageLogs() {
+        decodeHistory();
         return this.imageLogs;
     }
 
+    ArrayList<ArrayList<Tag>> getTagHistory() {
+        decodeHistory();
+        return this.tagHistory;
+    }
+
+    ImageRecord getUndecodedHistory() {
+        return this.undecodedHistory;
+    }
+
+    String getDirectory() {
+        return this.underWhichDirectory;
+    }
+
+    String getImageType() {
+        return this.imageType;
+    }
+
     public File getThisFile() {
         return this.thisFile;
     }
 
+    /**
+     * Get the tags of this image. The list is a copy; change the tags with {@link #setTags(Collection)},
+     * {@link #addTag(Tag)} and {@link #removeTag(Tag)}.
+     *
+     * @return a new list of the tags of this image, in the order they were added
+     */
     public ArrayList<Tag> getTagList() {
-        return this.tagList;
+        ArrayList<Tag> tags = new ArrayList<>(tagIds.length);
+        for (int tagId : tagIds) {
+            tags.add(TagDictionary.get(tagId));
+        }
+        return tags;
+    }
+
+    /**
+     * Get the ids of the tags of this image.
+     *
+     * @return a new array of tag ids, in the order the tags were added
+     */
+    public int[] getTagIds() {
+        return tagIds.clone();
+    }
+
+    /**
+     * Check if this image has the given tag.
+     *
+     * @param tag the tag
+     * @return true iff the image has the tag
+     */
+    public boolean hasTag(Tag tag) {
+        for (int tagId : tagIds) {
+            if (tagId == tag.getId()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replace the tags of this image.
+     *
+     * @param tags the new tags, in order
+     */
+    public void setTags(Collection<Tag> tags) {
+        tagIds = new int[0];
+        for (Tag tag : tags) {
+            addTag(tag);
+        }
+    }
+
+    /**
+     * Add a tag to this image, if it does not have it already.
+     *
+     * @param tag the tag to add
+     */
+    public void addTag(Tag tag) {
+        if (!hasTag(tag)) {
+            tagIds = Arrays.copyOf(tagIds, tagIds.length + 1);
+            tagIds[tagIds.length - 1] = tag.getId();
+        }
+    }
+
+    /**
+     * Remove a tag from this image.
+     *
+     * @param tag the tag to remove
+     */
+    public void removeTag(Tag tag) {
+        for (int i = 0; i < tagIds.length; i++) {
+            if (tagIds[i] == tag.getId()) {
+                int[] newTagIds = new int[tagIds.length - 1];
+                System.arraycopy(tagIds, 0, newTagIds, 0, i);
+                System.arraycopy(tagIds, i + 1, newTagIds, i, tagIds.length - i - 1);
+                tagIds = newTagIds;
+                return;
+            }
+        }
     }
 
     //some setters
     public void setFile(File newFile) {
         this.thisFile = newFile;
     }
-}
\ No newline at end of file
+
+    private void readObject(ObjectInputStream objectInputStream) throws IOException, ClassNotFoundException {
+        objectInputStream.defaultReadObject();
+        tagIds = new int[0];
+    }
+
+    /**
+     * Convert the tags saved by older versions of the program to tags from the TagDictionary. Called once the whole
+     * of the saved data has been read, since a tag may still be incomplete while the image is being read.
+     */
+    void convertLegacyTags() {
+        if (tagList != null) {
+            for (Tag tag : tagList) {
+                addTag(TagDictionary.intern(tag.name));
+            }
+            tagList = null;
+        }
+        for (ArrayList<Tag> tags : tagHistory) {
+            for (int i = 0; i < tags.size(); i++) {
+                tags.set(i, TagDictionary.intern(tags.get(i).name));
+            }
+        }
+    }
+}
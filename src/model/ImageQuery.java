@@ -0,0 +1,621 @@
+package model;
+
+import utils.CompressedBitmap;
+import utils.PerceptualHash;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Stream;
+
+/**
+ * A query over the images in the user's data, such as {@code @beach AND (@2019 OR @2020) NOT @blurry name:~"IMG_"}.
+ * <ul>
+ * <li>{@code @tag} matches images with the tag, and {@code @prefix*} images with any tag whose name starts with the
+ * prefix.</li>
+ * <li>{@code name:text} and a bare word match images whose name, without tags, contains the text.</li>
+ * <li>{@code name:~regex} matches images whose name, without tags, has a match of the regex.</li>
+ * <li>{@code similar:name} matches the near duplicates of the image with the given name, itself included.</li>
+ * <li>{@code is:duplicate} matches the images that have a near duplicate anywhere in the library.</li>
+ * <li>{@code AND}, {@code OR}, {@code NOT} and parentheses combine terms. Terms next to each other are ANDed, and
+ * AND binds tighter than OR.</li>
+ * </ul>
+ * Names and tags are matched ignoring case.
+ * <p>
+ * Tag terms are answered from the {@link TagIndex}, starting with the tags on the fewest images, and name terms only
+ * run on the images left after that, cheapest first. Near duplicates are found in the {@link PerceptualHashIndex},
+ * for the images that have been hashed.
+ */
+public class ImageQuery {
+
+    /**
+     * A node of the parsed query.
+     */
+    private abstract static class Node {
+        /**
+         * Estimate how many images match, for deciding what to evaluate first.
+         */
+        abstract int estimate(UserImageFileData data, int total);
+
+        /**
+         * Get the ids of the images in scope that may match. Every image that matches is included.
+         */
+        abstract CompressedBitmap candidates(UserImageFileData data, CompressedBitmap scope);
+
+        /**
+         * Whether {@link #candidates} are exactly the images that match, so they need not be checked one by one.
+         */
+        abstract boolean isExact();
+
+        /**
+         * Check if the given image matches.
+         */
+        abstract boolean matches(ImageFile imageFile);
+
+        /**
+         * The relative cost of {@link #matches} for one image.
+         */
+        abstract int cost();
+    }
+
+    private static class TagNode extends Node {
+        final String name;
+
+        final boolean isPrefix;
+
+        /**
+         * The tags the term stands for, or null if they have not been looked up yet.
+         */
+        private ArrayList<Tag> tags;
+
+        TagNode(String name, boolean isPrefix) {
+            this.name = name;
+            this.isPrefix = isPrefix;
+        }
+
+        /**
+         * Get the tags named name, ignoring case, or if this is a prefix term, the tags whose names start with it.
+         */
+        private ArrayList<Tag> tags() {
+            if (tags == null) {
+                tags = new ArrayList<>();
+                Tag exact = TagDictionary.get(name);
+                if (exact != null) {
+                    tags.add(exact);
+                }
+                for (Tag tag : UserTagData.completeTag(name, Integer.MAX_VALUE)) {
+                    if (tag != exact && (isPrefix || tag.name.equalsIgnoreCase(name))) {
+                        tags.add(tag);
+                    }
+                }
+            }
+            return tags;
+        }
+
+        @Override
+        int estimate(UserImageFileData data, int total) {
+            int estimate = 0;
+            for (Tag tag : tags()) {
+                estimate += data.getTagIndex().getImageCount(tag);
+            }
+            return Math.min(estimate, total);
+        }
+
+        @Override
+        CompressedBitmap candidates(UserImageFileData data, CompressedBitmap scope) {
+            CompressedBitmap ids = new CompressedBitmap();
+            for (Tag tag : tags()) {
+                ids = CompressedBitmap.or(ids, data.getTagIndex().getImageIds(tag));
+            }
+            return ids;
+        }
+
+        @Override
+        boolean isExact() {
+            return true;
+        }
+
+        @Override
+        boolean matches(ImageFile imageFile) {
+            for (Tag tag : tags()) {
+                if (imageFile.hasTag(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        int cost() {
+            return 1;
+        }
+    }
+
+    private static class NameNode extends Node {
+        final String text;
+
+        final boolean isRegex;
+
+        final Pattern pattern;
+
+        NameNode(String text, boolean isRegex) {
+            this.text = text;
+            this.isRegex = isRegex;
+            this.pattern = Pattern.compile(isRegex ? text : Pattern.quote(text), Pattern.CASE_INSENSITIVE);
+        }
+
+        @Override
+        int estimate(UserImageFileData data, int total) {
+            return total;
+        }
+
+        @Override
+        CompressedBitmap candidates(UserImageFileData data, CompressedBitmap scope) {
+            // Taking the tags out of the name an image is stored under only takes whole words out of it, and the
+            // index takes trigrams within words, so the stored names narrow the search
+            CompressedBitmap ids = new CompressedBitmap();
+            for (String name : isRegex ? data.getNameIndex().candidatesForRegex(text)
+                    : data.getNameIndex().candidates(text)) {
+                int id = data.getImageIdWithName(name);
+                if (id != 0) {
+                    ids.add(id);
+                }
+            }
+            return ids;
+        }
+
+        @Override
+        boolean isExact() {
+            return false;
+        }
+
+        @Override
+        boolean matches(ImageFile imageFile) {
+            return pattern.matcher(imageFile.getNameWithoutTags()).find();
+        }
+
+        @Override
+        int cost() {
+            return isRegex ? 100 : 10;
+        }
+    }
+
+    /**
+     * A term answered by a set of image ids that is worked out once, the first time it is needed.
+     */
+    private abstract static class ResolvedNode extends Node {
+        private CompressedBitmap ids;
+
+        /**
+         * Work out the ids of the images in scope that match.
+         */
+        abstract CompressedBitmap resolve(UserImageFileData data, CompressedBitmap scope);
+
+        @Override
+        CompressedBitmap candidates(UserImageFileData data, CompressedBitmap scope) {
+            ids = resolve(data, scope);
+            return ids;
+        }
+
+        @Override
+        boolean isExact() {
+            return true;
+        }
+
+        @Override
+        boolean matches(ImageFile imageFile) {
+            return ids != null && ids.contains(imageFile.getId());
+        }
+
+        @Override
+        int cost() {
+            return 1;
+        }
+    }
+
+    private static class SimilarNode extends ResolvedNode {
+        final String name;
+
+        SimilarNode(String name) {
+            this.name = name;
+        }
+
+        @Override
+        int estimate(UserImageFileData data, int total) {
+            return Math.min(total, PerceptualHash.NEAR_DUPLICATE_DISTANCE);
+        }
+
+        @Override
+        CompressedBitmap resolve(UserImageFileData data, CompressedBitmap scope) {
+            CompressedBitmap ids = new CompressedBitmap();
+            ImageFile imageFile = data.getImageFileWithName(name);
+            if (imageFile != null) {
+                for (int id : data.getPerceptualHashIndex().findNear(imageFile.getId(),
+                        PerceptualHash.NEAR_DUPLICATE_DISTANCE)) {
+                    ids.add(id);
+                }
+            }
+            return ids;
+        }
+    }
+
+    private static class DuplicateNode extends ResolvedNode {
+        @Override
+        int estimate(UserImageFileData data, int total) {
+            return Math.min(total, data.getPerceptualHashIndex().size());
+        }
+
+        @Override
+        CompressedBitmap resolve(UserImageFileData data, CompressedBitmap scope) {
+            CompressedBitmap ids = new CompressedBitmap();
+            PerceptualHashIndex index = data.getPerceptualHashIndex();
+            for (int id : scope.toArray()) {
+                // The image itself is always near
+                if (index.findNear(id, PerceptualHash.NEAR_DUPLICATE_DISTANCE).size() > 1) {
+                    ids.add(id);
+                }
+            }
+            return ids;
+        }
+    }
+
+    private static class AndNode extends Node {
+        final ArrayList<Node> children;
+
+        AndNode(ArrayList<Node> children) {
+            this.children = children;
+            // Check the cheapest terms first, so the expensive ones run on fewer images
+            this.children.sort(Comparator.comparingInt(Node::cost));
+        }
+
+        @Override
+        int estimate(UserImageFileData data, int total) {
+            int estimate = total;
+            for (Node child : children) {
+                estimate = Math.min(estimate, child.estimate(data, total));
+            }
+            return estimate;
+        }
+
+        @Override
+        CompressedBitmap candidates(UserImageFileData data, CompressedBitmap scope) {
+            int total = scope.getCardinality();
+            ArrayList<Node> byEstimate = new ArrayList<>(children);
+            byEstimate.sort(Comparator.comparingInt(child -> child.estimate(data, total)));
+
+            // Intersect the most selective sets first, then take away exact negations
+            CompressedBitmap result = scope;
+            ArrayList<Node> negations = new ArrayList<>();
+            for (Node child : byEstimate) {
+                if (result.isEmpty()) {
+                    return result;
+                }
+                if (child instanceof NotNode && ((NotNode) child).child.isExact()) {
+                    negations.add(((NotNode) child).child);
+                } else {
+                    result = CompressedBitmap.and(result, child.candidates(data, result));
+                }
+            }
+            for (Node negation : negations) {
+                result = CompressedBitmap.andNot(result, negation.candidates(data, result));
+            }
+            return result;
+        }
+
+        @Override
+        boolean isExact() {
+            return children.stream().allMatch(Node::isExact);
+        }
+
+        @Override
+        boolean matches(ImageFile imageFile) {
+            for (Node child : children) {
+                if (!child.matches(imageFile)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        int cost() {
+            return children.stream().mapToInt(Node::cost).sum();
+        }
+    }
+
+    private static class OrNode extends Node {
+        final ArrayList<Node> children;
+
+        OrNode(ArrayList<Node> children) {
+            this.children = children;
+            this.children.sort(Comparator.comparingInt(Node::cost));
+        }
+
+        @Override
+        int estimate(UserImageFileData data, int total) {
+            long estimate = 0;
+            for (Node child : children) {
+                estimate += child.estimate(data, total);
+            }
+            return (int) Math.min(estimate, total);
+        }
+
+        @Override
+        CompressedBitmap candidates(UserImageFileData data, CompressedBitmap scope) {
+            CompressedBitmap result = new CompressedBitmap();
+            for (Node child : children) {
+                result = CompressedBitmap.or(result, child.candidates(data, scope));
+            }
+            return result;
+        }
+
+        @Override
+        boolean isExact() {
+            return children.stream().allMatch(Node::isExact);
+        }
+
+        @Override
+        boolean matches(ImageFile imageFile) {
+            for (Node child : children) {
+                if (child.matches(imageFile)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        int cost() {
+            return children.stream().mapToInt(Node::cost).sum();
+        }
+    }
+
+    private static class NotNode extends Node {
+        final Node child;
+
+        NotNode(Node child) {
+            this.child = child;
+        }
+
+        @Override
+        int estimate(UserImageFileData data, int total) {
+            return total - child.estimate(data, total);
+        }
+
+        @Override
+        CompressedBitmap candidates(UserImageFileData data, CompressedBitmap scope) {
+            return child.isExact() ? CompressedBitmap.andNot(scope, child.candidates(data, scope)) : scope;
+        }
+
+        @Override
+        boolean isExact() {
+            return child.isExact();
+        }
+
+        @Override
+        boolean matches(ImageFile imageFile) {
+            return !child.matches(imageFile);
+        }
+
+        @Override
+        int cost() {
+            return child.cost();
+        }
+    }
+
+    /**
+     * The root of the parsed query.
+     */
+    private final Node root;
+
+    private ImageQuery(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Check if the given search input uses the query language rather than being a plain name search.
+     *
+     * @param input the search input
+     * @return true iff the input has a tag, name, similar or duplicate term
+     */
+    public static boolean isQuery(String input) {
+        return input.contains("@") || input.contains("name:") || input.contains("similar:")
+                || input.contains("is:duplicate");
+    }
+
+    /**
+     * Parse a query.
+     *
+     * @param query the text of the query
+     * @return the parsed query
+     * @throws IllegalArgumentException if the query is not well formed
+     */
+    public static ImageQuery parse(String query) {
+        return parse(query, false);
+    }
+
+    /**
+     * Parse a query that is still being typed. A tag term at the very end of the query, not followed by a space, is
+     * taken as the start of a tag name, so the images with the tags it may become are found while it is typed.
+     *
+     * @param query the text of the query
+     * @return the parsed query
+     * @throws IllegalArgumentException if the query is not well formed
+     */
+    public static ImageQuery parsePartial(String query) {
+        return parse(query, true);
+    }
+
+    private static ImageQuery parse(String query, boolean partial) {
+        Parser parser = new Parser(tokenize(query));
+        if (partial && !query.isEmpty() && !Character.isWhitespace(query.charAt(query.length() - 1))) {
+            parser.partialPosition = parser.tokens.size() - 1;
+        }
+        Node root = parser.parseOr();
+        if (parser.position < parser.tokens.size()) {
+            throw new IllegalArgumentException("Unexpected " + parser.tokens.get(parser.position));
+        }
+        return new ImageQuery(root);
+    }
+
+    /**
+     * Find the images in scope that match this query. The images are found as the stream is consumed, so the first
+     * ones are available before the rest have been checked.
+     *
+     * @param data  the data to search, whose tag index is used
+     * @param scope the ids of the images to search among
+     * @return a stream of the matching images, in order of id
+     */
+    public Stream<ImageFile> stream(UserImageFileData data, CompressedBitmap scope) {
+        CompressedBitmap ids = CompressedBitmap.and(root.candidates(data, scope), scope);
+        Stream<ImageFile> imageFiles = Arrays.stream(ids.toArray()).mapToObj(data::getImageFileWithId)
+                .filter(Objects::nonNull);
+        return root.isExact() ? imageFiles : imageFiles.filter(root::matches);
+    }
+
+    /**
+     * Split a query into tokens: parentheses, the keywords AND, OR and NOT, tag terms starting with @, name and
+     * similar terms starting with name: or similar: (with a quoted or unquoted text), and bare words.
+     */
+    private static ArrayList<String> tokenize(String query) {
+        ArrayList<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else {
+                StringBuilder token = new StringBuilder();
+                if (query.startsWith("name:", i)) {
+                    token.append("name:");
+                    i += 5;
+                    if (i < query.length() && query.charAt(i) == '~') {
+                        token.append('~');
+                        i++;
+                    }
+                } else if (query.startsWith("similar:", i)) {
+                    token.append("similar:");
+                    i += 8;
+                }
+                if (i < query.length() && query.charAt(i) == '"') {
+                    // A quoted text, in which \" and \\ stand for " and \
+                    i++;
+                    while (i < query.length() && query.charAt(i) != '"') {
+                        if (query.charAt(i) == '\\' && i + 1 < query.length()
+                                && (query.charAt(i + 1) == '"' || query.charAt(i + 1) == '\\')) {
+                            i++;
+                        }
+                        token.append(query.charAt(i++));
+                    }
+                    if (i >= query.length()) {
+                        throw new IllegalArgumentException("Unterminated quote");
+                    }
+                    i++;
+                } else {
+                    while (i < query.length() && !Character.isWhitespace(query.charAt(i))
+                            && query.charAt(i) != '(' && query.charAt(i) != ')') {
+                        token.append(query.charAt(i++));
+                    }
+                }
+                tokens.add(token.toString());
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * A recursive descent parser over the tokens of a query.
+     */
+    private static class Parser {
+        final ArrayList<String> tokens;
+
+        int position;
+
+        /**
+         * The position of the token that may not be fully typed yet, or -1 if every token is complete.
+         */
+        int partialPosition = -1;
+
+        Parser(ArrayList<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        private boolean atKeyword(String keyword) {
+            return position < tokens.size() && tokens.get(position).equalsIgnoreCase(keyword);
+        }
+
+        Node parseOr() {
+            ArrayList<Node> children = new ArrayList<>();
+            children.add(parseAnd());
+            while (atKeyword("OR")) {
+                position++;
+                children.add(parseAnd());
+            }
+            return children.size() == 1 ? children.get(0) : new OrNode(children);
+        }
+
+        Node parseAnd() {
+            ArrayList<Node> children = new ArrayList<>();
+            children.add(parseNot());
+            while (position < tokens.size() && !atKeyword("OR") && !tokens.get(position).equals(")")) {
+                if (atKeyword("AND")) {
+                    position++;
+                }
+                children.add(parseNot());
+            }
+            return children.size() == 1 ? children.get(0) : new AndNode(children);
+        }
+
+        Node parseNot() {
+            if (atKeyword("NOT")) {
+                position++;
+                return new NotNode(parseNot());
+            }
+            return parseTerm();
+        }
+
+        Node parseTerm() {
+            if (position >= tokens.size()) {
+                throw new IllegalArgumentException("Unexpected end of query");
+            }
+            String token = tokens.get(position++);
+            if (token.equals("(")) {
+                Node node = parseOr();
+                if (position >= tokens.size() || !tokens.get(position).equals(")")) {
+                    throw new IllegalArgumentException("Missing )");
+                }
+                position++;
+                return node;
+            } else if (token.equals(")") || token.equalsIgnoreCase("AND") || token.equalsIgnoreCase("OR")) {
+                throw new IllegalArgumentException("Unexpected " + token);
+            } else if (token.startsWith("@")) {
+                boolean isPrefix = token.endsWith("*");
+                String name = token.substring(1, isPrefix ? token.length() - 1 : token.length());
+                if (name.isEmpty()) {
+                    throw new IllegalArgumentException("Missing tag name");
+                }
+                return new TagNode(name, isPrefix || position - 1 == partialPosition);
+            } else if (token.startsWith("name:~")) {
+                try {
+                    return new NameNode(token.substring(6), true);
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException(e.getMessage(), e);
+                }
+            } else if (token.startsWith("name:")) {
+                return new NameNode(token.substring(5), false);
+            } else if (token.startsWith("similar:")) {
+                return new SimilarNode(token.substring(8));
+            } else if (token.equalsIgnoreCase("is:duplicate")) {
+                return new DuplicateNode();
+            } else {
+                return new NameNode(token, false);
+            }
+        }
+    }
+}
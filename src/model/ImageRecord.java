@@ -0,0 +1,254 @@
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * The stored record of an ImageFile, which is decoded the first time the ImageFile is needed. Subclasses decide where
+ * the bytes of the record come from.
+ * <p>
+ * A record holds the current name, original name, directory, path and type of the image followed by the names of
+ * its tags, and ends with a history block (its length, the revision log and the tag history). The history block is
+ * decoded separately, the first time the revision log or tag history is used.
+ */
+abstract class ImageRecord {
+
+    /**
+     * The name the record was stored under.
+     */
+    final String key;
+
+    /**
+     * The absolute path of the image.
+     */
+    final String path;
+
+    /**
+     * The id of the image.
+     */
+    final int id;
+
+    /**
+     * The data the decoded ImageFile is added to.
+     */
+    private final UserImageFileData userImageFileData;
+
+    /**
+     * The decoded ImageFile, or null if the record has not been decoded yet.
+     */
+    private ImageFile imageFile;
+
+    ImageRecord(String key, String path, int id, UserImageFileData userImageFileData) {
+        this.key = key;
+        this.path = path;
+        this.id = id;
+        this.userImageFileData = userImageFileData;
+    }
+
+    /**
+     * Get the bytes of this record.
+     *
+     * @return a buffer whose position is the start of the record and whose limit is its end
+     */
+    abstract ByteBuffer getBytes();
+
+    /**
+     * Get the ImageFile stored in this record, decoding it and adding it to the data it belongs to if this is the
+     * first time it is needed. Its revision log and tag history are left undecoded.
+     *
+     * @return the ImageFile stored in this record
+     */
+    ImageFile getImageFile() {
+        if (imageFile == null) {
+            ByteBuffer buffer = getBytes();
+            String currentName = readString(buffer);
+            String originalName = readString(buffer);
+            String origName = readString(buffer);
+            String directory = readString(buffer);
+            File file = new File(readString(buffer));
+            String imageType = readString(buffer);
+            ArrayList<Tag> tagList = readTags(buffer);
+            int[] tagIds = new int[tagList.size()];
+            for (int i = 0; i < tagIds.length; i++) {
+                tagIds[i] = tagList.get(i).getId();
+            }
+
+            imageFile = new ImageFile(id, currentName, originalName, origName, directory, file, imageType, tagIds,
+                    this);
+            userImageFileData.recordDecoded(this, imageFile);
+        }
+        return imageFile;
+    }
+
+    /**
+     * Check if the record has been decoded.
+     *
+     * @return true iff the record has been decoded
+     */
+    boolean isDecoded() {
+        return imageFile != null;
+    }
+
+    /**
+     * Decode the revision log and tag history stored in this record.
+     *
+     * @param imageLogs  the list to add the revision log to
+     * @param tagHistory the list to add the tag history to
+     */
+    void decodeHistory(ArrayList<Log> imageLogs, ArrayList<ArrayList<Tag>> tagHistory) {
+        ByteBuffer buffer = getHistoryBytes();
+        buffer.getInt();
+        int logCount = buffer.getInt();
+        for (int i = 0; i < logCount; i++) {
+            imageLogs.add(new Log(readString(buffer), readString(buffer), readString(buffer)));
+        }
+        int tagHistoryCount = buffer.getInt();
+        for (int i = 0; i < tagHistoryCount; i++) {
+            tagHistory.add(readTags(buffer));
+        }
+    }
+
+    /**
+     * Copy this record, without decoding it, to the given stream.
+     *
+     * @param outputStream the stream to copy to
+     * @throws IOException if the bytes could not be written
+     */
+    void copyTo(OutputStream outputStream) throws IOException {
+        copy(getBytes(), outputStream);
+    }
+
+    /**
+     * Get the bytes of the history block of this record.
+     *
+     * @return a buffer whose position is the start of the history block and whose limit is the end of the record
+     */
+    private ByteBuffer getHistoryBytes() {
+        ByteBuffer buffer = getBytes();
+        for (int i = 0; i < 6; i++) {
+            skipString(buffer);
+        }
+        int tagCount = buffer.getInt();
+        for (int i = 0; i < tagCount; i++) {
+            skipString(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Read a list of tag names and resolve them to tags from the TagDictionary.
+     *
+     * @param buffer the buffer to read from
+     * @return the list of tags
+     */
+    private ArrayList<Tag> readTags(ByteBuffer buffer) {
+        int tagCount = buffer.getInt();
+        ArrayList<Tag> tags = new ArrayList<>(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+            tags.add(TagDictionary.intern(readString(buffer)));
+        }
+        return tags;
+    }
+
+    /**
+     * Encode the record of the given ImageFile.
+     *
+     * @param imageFile the ImageFile to encode
+     * @return the bytes of the record
+     */
+    static byte[] encode(ImageFile imageFile) {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        try {
+            write(new DataOutputStream(record), imageFile);
+        } catch (IOException e) {
+            // Writing to a ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+        return record.toByteArray();
+    }
+
+    /**
+     * Write the record of the given ImageFile. If its history has not been decoded yet, the history block is copied
+     * from the record it was decoded from.
+     *
+     * @param outputStream the stream to write to
+     * @param imageFile    the ImageFile to write
+     * @throws IOException if the record could not be written
+     */
+    static void write(DataOutputStream outputStream, ImageFile imageFile) throws IOException {
+        writeString(outputStream, imageFile.getCurrentName());
+        writeString(outputStream, imageFile.getOriginalName());
+        writeString(outputStream, imageFile.origName);
+        writeString(outputStream, imageFile.getDirectory());
+        writeString(outputStream, imageFile.getThisFile().getAbsolutePath());
+        writeString(outputStream, imageFile.getImageType());
+        writeTags(outputStream, imageFile.getTagList());
+
+        ImageRecord undecodedHistory = imageFile.getUndecodedHistory();
+        if (undecodedHistory != null) {
+            copy(undecodedHistory.getHistoryBytes(), outputStream);
+        } else {
+            ByteArrayOutputStream history = new ByteArrayOutputStream();
+            DataOutputStream historyStream = new DataOutputStream(history);
+            historyStream.writeInt(imageFile.getImageLogs().size());
+            for (Log log : imageFile.getImageLogs()) {
+                writeString(historyStream, log.getCurrentName());
+                writeString(historyStream, log.getOldName());
+                writeString(historyStream, log.getTimeStamp());
+            }
+            historyStream.writeInt(imageFile.getTagHistory().size());
+            for (ArrayList<Tag> tags : imageFile.getTagHistory()) {
+                writeTags(historyStream, tags);
+            }
+            outputStream.writeInt(history.size());
+            history.writeTo(outputStream);
+        }
+    }
+
+    private static void writeTags(DataOutputStream outputStream, ArrayList<Tag> tags) throws IOException {
+        outputStream.writeInt(tags.size());
+        for (Tag tag : tags) {
+            writeString(outputStream, tag.name);
+        }
+    }
+
+    private static void copy(ByteBuffer buffer, OutputStream outputStream) throws IOException {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        outputStream.write(bytes);
+    }
+
+    /**
+     * Write a string as its length in bytes followed by its UTF-8 encoding. Null is written as a length of -1.
+     */
+    static void writeString(DataOutputStream outputStream, String string) throws IOException {
+        if (string == null) {
+            outputStream.writeInt(-1);
+        } else {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            outputStream.writeInt(bytes.length);
+            outputStream.write(bytes);
+        }
+    }
+
+    static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        buffer.position(buffer.position() + Math.max(length, 0));
+    }
+}
@@ -0,0 +1,431 @@
+package model;
+
+import model.MutationJournal.Mutation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the user's data in an embedded SQL database, one row per image, tag and visited path, so that a change only
+ * writes the rows it touches. Image rows are decoded the first time the image is needed, like the records of a
+ * {@link LibraryFile}.
+ * <p>
+ * Only java.sql is used, so any embedded engine with a JDBC driver on the classpath works; the default URL is for H2.
+ * Changes are written in order on a background thread, and the database is only read while loading and when an
+ * image row is decoded.
+ */
+public class JdbcBackend implements StorageBackend {
+
+    /**
+     * The statements creating the tables, if they do not exist yet.
+     */
+    private static final String[] CREATE_TABLES = {
+            "CREATE TABLE IF NOT EXISTS images (path VARCHAR(4096) PRIMARY KEY, id INT NOT NULL, "
+                    + "name VARCHAR(1024) NOT NULL, record BLOB NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS tags (name VARCHAR(1024) PRIMARY KEY, position INT NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS tag_images (tag VARCHAR(1024) NOT NULL, path VARCHAR(4096) NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS visited_paths (position INT NOT NULL, path VARCHAR(4096) NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS fingerprints (id INT PRIMARY KEY, fingerprint BIGINT NOT NULL, "
+                    + "full_fingerprint BIGINT NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS perceptual_hashes (id INT PRIMARY KEY, hash BIGINT NOT NULL)"
+    };
+
+    /**
+     * The connection to the database.
+     */
+    private final Connection connection;
+
+    /**
+     * The data file whose snapshot is imported into the database when the database is empty.
+     */
+    private final File importDataFile;
+
+    /**
+     * The journal file imported along with the snapshot.
+     */
+    private final File importJournalFile;
+
+    /**
+     * The thread changes are written on.
+     */
+    private final ExecutorService writer;
+
+    /**
+     * The data that was loaded, which changes are read from.
+     */
+    private UserImageFileData userImageFileData;
+
+    /**
+     * The position the next tag or visited path is stored at.
+     */
+    private int nextPosition;
+
+    /**
+     * An image row, which is read from the database the first time it is needed.
+     */
+    private class Row extends ImageRecord {
+
+        /**
+         * The contents of the record, or null if they have not been read yet.
+         */
+        private byte[] bytes;
+
+        Row(String key, String path, int id) {
+            super(key, path, id, userImageFileData);
+        }
+
+        @Override
+        ByteBuffer getBytes() {
+            if (bytes == null) {
+                synchronized (connection) {
+                    try (PreparedStatement statement = connection.prepareStatement(
+                            "SELECT record FROM images WHERE path = ?")) {
+                        statement.setString(1, path);
+                        try (ResultSet resultSet = statement.executeQuery()) {
+                            if (!resultSet.next()) {
+                                throw new IllegalStateException("No row for " + path);
+                            }
+                            bytes = resultSet.getBytes(1);
+                        }
+                    } catch (SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+            return ByteBuffer.wrap(bytes);
+        }
+    }
+
+    private JdbcBackend(Connection connection, File importDataFile, File importJournalFile) {
+        this.connection = connection;
+        this.importDataFile = importDataFile;
+        this.importJournalFile = importJournalFile;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "storage-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Connect to a database and create its tables if needed.
+     *
+     * @param url               the JDBC URL of the database
+     * @param importDataFile    the data file whose snapshot is imported if the database is empty
+     * @param importJournalFile the journal file to import along with the snapshot
+     * @return the backend
+     * @throws SQLException if there is no driver for the URL or the database could not be opened
+     */
+    public static JdbcBackend connect(String url, File importDataFile, File importJournalFile) throws SQLException {
+        Connection connection = DriverManager.getConnection(url);
+        try (Statement statement = connection.createStatement()) {
+            for (String createTable : CREATE_TABLES) {
+                statement.execute(createTable);
+            }
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return new JdbcBackend(connection, importDataFile, importJournalFile);
+    }
+
+    /**
+     * Load the tags, visited paths and the index of image rows. If the database is empty and a snapshot exists, the
+     * snapshot is imported first.
+     */
+    @Override
+    public UserImageFileData load() throws IOException {
+        try {
+            if (isEmpty() && SerializedFileBackend.getSnapshotFile(importDataFile).exists()) {
+                userImageFileData = SerializedFileBackend.readLatest(importDataFile, importJournalFile);
+                importAll();
+                return userImageFileData;
+            }
+            userImageFileData = new UserImageFileData();
+            readAll();
+            return userImageFileData;
+        } catch (SQLException | ClassNotFoundException e) {
+            throw new IOException("Could not load the library from the database", e);
+        }
+    }
+
+    @Override
+    public void record(Mutation mutation, String... arguments) {
+        Runnable write;
+        switch (mutation) {
+            case ADD_IMAGE:
+            case SET_TAGS:
+                write = imageWrite(arguments[0], arguments[0]);
+                break;
+            case RENAME_IMAGE:
+            case MOVE_IMAGE:
+                write = imageWrite(arguments[0], arguments[1]);
+                break;
+            case CREATE_TAG:
+                write = sequence(update("INSERT INTO tags (name, position) VALUES (?, ?)", arguments[0],
+                        nextPosition++));
+                break;
+            case DELETE_TAG:
+                write = sequence(update("DELETE FROM tag_images WHERE tag = ?", arguments[0]),
+                        update("DELETE FROM tags WHERE name = ?", arguments[0]));
+                break;
+            case VISIT_PATH:
+                // A path visited again moves to the end of the list
+                write = sequence(update("DELETE FROM visited_paths WHERE path = ?", arguments[0]),
+                        update("INSERT INTO visited_paths (position, path) VALUES (?, ?)", nextPosition++,
+                                arguments[0]));
+                break;
+            case SET_FINGERPRINT:
+                write = fingerprintWrite(arguments[0], arguments[1], arguments[2]);
+                break;
+            case SET_PERCEPTUAL_HASH:
+                write = idWrite("perceptual_hashes", "hash", arguments[0], arguments[1]);
+                break;
+            default:
+                return;
+        }
+        if (write != null) {
+            writer.execute(write);
+        }
+    }
+
+    /**
+     * Make the write of a number stored by image id, such as a perceptual hash.
+     *
+     * @param table  the table, keyed by id
+     * @param column the column of the number
+     * @param path   the path of the image
+     * @param value  the number
+     * @return the write, or null if the image is not on record
+     */
+    private Runnable idWrite(String table, String column, String path, String value) {
+        ImageFile imageFile = userImageFileData.getImageFileWithFile(new File(path));
+        if (imageFile == null) {
+            return null;
+        }
+        return sequence(update("DELETE FROM " + table + " WHERE id = ?", imageFile.getId()),
+                update("INSERT INTO " + table + " (id, " + column + ") VALUES (?, ?)", imageFile.getId(),
+                        Long.parseLong(value)));
+    }
+
+    /**
+     * Make the write of the quick and full content fingerprints of an image.
+     *
+     * @param path            the path of the image
+     * @param fingerprint     the quick fingerprint
+     * @param fullFingerprint the full fingerprint, or 0 if it was not taken
+     * @return the write, or null if the image is not on record
+     */
+    private Runnable fingerprintWrite(String path, String fingerprint, String fullFingerprint) {
+        ImageFile imageFile = userImageFileData.getImageFileWithFile(new File(path));
+        if (imageFile == null) {
+            return null;
+        }
+        return sequence(update("DELETE FROM fingerprints WHERE id = ?", imageFile.getId()),
+                update("INSERT INTO fingerprints (id, fingerprint, full_fingerprint) VALUES (?, ?, ?)",
+                        imageFile.getId(), Long.parseLong(fingerprint), Long.parseLong(fullFingerprint)));
+    }
+
+    /**
+     * Finish writing every recorded change, then close the connection.
+     */
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (connection) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Make the write of the row of an image and its tags. The row is encoded now, on the calling thread, so the
+     * write does not read the data while it is being changed.
+     *
+     * @param oldPath the path the image was stored under
+     * @param newPath the path of the image now
+     * @return the write
+     */
+    private Runnable imageWrite(String oldPath, String newPath) {
+        ImageFile imageFile = userImageFileData.getImageFileWithFile(new File(newPath));
+        if (imageFile == null) {
+            return sequence(update("DELETE FROM tag_images WHERE path = ?", oldPath),
+                    update("DELETE FROM images WHERE path = ?", oldPath));
+        }
+        byte[] record = ImageRecord.encode(imageFile);
+        String name = imageFile.getCurrentName();
+        ArrayList<Runnable> writes = new ArrayList<>();
+        writes.add(update("DELETE FROM tag_images WHERE path = ?", oldPath));
+        writes.add(update("DELETE FROM images WHERE path = ?", oldPath));
+        writes.add(update("DELETE FROM images WHERE path = ?", newPath));
+        writes.add(update("INSERT INTO images (path, id, name, record) VALUES (?, ?, ?, ?)", newPath,
+                imageFile.getId(), name, record));
+        for (Tag tag : imageFile.getTagList()) {
+            writes.add(update("INSERT INTO tag_images (tag, path) VALUES (?, ?)", tag.name, newPath));
+        }
+        return sequence(writes.toArray(new Runnable[writes.size()]));
+    }
+
+    /**
+     * Make a write running the given writes in one transaction.
+     */
+    private Runnable sequence(Runnable... writes) {
+        return () -> {
+            synchronized (connection) {
+                try {
+                    connection.setAutoCommit(false);
+                    for (Runnable write : writes) {
+                        write.run();
+                    }
+                    connection.commit();
+                } catch (SQLException | RuntimeException e) {
+                    e.printStackTrace();
+                    rollback();
+                } finally {
+                    try {
+                        connection.setAutoCommit(true);
+                    } catch (SQLException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Make a write running one update statement. It must be run inside {@link #sequence(Runnable...)}.
+     */
+    private Runnable update(String sql, Object... parameters) {
+        return () -> {
+            synchronized (connection) {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    for (int i = 0; i < parameters.length; i++) {
+                        statement.setObject(i + 1, parameters[i]);
+                    }
+                    statement.executeUpdate();
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+
+    private void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean isEmpty() throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(
+                     "SELECT (SELECT COUNT(*) FROM images) + (SELECT COUNT(*) FROM tags)")) {
+            return resultSet.next() && resultSet.getLong(1) == 0;
+        }
+    }
+
+    /**
+     * Read the tags, visited paths and the index of image rows into userImageFileData.
+     */
+    private void readAll() throws SQLException {
+        HashMap<String, Row> rowsByPath = new HashMap<>();
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("SELECT name, position FROM tags ORDER BY position")) {
+                while (resultSet.next()) {
+                    userImageFileData.allTags.add(TagDictionary.intern(resultSet.getString(1)));
+                    nextPosition = Math.max(nextPosition, resultSet.getInt(2) + 1);
+                }
+            }
+            try (ResultSet resultSet = statement.executeQuery(
+                    "SELECT position, path FROM visited_paths ORDER BY position")) {
+                while (resultSet.next()) {
+                    userImageFileData.getVisitedPaths().add(resultSet.getString(2));
+                    nextPosition = Math.max(nextPosition, resultSet.getInt(1) + 1);
+                }
+            }
+            try (ResultSet resultSet = statement.executeQuery("SELECT path, id, name FROM images")) {
+                while (resultSet.next()) {
+                    Row row = new Row(resultSet.getString(3), resultSet.getString(1), resultSet.getInt(2));
+                    rowsByPath.put(row.path, row);
+                    userImageFileData.addUndecodedRecord(row);
+                }
+            }
+            try (ResultSet resultSet = statement.executeQuery("SELECT tag, path FROM tag_images")) {
+                while (resultSet.next()) {
+                    Tag tag = TagDictionary.intern(resultSet.getString(1));
+                    Row row = rowsByPath.get(resultSet.getString(2));
+                    if (row != null) {
+                        userImageFileData.getTagIndex().addImageToTag(tag.getId(), row.id);
+                    }
+                }
+            }
+            try (ResultSet resultSet = statement.executeQuery(
+                    "SELECT id, fingerprint, full_fingerprint FROM fingerprints")) {
+                while (resultSet.next()) {
+                    userImageFileData.getFingerprintIndex().set(resultSet.getInt(1), resultSet.getLong(2),
+                            resultSet.getLong(3));
+                }
+            }
+            try (ResultSet resultSet = statement.executeQuery("SELECT id, hash FROM perceptual_hashes")) {
+                while (resultSet.next()) {
+                    userImageFileData.getPerceptualHashIndex().set(resultSet.getInt(1), resultSet.getLong(2));
+                }
+            }
+        }
+    }
+
+    /**
+     * Write every tag, visited path and image of userImageFileData to the empty database, in one transaction.
+     */
+    private void importAll() {
+        ArrayList<Runnable> writes = new ArrayList<>();
+        for (Tag tag : userImageFileData.allTags) {
+            writes.add(update("INSERT INTO tags (name, position) VALUES (?, ?)", tag.name, nextPosition++));
+        }
+        for (String path : userImageFileData.getVisitedPaths()) {
+            writes.add(update("INSERT INTO visited_paths (position, path) VALUES (?, ?)", nextPosition++, path));
+        }
+        for (Map.Entry<String, ImageFile> entry : userImageFileData.getNameToImageFileMap().entrySet()) {
+            ImageFile imageFile = entry.getValue();
+            String path = imageFile.getThisFile().getAbsolutePath();
+            writes.add(update("INSERT INTO images (path, id, name, record) VALUES (?, ?, ?, ?)", path,
+                    imageFile.getId(), entry.getKey(), ImageRecord.encode(imageFile)));
+            for (Tag tag : imageFile.getTagList()) {
+                writes.add(update("INSERT INTO tag_images (tag, path) VALUES (?, ?)", tag.name, path));
+            }
+        }
+        FingerprintIndex fingerprintIndex = userImageFileData.getFingerprintIndex();
+        for (Map.Entry<Integer, Long> fingerprint : fingerprintIndex.getFingerprints().entrySet()) {
+            writes.add(update("INSERT INTO fingerprints (id, fingerprint, full_fingerprint) VALUES (?, ?, ?)",
+                    fingerprint.getKey(), fingerprint.getValue(), fingerprintIndex.getFull(fingerprint.getKey())));
+        }
+        for (Map.Entry<Integer, Long> hash : userImageFileData.getPerceptualHashIndex().getHashes().entrySet()) {
+            writes.add(update("INSERT INTO perceptual_hashes (id, hash) VALUES (?, ?)", hash.getKey(),
+                    hash.getValue()));
+        }
+        sequence(writes.toArray(new Runnable[writes.size()])).run();
+    }
+}
@@ -0,0 +1,237 @@
+package model;
+
+import utils.CompressedBitmap;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Map;
+
+import static model.ImageRecord.readString;
+import static model.ImageRecord.writeString;
+
+/**
+ * A compact, versioned binary file holding all user data, which is memory-mapped when read.
+ * <p>
+ * Only the index of the file is decoded when it is read. Each ImageFile is stored as an {@link ImageRecord}, which is
+ * decoded the first time the ImageFile is requested from its {@link UserImageFileData}. Records that were never
+ * decoded are copied byte for byte when the data is written again.
+ * <p>
+ * Layout: a header (magic number, version), the ImageFile records, a footer (the last journal generation contained
+ * in the file, the next image id, visited paths, tags, the index of records, and the content fingerprints and
+ * perceptual hashes of the images by id) and finally the offset of the footer. Each tag is stored with its
+ * {@link CompressedBitmap} of image ids from the {@link TagIndex}, which is read back into the index as is.
+ */
+public class LibraryFile {
+
+    /**
+     * The first four bytes of every library file.
+     */
+    private static final int MAGIC = 0x43544C42;
+
+    /**
+     * The version of the format written by this class.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The mapped contents of the file.
+     */
+    private final MappedByteBuffer mappedFile;
+
+    /**
+     * The data whose ImageFiles are stored in this file.
+     */
+    private final UserImageFileData userImageFileData;
+
+    /**
+     * The ImageFile record of a library file, which is read from the mapped file.
+     */
+    class Entry extends ImageRecord {
+        /**
+         * The position of the record in the file.
+         */
+        final int offset;
+
+        /**
+         * The length of the record in bytes.
+         */
+        final int length;
+
+        Entry(String key, String path, int id, int offset, int length) {
+            super(key, path, id, userImageFileData);
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        ByteBuffer getBytes() {
+            ByteBuffer buffer = mappedFile.duplicate();
+            buffer.limit(offset + length);
+            buffer.position(offset);
+            return buffer;
+        }
+    }
+
+    private LibraryFile(MappedByteBuffer mappedFile, UserImageFileData userImageFileData) {
+        this.mappedFile = mappedFile;
+        this.userImageFileData = userImageFileData;
+    }
+
+    /**
+     * Check if the given file is a library file, rather than data saved by an older version of the program.
+     *
+     * @param file the file to check
+     * @return true iff the file starts with the library file magic number
+     * @throws IOException if the file could not be read
+     */
+    public static boolean isLibraryFile(File file) throws IOException {
+        try (DataInputStream inputStream = new DataInputStream(new FileInputStream(file))) {
+            return file.length() >= 8 && inputStream.readInt() == MAGIC;
+        }
+    }
+
+    /**
+     * Read a library file. Only the index is decoded; ImageFiles are decoded as they are needed.
+     *
+     * @param file the library file
+     * @return the data stored in the file
+     * @throws IOException if the file could not be read or is not a supported library file
+     */
+    public static UserImageFileData read(File file) throws IOException {
+        MappedByteBuffer mappedFile;
+        try (FileChannel fileChannel = new RandomAccessFile(file, "r").getChannel()) {
+            mappedFile = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+        }
+        ByteBuffer buffer = mappedFile.duplicate();
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException(file.getPath() + " is not a library file.");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported library file version " + version + ".");
+        }
+        buffer.position((int) buffer.getLong(buffer.limit() - 8));
+
+        UserImageFileData userImageFileData = new UserImageFileData();
+        LibraryFile libraryFile = new LibraryFile(mappedFile, userImageFileData);
+        userImageFileData.journalGeneration = buffer.getLong();
+        userImageFileData.setNextImageId(buffer.getInt());
+
+        int pathCount = buffer.getInt();
+        for (int i = 0; i < pathCount; i++) {
+            userImageFileData.getVisitedPaths().add(readString(buffer));
+        }
+
+        int tagCount = buffer.getInt();
+        ArrayList<Tag> tags = new ArrayList<>();
+        for (int i = 0; i < tagCount; i++) {
+            Tag tag = TagDictionary.intern(readString(buffer));
+            userImageFileData.getTagIndex().setImageIds(tag.getId(), CompressedBitmap.read(buffer));
+            tags.add(tag);
+        }
+        userImageFileData.allTags = tags;
+
+        int entryCount = buffer.getInt();
+        for (int i = 0; i < entryCount; i++) {
+            String key = readString(buffer);
+            String path = readString(buffer);
+            userImageFileData.addUndecodedRecord(libraryFile.new Entry(key, path, buffer.getInt(), buffer.getInt(),
+                    buffer.getInt()));
+        }
+
+        int fingerprintCount = buffer.getInt();
+        for (int i = 0; i < fingerprintCount; i++) {
+            userImageFileData.getFingerprintIndex().set(buffer.getInt(), buffer.getLong(), buffer.getLong());
+        }
+
+        int hashCount = buffer.getInt();
+        for (int i = 0; i < hashCount; i++) {
+            userImageFileData.getPerceptualHashIndex().set(buffer.getInt(), buffer.getLong());
+        }
+        return userImageFileData;
+    }
+
+    /**
+     * Write the given data to a library file. Records that have not been decoded since the data was read are copied
+     * without being decoded.
+     * <p>
+     * The file must not be the one the data was read from, since that file is still mapped.
+     *
+     * @param userImageFileData the data to write
+     * @param file              the file to write to
+     * @throws IOException if the file could not be written
+     */
+    public static void write(UserImageFileData userImageFileData, File file) throws IOException {
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)))) {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+
+            ArrayList<String> keys = new ArrayList<>();
+            ArrayList<String> paths = new ArrayList<>();
+            ArrayList<Integer> ids = new ArrayList<>();
+            ArrayList<Integer> offsets = new ArrayList<>();
+
+            for (Map.Entry<String, ImageFile> imageFileEntry : userImageFileData.nameToImageFileMap.entrySet()) {
+                keys.add(imageFileEntry.getKey());
+                paths.add(imageFileEntry.getValue().getThisFile().getAbsolutePath());
+                ids.add(imageFileEntry.getValue().getId());
+                offsets.add(outputStream.size());
+                ImageRecord.write(outputStream, imageFileEntry.getValue());
+            }
+            for (ImageRecord record : userImageFileData.undecodedRecords.values()) {
+                keys.add(record.key);
+                paths.add(record.path);
+                ids.add(record.id);
+                offsets.add(outputStream.size());
+                record.copyTo(outputStream);
+            }
+            int footerOffset = outputStream.size();
+            outputStream.writeLong(userImageFileData.journalGeneration);
+            outputStream.writeInt(userImageFileData.getNextImageId());
+
+            String[] visitedPaths = userImageFileData.getPreviousPathsVisited();
+            outputStream.writeInt(visitedPaths.length);
+            for (String path : visitedPaths) {
+                writeString(outputStream, path);
+            }
+
+            ArrayList<Tag> tags = userImageFileData.allTags == null ? new ArrayList<>() : userImageFileData.allTags;
+            outputStream.writeInt(tags.size());
+            for (Tag tag : tags) {
+                writeString(outputStream, tag.name);
+                userImageFileData.getTagIndex().getImageIds(tag).write(outputStream);
+            }
+
+            outputStream.writeInt(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                int recordEnd = i + 1 < keys.size() ? offsets.get(i + 1) : footerOffset;
+                writeString(outputStream, keys.get(i));
+                writeString(outputStream, paths.get(i));
+                outputStream.writeInt(ids.get(i));
+                outputStream.writeInt(offsets.get(i));
+                outputStream.writeInt(recordEnd - offsets.get(i));
+            }
+
+            FingerprintIndex fingerprintIndex = userImageFileData.getFingerprintIndex();
+            Map<Integer, Long> fingerprints = fingerprintIndex.getFingerprints();
+            outputStream.writeInt(fingerprints.size());
+            for (Map.Entry<Integer, Long> fingerprint : fingerprints.entrySet()) {
+                outputStream.writeInt(fingerprint.getKey());
+                outputStream.writeLong(fingerprint.getValue());
+                outputStream.writeLong(fingerprintIndex.getFull(fingerprint.getKey()));
+            }
+
+            Map<Integer, Long> hashes = userImageFileData.getPerceptualHashIndex().getHashes();
+            outputStream.writeInt(hashes.size());
+            for (Map.Entry<Integer, Long> hash : hashes.entrySet()) {
+                outputStream.writeInt(hash.getKey());
+                outputStream.writeLong(hash.getValue());
+            }
+            outputStream.writeLong(footerOffset);
+        }
+    }
+}
@@ -9,6 +9,9 @@ import java.io.Serializable;
  * @author Caroline Ming
  */
 public class Log implements Serializable{
+
+    private static final long serialVersionUID = 6852310676936227899L;
+
     /**
      * the current name of the image file
      */
@@ -0,0 +1,318 @@
+package model;
+
+import java.io.*;
+import java.util.ArrayList;
+
+/**
+ * An append-only record of every change made to the user's data since the last snapshot was saved.
+ * <p>
+ * Each mutation is written to the end of the journal file as soon as it happens, so the cost of persisting a change
+ * depends only on the size of that change. On startup the journal is replayed on top of the last snapshot, and once
+ * a snapshot containing its changes is written the journal is reset.
+ * <p>
+ * Every record is stored as its length followed by its payload, so that a record cut short by a crash can be
+ * detected and discarded.
+ */
+public class MutationJournal {
+
+    /**
+     * The kinds of changes that can be recorded in the journal.
+     */
+    public enum Mutation {
+        /** A new image was added to the records. Arguments: path */
+        ADD_IMAGE,
+        /** An image was renamed. Arguments: old path, new path, time stamp */
+        RENAME_IMAGE,
+        /** An image was moved to another directory. Arguments: old path, new path */
+        MOVE_IMAGE,
+        /** The tags of an image were set. Arguments: path, tag names... */
+        SET_TAGS,
+        /** A tag was created. Arguments: tag name */
+        CREATE_TAG,
+        /** A tag was deleted. Arguments: tag name */
+        DELETE_TAG,
+        /** A directory was visited. Arguments: path */
+        VISIT_PATH,
+        /** The content fingerprints of an image were set. Arguments: path, fingerprint, full fingerprint */
+        SET_FINGERPRINT,
+        /** The perceptual hash of an image was set. Arguments: path, hash */
+        SET_PERCEPTUAL_HASH
+    }
+
+    /**
+     * The file holding the journal.
+     */
+    private File journalFile;
+
+    /**
+     * The stream new records are appended to, or null if the journal is not open.
+     */
+    private DataOutputStream journalOutputStream;
+
+    /**
+     * The number of bytes at the start of the journal file that hold complete records.
+     */
+    private long validLength;
+
+    /**
+     * The number of records in the journal.
+     */
+    private int entryCount;
+
+    /**
+     * Construct a journal backed by the given file. The journal must be opened before records can be appended.
+     *
+     * @param journalFile the file holding the journal
+     */
+    public MutationJournal(File journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * Apply every complete record in the journal to the given data, in the order they were recorded. Tags are
+     * looked up in and added to the data's own tag list, so the data does not have to be the data of this session.
+     *
+     * @param userImageFileData the data to apply the records to
+     * @return the number of records replayed
+     * @throws IOException if the journal could not be read
+     */
+    public int replay(UserImageFileData userImageFileData) throws IOException {
+        validLength = 0;
+        entryCount = 0;
+        if (!journalFile.exists()) {
+            return 0;
+        }
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(journalFile)))) {
+            while (true) {
+                byte[] payload;
+                try {
+                    payload = new byte[inputStream.readInt()];
+                    inputStream.readFully(payload);
+                } catch (EOFException e) {
+                    // The end of the journal, or a record that was cut short.
+                    break;
+                }
+                DataInputStream recordStream = new DataInputStream(new ByteArrayInputStream(payload));
+                Mutation mutation = Mutation.values()[recordStream.readByte()];
+                String[] arguments = new String[recordStream.readShort()];
+                for (int i = 0; i < arguments.length; i++) {
+                    arguments[i] = recordStream.readUTF();
+                }
+                apply(userImageFileData, mutation, arguments);
+                validLength += 4 + payload.length;
+                entryCount++;
+            }
+        }
+        return entryCount;
+    }
+
+    /**
+     * Open the journal for appending. Any incomplete record left at the end of the file is discarded.
+     *
+     * @throws IOException if the journal file could not be opened
+     */
+    public synchronized void open() throws IOException {
+        File parentDirectory = journalFile.getAbsoluteFile().getParentFile();
+        if (!parentDirectory.exists() && !parentDirectory.mkdirs()) {
+            throw new IOException("There was an error making a directory for the journal!");
+        }
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile, "rw")) {
+            randomAccessFile.setLength(validLength);
+        }
+        journalOutputStream = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(journalFile, true)));
+    }
+
+    /**
+     * Append a record to the end of the journal.
+     *
+     * @param mutation  the kind of change being recorded
+     * @param arguments the values describing the change
+     * @throws IOException if the record could not be written
+     */
+    public synchronized void append(Mutation mutation, String... arguments) throws IOException {
+        if (journalOutputStream == null) {
+            throw new IOException("The journal is not open.");
+        }
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream recordStream = new DataOutputStream(payload);
+        recordStream.writeByte(mutation.ordinal());
+        recordStream.writeShort(arguments.length);
+        for (String argument : arguments) {
+            recordStream.writeUTF(argument);
+        }
+        journalOutputStream.writeInt(payload.size());
+        payload.writeTo(journalOutputStream);
+        journalOutputStream.flush();
+        validLength += 4 + payload.size();
+        entryCount++;
+    }
+
+    /**
+     * Discard every record in the journal. Should only be called once the records are contained in a saved snapshot.
+     *
+     * @throws IOException if the journal could not be truncated
+     */
+    public synchronized void reset() throws IOException {
+        boolean wasOpen = journalOutputStream != null;
+        close();
+        validLength = 0;
+        entryCount = 0;
+        if (wasOpen) {
+            open();
+        } else if (journalFile.exists() && !journalFile.delete()) {
+            throw new IOException("There was an error clearing the journal!");
+        }
+    }
+
+    /**
+     * Move every record in the journal to the given file and continue with an empty journal. Records appended while
+     * the journal is being sealed go to the new journal.
+     *
+     * @param sealedFile the file to move the records to, which must not exist yet
+     * @throws IOException if the journal could not be moved
+     */
+    public synchronized void seal(File sealedFile) throws IOException {
+        boolean wasOpen = journalOutputStream != null;
+        close();
+        if (!journalFile.renameTo(sealedFile)) {
+            throw new IOException("There was an error sealing the journal!");
+        }
+        validLength = 0;
+        entryCount = 0;
+        if (wasOpen) {
+            open();
+        }
+    }
+
+    /**
+     * Get the file holding the journal.
+     *
+     * @return the journal file
+     */
+    public File getJournalFile() {
+        return journalFile;
+    }
+
+    /**
+     * Close the journal. Records already appended remain in the journal file.
+     */
+    public synchronized void close() {
+        if (journalOutputStream != null) {
+            try {
+                journalOutputStream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            journalOutputStream = null;
+        }
+    }
+
+    /**
+     * Get the number of records in the journal.
+     *
+     * @return the number of records
+     */
+    public synchronized int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Apply a single recorded change to the given data.
+     *
+     * @param userImageFileData the data to change
+     * @param mutation          the kind of change
+     * @param arguments         the values describing the change
+     */
+    private static void apply(UserImageFileData userImageFileData, Mutation mutation, String[] arguments) {
+        ImageFile imageFile;
+        switch (mutation) {
+            case ADD_IMAGE:
+                File file = new File(arguments[0]);
+                if (userImageFileData.getImageFileWithFile(file) == null) {
+                    userImageFileData.addImageFileToMap(new ImageFile(file));
+                }
+                break;
+            case RENAME_IMAGE:
+            case MOVE_IMAGE:
+                imageFile = userImageFileData.getImageFileWithFile(new File(arguments[0]));
+                if (imageFile != null) {
+                    File newFile = new File(arguments[1]);
+                    File oldFile = imageFile.getThisFile();
+                    String oldName = imageFile.getCurrentName();
+                    if (mutation == Mutation.RENAME_IMAGE || !imageFile.getThisFile().getName()
+                            .equals(newFile.getName())) {
+                        imageFile.generalReName(newFile.getName());
+                    }
+                    if (mutation == Mutation.RENAME_IMAGE) {
+                        ArrayList<Log> imageLogs = imageFile.getImageLogs();
+                        imageLogs.get(imageLogs.size() - 1).setTimeStamp(arguments[2]);
+                    }
+                    imageFile.setFile(newFile);
+                    userImageFileData.resetImageFileKey(imageFile, oldName, oldFile);
+                }
+                break;
+            case SET_TAGS:
+                imageFile = userImageFileData.getImageFileWithFile(new File(arguments[0]));
+                if (imageFile != null) {
+                    imageFile.updateTagHistory(imageFile.getTagList());
+                    ArrayList<Tag> tags = new ArrayList<>();
+                    for (int i = 1; i < arguments.length; i++) {
+                        Tag tag = TagDictionary.intern(arguments[i]);
+                        if (findTag(userImageFileData, arguments[i]) == null) {
+                            userImageFileData.allTags.add(tag);
+                        }
+                        tags.add(tag);
+                    }
+                    imageFile.setTags(tags);
+                    userImageFileData.getTagIndex().setTags(imageFile.getId(), imageFile.getTagIds());
+                }
+                break;
+            case CREATE_TAG:
+                if (findTag(userImageFileData, arguments[0]) == null) {
+                    userImageFileData.allTags.add(TagDictionary.intern(arguments[0]));
+                }
+                break;
+            case DELETE_TAG:
+                Tag tag = findTag(userImageFileData, arguments[0]);
+                if (tag != null) {
+                    userImageFileData.allTags.remove(tag);
+                }
+                userImageFileData.getTagIndex().removeTag(TagDictionary.intern(arguments[0]));
+                break;
+            case VISIT_PATH:
+                userImageFileData.addPathToVisitedList(arguments[0]);
+                break;
+            case SET_FINGERPRINT:
+                imageFile = userImageFileData.getImageFileWithFile(new File(arguments[0]));
+                if (imageFile != null) {
+                    userImageFileData.setFingerprint(imageFile, Long.parseLong(arguments[1]),
+                            Long.parseLong(arguments[2]));
+                }
+                break;
+            case SET_PERCEPTUAL_HASH:
+                imageFile = userImageFileData.getImageFileWithFile(new File(arguments[0]));
+                if (imageFile != null) {
+                    userImageFileData.setPerceptualHash(imageFile, Long.parseLong(arguments[1]));
+                }
+                break;
+        }
+    }
+
+    /**
+     * Find the tag with the given name among the tags of the given data.
+     *
+     * @param userImageFileData the data holding the tags
+     * @param name              the name of the tag
+     * @return the tag, or null if the data has no tag with that name
+     */
+    private static Tag findTag(UserImageFileData userImageFileData, String name) {
+        for (Tag tag : userImageFileData.allTags) {
+            if (tag.name.equals(name)) {
+                return tag;
+            }
+        }
+        return null;
+    }
+}
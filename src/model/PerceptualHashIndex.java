@@ -0,0 +1,151 @@
+package model;
+
+import utils.BKTree;
+import utils.CompressedBitmap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An index of the perceptual hashes of images, from {@link utils.PerceptualHash}, kept in a {@link BKTree} so that the
+ * near duplicates of an image are found without comparing it against every other image.
+ */
+public class PerceptualHashIndex {
+
+    /**
+     * The hash of each image that has one, by image id.
+     */
+    private final HashMap<Integer, Long> hashesByImageId = new HashMap<>();
+
+    private final BKTree<Integer> tree = new BKTree<>();
+
+    /**
+     * Set the hash of an image, replacing the one it had.
+     *
+     * @param imageId the id of the image
+     * @param hash    the hash
+     */
+    void set(int imageId, long hash) {
+        Long previous = hashesByImageId.put(imageId, hash);
+        if (previous != null) {
+            tree.remove(previous, imageId);
+        }
+        tree.add(hash, imageId);
+    }
+
+    /**
+     * Remove the hash of an image.
+     *
+     * @param imageId the id of the image
+     */
+    void remove(int imageId) {
+        Long hash = hashesByImageId.remove(imageId);
+        if (hash != null) {
+            tree.remove(hash, imageId);
+        }
+    }
+
+    /**
+     * Get the hash of an image.
+     *
+     * @param imageId the id of the image
+     * @return the hash, or 0 if the image has none
+     */
+    public long get(int imageId) {
+        Long hash = hashesByImageId.get(imageId);
+        return hash == null ? 0 : hash;
+    }
+
+    /**
+     * Get the number of images with a hash.
+     *
+     * @return the number of images
+     */
+    public int size() {
+        return hashesByImageId.size();
+    }
+
+    /**
+     * Find the images whose hashes are within the given distance of an image's hash, the image itself included.
+     *
+     * @param imageId     the id of the image
+     * @param maxDistance the greatest number of differing bits
+     * @return the ids of the images found, nearest first, or an empty list if the image has no hash
+     */
+    public ArrayList<Integer> findNear(int imageId, int maxDistance) {
+        ArrayList<Integer> imageIds = new ArrayList<>();
+        Long hash = hashesByImageId.get(imageId);
+        if (hash != null) {
+            for (BKTree.Match<Integer> match : tree.search(hash, maxDistance)) {
+                imageIds.add(match.getValue());
+            }
+        }
+        return imageIds;
+    }
+
+    /**
+     * Group the images in scope into clusters of near duplicates. Two images are in the same cluster if a chain of
+     * images in scope, each within the given distance of the next, leads from one to the other.
+     *
+     * @param scope       the ids of the images to group
+     * @param maxDistance the greatest number of differing bits between neighbours in a chain
+     * @return the clusters of two or more images, each in order of id, largest cluster first
+     */
+    public ArrayList<int[]> cluster(CompressedBitmap scope, int maxDistance) {
+        // Union-find over the images in scope, joining each image with its neighbours from the tree
+        HashMap<Integer, Integer> parents = new HashMap<>();
+        for (int imageId : scope.toArray()) {
+            if (!hashesByImageId.containsKey(imageId)) {
+                continue;
+            }
+            parents.putIfAbsent(imageId, imageId);
+            for (int nearId : findNear(imageId, maxDistance)) {
+                if (nearId != imageId && scope.contains(nearId)) {
+                    parents.putIfAbsent(nearId, nearId);
+                    int root = find(parents, imageId);
+                    int nearRoot = find(parents, nearId);
+                    if (root != nearRoot) {
+                        parents.put(Math.max(root, nearRoot), Math.min(root, nearRoot));
+                    }
+                }
+            }
+        }
+        HashMap<Integer, CompressedBitmap> clustersByRoot = new HashMap<>();
+        for (int imageId : parents.keySet()) {
+            clustersByRoot.computeIfAbsent(find(parents, imageId), root -> new CompressedBitmap()).add(imageId);
+        }
+        ArrayList<int[]> clusters = new ArrayList<>();
+        for (CompressedBitmap cluster : clustersByRoot.values()) {
+            if (cluster.getCardinality() > 1) {
+                clusters.add(cluster.toArray());
+            }
+        }
+        clusters.sort((first, second) -> first.length != second.length ? Integer.compare(second.length, first.length)
+                : Integer.compare(first[0], second[0]));
+        return clusters;
+    }
+
+    /**
+     * Get the hash of every image that has one, by image id.
+     *
+     * @return the hashes, which must not be changed
+     */
+    Map<Integer, Long> getHashes() {
+        return hashesByImageId;
+    }
+
+    private static int find(HashMap<Integer, Integer> parents, int imageId) {
+        int root = imageId;
+        while (parents.get(root) != root) {
+            root = parents.get(root);
+        }
+        // Point the chain straight at the root so later finds are short
+        while (parents.get(imageId) != root) {
+            int next = parents.get(imageId);
+            parents.put(imageId, root);
+            imageId = next;
+        }
+        return root;
+    }
+}
@@ -0,0 +1,278 @@
+package model;
+
+import exceptions.DirectoryCreationException;
+import exceptions.FileNotCreatedException;
+import model.MutationJournal.Mutation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Keeps the user's data in a snapshot file, with changes appended to a journal and folded into a new snapshot by a
+ * {@link CheckpointWorker}.
+ * <p>
+ * The snapshot read by a session stays memory-mapped, and a mapped file cannot be replaced on every platform, so each
+ * snapshot is saved to a new numbered file next to the data file (data.ctags.1, data.ctags.2, ...) and a small
+ * pointer file (data.ctags.current) is switched to it. Older snapshots are deleted once nothing maps them. Data
+ * saved before there was a pointer file is read from the data file itself.
+ */
+@SuppressWarnings("ResultOfMethodCallIgnored")
+public class SerializedFileBackend implements StorageBackend {
+
+    /**
+     * The data file, which names the snapshot files.
+     */
+    private final File dataFile;
+
+    /**
+     * The number of seconds between background checkpoints.
+     */
+    private final int checkpointIntervalSeconds;
+
+    /**
+     * The number of changes after which a checkpoint is saved without waiting for the interval.
+     */
+    private final int checkpointMutationThreshold;
+
+    /**
+     * The journal of changes made since the last snapshot.
+     */
+    private final MutationJournal journal;
+
+    /**
+     * The worker that folds the journal into the snapshot in the background.
+     */
+    private CheckpointWorker checkpointWorker;
+
+    /**
+     * Construct a backend for the given snapshot and journal files.
+     *
+     * @param dataFile                    the data file, which names the snapshot files
+     * @param journalFile                 the journal file
+     * @param checkpointIntervalSeconds   the number of seconds between background checkpoints
+     * @param checkpointMutationThreshold the number of changes after which a checkpoint is saved early
+     */
+    public SerializedFileBackend(File dataFile, File journalFile, int checkpointIntervalSeconds,
+                                 int checkpointMutationThreshold) {
+        this.dataFile = dataFile;
+        this.journal = new MutationJournal(journalFile);
+        this.checkpointIntervalSeconds = checkpointIntervalSeconds;
+        this.checkpointMutationThreshold = checkpointMutationThreshold;
+    }
+
+    /**
+     * Load the snapshot and replay the journals left by previous sessions on top of it, then open the journal for
+     * new records and start saving checkpoints. A snapshot that cannot be read is deleted.
+     */
+    @Override
+    public UserImageFileData load() throws IOException {
+        UserImageFileData userImageFileData;
+        try {
+            userImageFileData = readSnapshot(dataFile);
+        } catch (IOException | ClassNotFoundException e) {
+            File snapshotFile = getSnapshotFile(dataFile);
+            snapshotFile.delete();
+            getPointerFile(dataFile).delete();
+            throw new IOException("Could not read " + snapshotFile.getPath(), e);
+        }
+        replayJournals(userImageFileData, journal);
+        journal.open();
+
+        checkpointWorker = new CheckpointWorker(dataFile, journal, userImageFileData.journalGeneration,
+                checkpointIntervalSeconds, checkpointMutationThreshold);
+        checkpointWorker.start();
+        return userImageFileData;
+    }
+
+    @Override
+    public void record(Mutation mutation, String... arguments) {
+        try {
+            journal.append(mutation, arguments);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        checkpointWorker.mutationRecorded();
+    }
+
+    /**
+     * Get the worker saving checkpoints, which reports how long the last checkpoint took and how large it was.
+     *
+     * @return the checkpoint worker, or null if the backend has not been loaded
+     */
+    public CheckpointWorker getCheckpointWorker() {
+        return checkpointWorker;
+    }
+
+    /**
+     * Stop saving checkpoints and close the journal. Every change is already in the journal, so nothing has to be
+     * written here; the journal is folded into the snapshot by a checkpoint during the next session.
+     */
+    @Override
+    public void close() {
+        if (checkpointWorker != null) {
+            checkpointWorker.shutdown();
+        }
+        journal.close();
+    }
+
+    /**
+     * Read the snapshot and every journal written since it was saved.
+     *
+     * @param dataFile    the data file, which names the snapshot files
+     * @param journalFile the journal file
+     * @return the data saved by previous sessions
+     * @throws IOException            if the snapshot or a journal could not be read
+     * @throws ClassNotFoundException if the snapshot was saved by an older version and contains an unknown class
+     */
+    static UserImageFileData readLatest(File dataFile, File journalFile) throws IOException, ClassNotFoundException {
+        UserImageFileData userImageFileData = readSnapshot(dataFile);
+        replayJournals(userImageFileData, new MutationJournal(journalFile));
+        return userImageFileData;
+    }
+
+    /**
+     * Replay the sealed journals the snapshot does not contain yet, then the journal itself.
+     */
+    private static void replayJournals(UserImageFileData userImageFileData, MutationJournal journal)
+            throws IOException {
+        for (File sealedJournal : CheckpointWorker.getSealedJournals(journal.getJournalFile())) {
+            if (CheckpointWorker.generationOf(sealedJournal) > userImageFileData.journalGeneration) {
+                new MutationJournal(sealedJournal).replay(userImageFileData);
+            }
+        }
+        journal.replay(userImageFileData);
+    }
+
+    /**
+     * Read the current snapshot of all user data.
+     *
+     * @param dataFile the data file, which names the snapshot files
+     * @return the data in the snapshot, or empty data if there is no snapshot yet
+     * @throws IOException            if the snapshot could not be read
+     * @throws ClassNotFoundException if the snapshot was saved by an older version and contains an unknown class
+     */
+    static UserImageFileData readSnapshot(File dataFile) throws IOException, ClassNotFoundException {
+        File snapshotFile = getSnapshotFile(dataFile);
+        if (!snapshotFile.exists()) {
+            return new UserImageFileData();
+        }
+        if (LibraryFile.isLibraryFile(snapshotFile)) {
+            return LibraryFile.read(snapshotFile);
+        }
+        // Data saved by an older version of the program
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(new FileInputStream(snapshotFile))) {
+            return (UserImageFileData) objectInputStream.readObject();
+        }
+    }
+
+    /**
+     * Get the current snapshot file: the one named by the pointer file, or the data file itself if there is no
+     * pointer file yet.
+     *
+     * @param dataFile the data file, which names the snapshot files
+     * @return the current snapshot file, which may not exist
+     * @throws IOException if the pointer file could not be read
+     */
+    static File getSnapshotFile(File dataFile) throws IOException {
+        File pointerFile = getPointerFile(dataFile);
+        if (!pointerFile.exists()) {
+            return dataFile;
+        }
+        String snapshotName = new String(Files.readAllBytes(pointerFile.toPath()), StandardCharsets.UTF_8).trim();
+        return new File(dataFile.getAbsoluteFile().getParentFile(), snapshotName);
+    }
+
+    /**
+     * Attempt to store all data, including ImageFiles and Tags. The data is written to a new snapshot file and the
+     * pointer file is then switched to it, so the current snapshot is always complete and no mapped file is
+     * replaced.
+     *
+     * @param userImageFileData the data to store.
+     * @param dataFile          the data file, which names the snapshot files
+     * @return true iff the state was saved
+     */
+    static boolean saveState(UserImageFileData userImageFileData, File dataFile) {
+        File snapshotFile = new File(dataFile.getPath() + "." + (lastSnapshotNumber(dataFile) + 1));
+        File pointerFile = getPointerFile(dataFile);
+        File newPointerFile = new File(pointerFile.getPath() + ".tmp");
+        try {
+            createDataFile(snapshotFile);
+            LibraryFile.write(userImageFileData, snapshotFile);
+            Files.write(newPointerFile.toPath(), snapshotFile.getName().getBytes(StandardCharsets.UTF_8));
+            Files.move(newPointerFile.toPath(), pointerFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e1) {
+            e1.printStackTrace();
+            snapshotFile.delete();
+            return false;
+        }
+        deleteOldSnapshots(dataFile, snapshotFile);
+        return true;
+    }
+
+    private static File getPointerFile(File dataFile) {
+        return new File(dataFile.getPath() + ".current");
+    }
+
+    /**
+     * Get the numbered snapshot files next to the data file.
+     */
+    private static File[] getNumberedSnapshots(File dataFile) {
+        String prefix = dataFile.getName() + ".";
+        File[] snapshots = dataFile.getAbsoluteFile().getParentFile().listFiles((dir, name) ->
+                name.startsWith(prefix) && name.substring(prefix.length()).matches("\\d+"));
+        return snapshots == null ? new File[0] : snapshots;
+    }
+
+    private static long lastSnapshotNumber(File dataFile) {
+        long last = 0;
+        for (File snapshot : getNumberedSnapshots(dataFile)) {
+            last = Math.max(last, Long.parseLong(snapshot.getName().substring(dataFile.getName().length() + 1)));
+        }
+        return last;
+    }
+
+    /**
+     * Delete the snapshots older than the given one, including data saved to the data file itself. A snapshot that
+     * is still mapped may not be deletable yet; it is deleted after a later checkpoint.
+     */
+    private static void deleteOldSnapshots(File dataFile, File currentSnapshot) {
+        for (File snapshot : getNumberedSnapshots(dataFile)) {
+            if (!snapshot.getName().equals(currentSnapshot.getName())) {
+                snapshot.delete();
+            }
+        }
+        dataFile.delete();
+    }
+
+
+    private static void createDataFile(File dataFile) {
+        if (!dataFile.exists()) {
+            File dir = new File(dataFile.getParentFile().getAbsolutePath());
+            if (!dir.exists()) {
+                if (!dir.mkdirs()) {
+                    try {
+                        throw new DirectoryCreationException("There was an error making a directory!");
+                    } catch (DirectoryCreationException e) {
+                        e.printStackTrace();
+                    }
+                }
+            } else {
+                dir.delete();
+                dir.mkdirs();
+            }
+            try {
+                if (!dataFile.createNewFile()) {
+                    throw new FileNotCreatedException("There was an error creating a new data file!");
+                }
+            } catch (IOException | FileNotCreatedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
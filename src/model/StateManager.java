@@ -1,20 +1,72 @@
 package model;
 
-import exceptions.DirectoryCreationException;
-import exceptions.FileNotCreatedException;
+import model.MutationJournal.Mutation;
 import model.UserImageFileData;
 import model.UserSessionData;
 import model.UserTagData;
+import utils.ScanCache;
+import utils.ThumbnailCache;
 
 import java.io.*;
+import java.sql.SQLException;
+import java.util.ArrayList;
 
 import static gui.PrimaryStageManager.getPrimaryStageManager;
 
 /**
  * A class to manage states for the program, including session state and user data state.
  */
-@SuppressWarnings("ResultOfMethodCallIgnored")
 public class StateManager {
+    /**
+     * The path of the snapshot of all user data.
+     */
+    private static final String DATA_FILE_PATH = "data/data.ctags";
+
+    /**
+     * The path of the journal of changes made since the last snapshot.
+     */
+    private static final String JOURNAL_FILE_PATH = "data/journal.ctags";
+
+    /**
+     * The path of the cache of directory scans.
+     */
+    private static final String SCAN_CACHE_FILE_PATH = "data/scancache.ctags";
+
+    /**
+     * The directory the thumbnail cache is kept in
+     */
+    private static final String THUMBNAIL_CACHE_PATH = "data/thumbnails";
+
+    /**
+     * The number of seconds between background checkpoints. Can be set with the cheaptags.checkpointInterval
+     * system property.
+     */
+    private static final int CHECKPOINT_INTERVAL_SECONDS = Integer.getInteger("cheaptags.checkpointInterval", 60);
+
+    /**
+     * The number of changes after which a checkpoint is saved without waiting for the interval. Can be set with the
+     * cheaptags.checkpointMutations system property.
+     */
+    private static final int CHECKPOINT_MUTATION_THRESHOLD = Integer.getInteger("cheaptags.checkpointMutations",
+            200);
+
+    /**
+     * The storage backend to use: "file" for the snapshot file and journal, or "jdbc" for an embedded database. Can
+     * be set with the cheaptags.storage system property.
+     */
+    private static final String STORAGE = System.getProperty("cheaptags.storage", "file");
+
+    /**
+     * The URL of the database used by the jdbc storage backend. Can be set with the cheaptags.jdbcUrl system
+     * property.
+     */
+    private static final String JDBC_URL = System.getProperty("cheaptags.jdbcUrl", "jdbc:h2:./data/library");
+
+    /**
+     * Where userData is kept between sessions.
+     */
+    private static StorageBackend storageBackend;
+
     /**
      * Container for all user data in records
      */
@@ -25,93 +77,111 @@ public class StateManager {
      */
     public static UserSessionData sessionData;
 
+    /**
+     * What the scanned directories held when they were last listed
+     */
+    public static ScanCache scanCache = new ScanCache();
+
+    /**
+     * Scaled copies of the images shown, or null if the cache could not be opened
+     */
+    public static ThumbnailCache thumbnailCache;
+
     /**
      * Start a new session
      */
     public static void startSession() {
+        storageBackend = createStorageBackend();
         reloadState();
+        scanCache = ScanCache.load(new File(SCAN_CACHE_FILE_PATH));
+        try {
+            thumbnailCache = ThumbnailCache.load(new File(THUMBNAIL_CACHE_PATH));
+        } catch (IOException e) {
+            // Images are decoded in full every time instead
+            e.printStackTrace();
+        }
         sessionData = new UserSessionData();
     }
 
     /**
-     * End a session
+     * End a session. Every change has already been given to the storage backend, so only the scan and thumbnail
+     * caches are written here.
      */
     public static void endSession() {
-        userData.allTags = UserTagData.getTagList();
-        saveState(userData);
+        if (storageBackend != null) {
+            storageBackend.close();
+        }
+        try {
+            scanCache.save(new File(SCAN_CACHE_FILE_PATH));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (thumbnailCache != null) {
+            thumbnailCache.close();
+            thumbnailCache = null;
+        }
     }
 
     /**
-     * Attempt to load a state from a previous session
+     * Record a change made to userData in the storage backend.
+     *
+     * @param mutation  the kind of change
+     * @param arguments the values describing the change
      */
-    private static void reloadState() {
-        File dataFile = new File("data/data.ctags");
-        if (!dataFile.exists()) {
-            userData = new UserImageFileData();
-        } else {
-            FileInputStream fileInputStream;
-            ObjectInputStream objectInputStream;
-            try {
-                fileInputStream = new FileInputStream(dataFile);
-                objectInputStream = new ObjectInputStream(fileInputStream);
-                userData = (UserImageFileData) objectInputStream.readObject();
-                UserTagData.setTagList(userData.allTags);
-                objectInputStream.close();
-            } catch (IOException | ClassNotFoundException e) {
-                e.printStackTrace();
-                dataFile.delete();
-                getPrimaryStageManager().closeStage();
-            }
+    public static void recordMutation(Mutation mutation, String... arguments) {
+        if (storageBackend != null) {
+            storageBackend.record(mutation, arguments);
         }
     }
 
     /**
-     * Attempt to store all new data from this session, including ImageFiles and Tags.
+     * Record the current tags of the given image in the tag index and the storage backend.
      *
-     * @param userImageFileData the main data manager for this session.
+     * @param imageFile the image whose tags were set
      */
-    private static void saveState(UserImageFileData userImageFileData) {
-        FileOutputStream fileOutputStream;
-        ObjectOutputStream objectOutputStream;
-        File dataFile = new File("data/data.ctags");
-        try {
-            if (!dataFile.exists()) {
-                createDataFile(dataFile);
-            }
-            fileOutputStream = new FileOutputStream(dataFile);
-            objectOutputStream = new ObjectOutputStream(fileOutputStream);
-            objectOutputStream.writeObject(userImageFileData);
-            objectOutputStream.close();
-        } catch (IOException e1) {
-            e1.printStackTrace();
+    public static void recordTagChange(ImageFile imageFile) {
+        userData.getTagIndex().setTags(imageFile.getId(), imageFile.getTagIds())
+                .forEach(tagId -> UserTagData.updateTagRank(TagDictionary.get(tagId)));
+        ArrayList<String> arguments = new ArrayList<>();
+        arguments.add(imageFile.getThisFile().getAbsolutePath());
+        for (Tag tag : imageFile.getTagList()) {
+            arguments.add(tag.name);
         }
+        recordMutation(Mutation.SET_TAGS, arguments.toArray(new String[arguments.size()]));
     }
 
-
-    private static void createDataFile(File dataFile) {
-        if (!dataFile.exists()) {
-            File dir = new File(dataFile.getParentFile().getAbsolutePath());
-            if (!dir.exists()) {
-                if (!dir.mkdirs()) {
-                    try {
-                        throw new DirectoryCreationException("There was an error making a directory!");
-                    } catch (DirectoryCreationException e) {
-                        e.printStackTrace();
-                    }
-                }
-            } else {
-                dir.delete();
-                dir.mkdirs();
-            }
+    /**
+     * Create the storage backend selected by the cheaptags.storage system property. Falls back to the snapshot file
+     * if the database cannot be opened.
+     *
+     * @return the storage backend
+     */
+    private static StorageBackend createStorageBackend() {
+        File dataFile = new File(DATA_FILE_PATH);
+        File journalFile = new File(JOURNAL_FILE_PATH);
+        if (STORAGE.equals("jdbc")) {
             try {
-                if (!dataFile.createNewFile()) {
-                    throw new FileNotCreatedException("There was an error creating a new data file!");
-                }
-            } catch (IOException | FileNotCreatedException e) {
-                e.printStackTrace();
+                return JdbcBackend.connect(JDBC_URL, dataFile, journalFile);
+            } catch (SQLException e) {
+                System.err.println("Could not open " + JDBC_URL + ", using " + DATA_FILE_PATH + " instead: "
+                        + e.getMessage());
             }
         }
+        return new SerializedFileBackend(dataFile, journalFile, CHECKPOINT_INTERVAL_SECONDS,
+                CHECKPOINT_MUTATION_THRESHOLD);
     }
-}
-
 
+    /**
+     * Attempt to load a state from a previous session
+     */
+    private static void reloadState() {
+        try {
+            userData = storageBackend.load();
+            UserTagData.setTagList(userData.allTags);
+        } catch (IOException e) {
+            e.printStackTrace();
+            userData = new UserImageFileData();
+            getPrimaryStageManager().closeStage();
+        }
+    }
+}
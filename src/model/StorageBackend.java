@@ -0,0 +1,33 @@
+package model;
+
+import model.MutationJournal.Mutation;
+
+import java.io.IOException;
+
+/**
+ * Where the user's data is kept between sessions. The StateManager loads the data from a backend when a session
+ * starts, tells it about every change made during the session, and closes it when the session ends.
+ */
+public interface StorageBackend {
+
+    /**
+     * Load the data saved by previous sessions. Called once, before any change is recorded.
+     *
+     * @return the saved data, or empty data if nothing has been saved yet
+     * @throws IOException if the saved data could not be read
+     */
+    UserImageFileData load() throws IOException;
+
+    /**
+     * Save a change that has been made to the loaded data.
+     *
+     * @param mutation  the kind of change
+     * @param arguments the values describing the change
+     */
+    void record(Mutation mutation, String... arguments);
+
+    /**
+     * Finish saving and release the storage. No change is recorded after this.
+     */
+    void close();
+}
@@ -1,31 +1,56 @@
 package model;
 
+import java.io.ObjectStreamException;
 import java.io.Serializable;
-import java.util.TreeSet;
 
 /**
  * the {@code Tag} class is used to take users input in the program
- * and convert the input to a Tag object for further use
+ * and convert the input to a Tag object for further use.
+ * <p>
+ * There is one Tag for each name, obtained from {@link TagDictionary#intern(String)}. The images that have a tag are
+ * found through the {@link TagIndex} of the user's data.
  */
 public class Tag implements Serializable {
 
+    private static final long serialVersionUID = 3994364295919909651L;
+
     /**
      * the name of the tag
      */
     public String name;
 
     /**
-     * the ArrayList stores all images that have this tag
+     * the id of the tag in the TagDictionary
      */
-    public TreeSet<ImageFile> images = new TreeSet<>();
+    private transient int id;
 
     /**
-     * Constructs a new model Tag object.
+     * Constructs a new model Tag object. Only the TagDictionary creates tags.
      *
      * @param name the name of the tag
+     * @param id   the id of the tag
      */
-    public Tag(String name) {
+    Tag(String name, int id) {
         this.name = name;
+        this.id = id;
+    }
+
+    /**
+     * Returns the id of the tag in the TagDictionary.
+     *
+     * @return the id of the tag
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Replace a tag read from data saved by an older version of the program with the one tag with its name.
+     *
+     * @return the tag from the TagDictionary
+     */
+    private Object readResolve() throws ObjectStreamException {
+        return TagDictionary.intern(name);
     }
 
     /**
@@ -54,4 +79,9 @@ public class Tag implements Serializable {
             return newo.name.equals(this.name);
         }
     }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
 }
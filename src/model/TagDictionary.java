@@ -0,0 +1,63 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * The dictionary of every tag name the program has seen. Each name has exactly one {@link Tag}, which is given a
+ * dense int id the first time the name is interned, so tags can be compared by reference and stored as ints.
+ * <p>
+ * Names are never removed, so an id always refers to the same name. Whether a tag is in the user's list of tags is
+ * kept separately, by {@link UserTagData}.
+ */
+public final class TagDictionary {
+
+    /**
+     * The tag of each name.
+     */
+    private static final HashMap<String, Tag> tagsByName = new HashMap<>();
+
+    /**
+     * The tag of each id.
+     */
+    private static final ArrayList<Tag> tagsById = new ArrayList<>();
+
+    private TagDictionary() {
+    }
+
+    /**
+     * Get the tag with the given name, creating it if the name has not been seen before.
+     *
+     * @param name the name of the tag
+     * @return the one tag with this name
+     */
+    public static synchronized Tag intern(String name) {
+        Tag tag = tagsByName.get(name);
+        if (tag == null) {
+            tag = new Tag(name, tagsById.size());
+            tagsByName.put(name, tag);
+            tagsById.add(tag);
+        }
+        return tag;
+    }
+
+    /**
+     * Get the tag with the given name, without creating it.
+     *
+     * @param name the name of the tag
+     * @return the tag, or null if the name has not been interned
+     */
+    public static synchronized Tag get(String name) {
+        return tagsByName.get(name);
+    }
+
+    /**
+     * Get the tag with the given id.
+     *
+     * @param id the id of the tag
+     * @return the tag
+     */
+    public static synchronized Tag get(int id) {
+        return tagsById.get(id);
+    }
+}
@@ -0,0 +1,224 @@
+package model;
+
+import utils.CompressedBitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * An inverted index from each tag to the ids of the images that have it, for answering boolean tag queries such as
+ * "tagged A and B but not C" without looking at any ImageFile.
+ */
+public class TagIndex {
+
+    /**
+     * The ids of the images with each tag, by tag id. Null for a tag no image has had.
+     */
+    private final ArrayList<CompressedBitmap> tagToImageIds = new ArrayList<>();
+
+    /**
+     * The ids of every image, which NOT is taken against.
+     */
+    private final CompressedBitmap allImageIds = new CompressedBitmap();
+
+    /**
+     * The ids of the tags of each image, by image id, so changing the tags of an image only touches the bitmaps of
+     * the tags it had and has.
+     */
+    private final HashMap<Integer, int[]> imageToTagIds = new HashMap<>();
+
+    /**
+     * Add an image to the index, without any tags.
+     *
+     * @param imageId the id of the image
+     */
+    void addImage(int imageId) {
+        allImageIds.add(imageId);
+    }
+
+    /**
+     * Remove an image, and its tags, from the index.
+     *
+     * @param imageId the id of the image
+     */
+    void removeImage(int imageId) {
+        setTags(imageId, new int[0]);
+        allImageIds.remove(imageId);
+    }
+
+    /**
+     * Set the tags of an image, replacing the tags it had.
+     *
+     * @param imageId the id of the image
+     * @param tagIds  the ids of the tags the image has now
+     * @return the ids of the tags the image was added to or removed from
+     */
+    public CompressedBitmap setTags(int imageId, int[] tagIds) {
+        allImageIds.add(imageId);
+        CompressedBitmap changedTagIds = new CompressedBitmap();
+        int[] oldTagIds = imageToTagIds.remove(imageId);
+        if (oldTagIds != null) {
+            for (int tagId : oldTagIds) {
+                CompressedBitmap imageIds = bitmapOf(tagId);
+                if (imageIds != null && imageIds.remove(imageId)) {
+                    changedTagIds.add(tagId);
+                }
+            }
+        }
+        for (int tagId : tagIds) {
+            if (!changedTagIds.remove(tagId)) {
+                changedTagIds.add(tagId);
+            }
+            addImageToTag(tagId, imageId);
+        }
+        return changedTagIds;
+    }
+
+    /**
+     * Add an image to the images with the given tag.
+     *
+     * @param tagId   the id of the tag
+     * @param imageId the id of the image
+     */
+    void addImageToTag(int tagId, int imageId) {
+        CompressedBitmap imageIds = bitmapOf(tagId);
+        if (imageIds == null) {
+            imageIds = new CompressedBitmap();
+            setImageIds(tagId, imageIds);
+        }
+        if (imageIds.add(imageId)) {
+            addTagOfImage(imageId, tagId);
+        }
+    }
+
+    /**
+     * Set the ids of the images with the given tag. The index takes ownership of the bitmap.
+     *
+     * @param tagId    the id of the tag
+     * @param imageIds the ids of the images with the tag
+     */
+    void setImageIds(int tagId, CompressedBitmap imageIds) {
+        while (tagToImageIds.size() <= tagId) {
+            tagToImageIds.add(null);
+        }
+        CompressedBitmap oldImageIds = tagToImageIds.set(tagId, imageIds);
+        if (oldImageIds != null) {
+            oldImageIds.forEach(imageId -> removeTagOfImage(imageId, tagId));
+        }
+        imageIds.forEach(imageId -> addTagOfImage(imageId, tagId));
+    }
+
+    /**
+     * Remove a tag from the index.
+     *
+     * @param tag the tag
+     */
+    public void removeTag(Tag tag) {
+        CompressedBitmap imageIds = bitmapOf(tag.getId());
+        if (imageIds != null) {
+            tagToImageIds.set(tag.getId(), null);
+            imageIds.forEach(imageId -> removeTagOfImage(imageId, tag.getId()));
+        }
+    }
+
+    private void addTagOfImage(int imageId, int tagId) {
+        int[] tagIds = imageToTagIds.get(imageId);
+        if (tagIds == null) {
+            imageToTagIds.put(imageId, new int[]{tagId});
+        } else {
+            tagIds = Arrays.copyOf(tagIds, tagIds.length + 1);
+            tagIds[tagIds.length - 1] = tagId;
+            imageToTagIds.put(imageId, tagIds);
+        }
+    }
+
+    private void removeTagOfImage(int imageId, int tagId) {
+        int[] tagIds = imageToTagIds.get(imageId);
+        if (tagIds == null) {
+            return;
+        }
+        for (int i = 0; i < tagIds.length; i++) {
+            if (tagIds[i] == tagId) {
+                if (tagIds.length == 1) {
+                    imageToTagIds.remove(imageId);
+                } else {
+                    int[] remaining = new int[tagIds.length - 1];
+                    System.arraycopy(tagIds, 0, remaining, 0, i);
+                    System.arraycopy(tagIds, i + 1, remaining, i, remaining.length - i);
+                    imageToTagIds.put(imageId, remaining);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get the ids of the images with the given tag.
+     *
+     * @param tag the tag
+     * @return a new bitmap of image ids
+     */
+    public CompressedBitmap getImageIds(Tag tag) {
+        CompressedBitmap imageIds = bitmapOf(tag.getId());
+        return imageIds == null ? new CompressedBitmap() : imageIds.copy();
+    }
+
+    /**
+     * Get the number of images with the given tag.
+     *
+     * @param tag the tag
+     * @return the number of images
+     */
+    public int getImageCount(Tag tag) {
+        CompressedBitmap imageIds = bitmapOf(tag.getId());
+        return imageIds == null ? 0 : imageIds.getCardinality();
+    }
+
+    /**
+     * Get the ids of every image.
+     *
+     * @return a new bitmap of image ids
+     */
+    public CompressedBitmap getAllImageIds() {
+        return allImageIds.copy();
+    }
+
+    /**
+     * Find the images that have every tag in allOf, at least one tag in anyOf and no tag in noneOf. An empty
+     * collection places no condition.
+     *
+     * @param allOf  the names of tags an image must all have
+     * @param anyOf  the names of tags an image must have one of
+     * @param noneOf the names of tags an image must not have
+     * @return a new bitmap of the ids of the matching images
+     */
+    public CompressedBitmap query(Collection<String> allOf, Collection<String> anyOf, Collection<String> noneOf) {
+        CompressedBitmap result = allImageIds;
+        for (String tagName : allOf) {
+            result = CompressedBitmap.and(result, bitmapOf(tagName));
+        }
+        if (!anyOf.isEmpty()) {
+            CompressedBitmap any = new CompressedBitmap();
+            for (String tagName : anyOf) {
+                any = CompressedBitmap.or(any, bitmapOf(tagName));
+            }
+            result = CompressedBitmap.and(result, any);
+        }
+        for (String tagName : noneOf) {
+            result = CompressedBitmap.andNot(result, bitmapOf(tagName));
+        }
+        return result == allImageIds ? allImageIds.copy() : result;
+    }
+
+    private CompressedBitmap bitmapOf(int tagId) {
+        return tagId < tagToImageIds.size() ? tagToImageIds.get(tagId) : null;
+    }
+
+    private CompressedBitmap bitmapOf(String tagName) {
+        Tag tag = TagDictionary.get(tagName);
+        CompressedBitmap imageIds = tag == null ? null : bitmapOf(tag.getId());
+        return imageIds == null ? new CompressedBitmap() : imageIds;
+    }
+}
@@ -1,18 +1,21 @@
 package model;
 
 import org.apache.commons.lang3.StringUtils;
+import utils.CompressedBitmap;
+import utils.TrigramIndex;
 
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 
 /**
  * This class stores all ImageFile data from every session.
  */
 public class UserImageFileData implements Serializable {
 
+    private static final long serialVersionUID = -3782353074312372L;
+
     /**
      * An ArrayList of all the previous directories the user has visited.
      */
@@ -21,7 +24,7 @@ public class UserImageFileData implements Serializable {
     /**
      * An ArrayList of all the tags
      */
-    public ArrayList<Tag> allTags;
+    public ArrayList<Tag> allTags = new ArrayList<>();
 
     /**
      * The name to image file map
@@ -29,7 +32,67 @@ public class UserImageFileData implements Serializable {
     public HashMap<String, ImageFile> nameToImageFileMap = new HashMap<>();
 
 
-    public HashMap<String, HashSet<ImageFile>> directoryToImageFileMap = new HashMap<>();
+    /**
+     * The id the next ImageFile added to this data is given. Ids start at 1; an ImageFile with id 0 has not been
+     * given one yet.
+     */
+    private int nextImageId = 1;
+
+    /**
+     * Stored records that have not been decoded yet, by image name. A record is moved to nameToImageFileMap when it
+     * is decoded.
+     */
+    transient HashMap<String, ImageRecord> undecodedRecords = new HashMap<>();
+
+    /**
+     * The generation of the last sealed journal whose changes are contained in this data.
+     */
+    transient long journalGeneration;
+
+    /**
+     * Index of the ImageFiles in nameToImageFileMap by absolute path.
+     */
+    private transient HashMap<String, ImageFile> pathToImageFileMap = new HashMap<>();
+
+    /**
+     * Index of the ImageFiles in nameToImageFileMap by id.
+     */
+    private transient HashMap<Integer, ImageFile> idToImageFileMap = new HashMap<>();
+
+    /**
+     * Index of undecodedRecords by absolute path.
+     */
+    private transient HashMap<String, ImageRecord> undecodedRecordsByPath = new HashMap<>();
+
+    /**
+     * Index of undecodedRecords by id.
+     */
+    private transient HashMap<Integer, ImageRecord> undecodedRecordsById = new HashMap<>();
+
+    /**
+     * Index of the ids of the images with each tag.
+     */
+    private transient TagIndex tagIndex = new TagIndex();
+
+    /**
+     * Index of the images in each directory.
+     */
+    private transient DirectoryIndex directoryIndex = new DirectoryIndex();
+
+    /**
+     * Index of the trigrams in the image names, or null if it has not been asked for yet.
+     */
+    private transient TrigramIndex nameIndex;
+
+    /**
+     * Index of the content fingerprints of the images.
+     */
+    private transient FingerprintIndex fingerprintIndex = new FingerprintIndex();
+
+    /**
+     * Index of the perceptual hashes of the images.
+     */
+    private transient PerceptualHashIndex perceptualHashIndex = new PerceptualHashIndex();
 
     /**
      * Get the ImageFile associated with the given name
@@ -41,9 +104,28 @@ public class UserImageFileData implements Serializable {
         if (nameToImageFileMap.containsKey(imageName)){
             return nameToImageFileMap.get(imageName);
         }
+        ImageRecord undecodedRecord = undecodedRecords.get(imageName);
+        if (undecodedRecord != null) {
+            return undecodedRecord.getImageFile();
+        }
         return null;
     }
 
+    /**
+     * Get the id of the image with the given name, without decoding its record.
+     *
+     * @param imageName the image name
+     * @return the id of the image, or 0 if there is no image with that name
+     */
+    int getImageIdWithName(String imageName) {
+        ImageFile imageFile = nameToImageFileMap.get(imageName);
+        if (imageFile != null) {
+            return imageFile.getId();
+        }
+        ImageRecord undecodedRecord = undecodedRecords.get(imageName);
+        return undecodedRecord == null ? 0 : undecodedRecord.id;
+    }
+
     /**
      * Get the ImageFile associated with the given file
      *
@@ -51,28 +133,129 @@ public class UserImageFileData implements Serializable {
      * @return the imagefile with the imageName
      */
     public ImageFile getImageFileWithFile(File file) {
-        // First check to see if the file exists under the file objects generic name
-        ImageFile rawNameImageFile = getImageFileWithName(file.getName());
-        if (rawNameImageFile != null && rawNameImageFile.getThisFile().getAbsolutePath()
-                .equals(file.getAbsolutePath())){
-            return rawNameImageFile;
-        }else {
-            // Image may be under a name with a subdirectory prefix. Loop through all imagefiles.
-            for (ImageFile imageFile : getNameToImageFileMap().values()){
-                if (imageFile.getThisFile().getAbsolutePath().equals(file.getAbsolutePath())){
-                    return imageFile;
-                }
-            }
+        String imagePath = file.getAbsolutePath();
+        ImageFile imageFile = pathToImageFileMap.get(imagePath);
+        if (imageFile != null) {
+            return imageFile;
+        }
+        ImageRecord undecodedRecord = undecodedRecordsByPath.get(imagePath);
+        if (undecodedRecord != null) {
+            return undecodedRecord.getImageFile();
         }
         return null;
     }
 
+    /**
+     * Get the ImageFile with the given id
+     *
+     * @param id the id of the image
+     * @return the imagefile with the id, or null if there is none
+     */
+    public ImageFile getImageFileWithId(int id) {
+        ImageFile imageFile = idToImageFileMap.get(id);
+        if (imageFile != null) {
+            return imageFile;
+        }
+        ImageRecord undecodedRecord = undecodedRecordsById.get(id);
+        if (undecodedRecord != null) {
+            return undecodedRecord.getImageFile();
+        }
+        return null;
+    }
+
+    /**
+     * Get the ImageFiles with the given ids, such as the result of a {@link TagIndex} query.
+     *
+     * @param ids the ids of the images
+     * @return the ImageFiles, in order of id
+     */
+    public ArrayList<ImageFile> getImageFilesWithIds(CompressedBitmap ids) {
+        ArrayList<ImageFile> imageFiles = new ArrayList<>(ids.getCardinality());
+        ids.forEach(id -> {
+            ImageFile imageFile = getImageFileWithId(id);
+            if (imageFile != null) {
+                imageFiles.add(imageFile);
+            }
+        });
+        return imageFiles;
+    }
+
+    /**
+     * Get the ImageFiles with the given tag.
+     *
+     * @param tag the tag
+     * @return the ImageFiles, in order of id
+     */
+    public ArrayList<ImageFile> getImageFilesWithTag(Tag tag) {
+        return getImageFilesWithIds(tagIndex.getImageIds(tag));
+    }
+
+    /**
+     * Get the index of the images in each directory.
+     *
+     * @return the directory index
+     */
+    public DirectoryIndex getDirectoryIndex() {
+        return directoryIndex;
+    }
+
+    /**
+     * Get the index of the ids of the images with each tag.
+     *
+     * @return the tag index
+     */
+    public TagIndex getTagIndex() {
+        return tagIndex;
+    }
+
+    /**
+     * Get the index of the content fingerprints of the images on record.
+     *
+     * @return the fingerprint index
+     */
+    public FingerprintIndex getFingerprintIndex() {
+        return fingerprintIndex;
+    }
+
+    /**
+     * Set the content fingerprints of an image on record.
+     *
+     * @param imageFile       the image
+     * @param fingerprint     the quick fingerprint of its file
+     * @param fullFingerprint the full fingerprint of its file, or 0 if it was not taken
+     */
+    public void setFingerprint(ImageFile imageFile, long fingerprint, long fullFingerprint) {
+        fingerprintIndex.set(imageFile.getId(), fingerprint, fullFingerprint);
+    }
+
+    /**
+     * Get the index of the perceptual hashes of the images on record.
+     *
+     * @return the perceptual hash index
+     */
+    public PerceptualHashIndex getPerceptualHashIndex() {
+        return perceptualHashIndex;
+    }
+
+    /**
+     * Set the perceptual hash of an image on record.
+     *
+     * @param imageFile the image
+     * @param hash      the perceptual hash of its file
+     */
+    public void setPerceptualHash(ImageFile imageFile, long hash) {
+        perceptualHashIndex.set(imageFile.getId(), hash);
+    }
+
     /**
      * Add an ImageFile to the main map containing all ImageFiles on record. If the name exists
      *
      * @param imageFile the ImageFile to add
      */
     public void addImageFileToMap(ImageFile imageFile) {
+        if (imageFile.getId() == 0) {
+            imageFile.setId(nextImageId++);
+        }
         File file = imageFile.getThisFile();
         // get imagefile that's already in records (if it exists)
         ImageFile existingImageFile = getImageFileWithName(imageFile.getCurrentName());
@@ -83,24 +266,54 @@ public class UserImageFileData implements Serializable {
                 int slashIndex = StringUtils.lastOrdinalIndexOf(newName, File.separator, 2);
                 newName = newName.substring(slashIndex, newName.length());
                 imageFile.setCurrentName(newName);
-                getNameToImageFileMap().put(newName, imageFile);
+                nameToImageFileMap.put(newName, imageFile);
+                addToIndex(imageFile);
+                addToNameIndex(newName);
             }
         }else{
-            getNameToImageFileMap().put(imageFile.getCurrentName(), imageFile);
+            nameToImageFileMap.put(imageFile.getCurrentName(), imageFile);
+            addToIndex(imageFile);
+            addToNameIndex(imageFile.getCurrentName());
         }
 //        addToImageFileByDirectoryMap(file.getParentFile(), imageFile);
     }
 
     /**
-     * Reset the key of the ImageFile in the main HashMap of all ImageFiles
+     * Remove an ImageFile from this data.
+     *
+     * @param imageFile the ImageFile to remove
+     */
+    public void removeImageFile(ImageFile imageFile) {
+        if (nameToImageFileMap.remove(imageFile.getCurrentName(), imageFile)) {
+            if (nameIndex != null) {
+                nameIndex.remove(imageFile.getCurrentName());
+            }
+            pathToImageFileMap.remove(imageFile.getThisFile().getAbsolutePath(), imageFile);
+            idToImageFileMap.remove(imageFile.getId(), imageFile);
+            directoryIndex.removeImage(imageFile.getId(), imageFile.getThisFile().getAbsolutePath());
+            tagIndex.removeImage(imageFile.getId());
+            fingerprintIndex.remove(imageFile.getId());
+            perceptualHashIndex.remove(imageFile.getId());
+        }
+    }
+
+    /**
+     * Reset the key of the ImageFile in the main HashMap of all ImageFiles, and its path in the index. Call this after
+     * the ImageFile has been given its new name and file. Nothing changes if the ImageFile is not in this data, and
+     * another ImageFile that has the old name keeps it.
      *
-     * @param oldName the old name of this image
+     * @param imageFile the renamed or moved ImageFile
+     * @param oldName   the old name of this image
+     * @param oldFile   the old file of this image
      */
-    public void resetImageFileKey(String oldName) {
-        if (getNameToImageFileMap().containsKey(oldName)) {
-            ImageFile renamedImageFile = getNameToImageFileMap().get(oldName);
-            getNameToImageFileMap().remove(oldName);
-            addImageFileToMap(renamedImageFile);
+    public void resetImageFileKey(ImageFile imageFile, String oldName, File oldFile) {
+        if (idToImageFileMap.get(imageFile.getId()) == imageFile) {
+            if (nameToImageFileMap.remove(oldName, imageFile) && nameIndex != null) {
+                nameIndex.remove(oldName);
+            }
+            pathToImageFileMap.remove(oldFile.getAbsolutePath(), imageFile);
+            directoryIndex.removeImage(imageFile.getId(), oldFile.getAbsolutePath());
+            addImageFileToMap(imageFile);
         }
     }
 
@@ -110,15 +323,43 @@ public class UserImageFileData implements Serializable {
      * @return a collection of all names.
      */
     public Collection<String> getImageFileNames() {
-        return new ArrayList<>(nameToImageFileMap.keySet());
+        ArrayList<String> imageFileNames = new ArrayList<>(nameToImageFileMap.keySet());
+        imageFileNames.addAll(undecodedRecords.keySet());
+        return imageFileNames;
+    }
+
+    /**
+     * Get the index of the trigrams in the names of all ImageFiles on record, for narrowing down a search by name.
+     * The index is built the first time it is asked for and kept up to date from then on.
+     *
+     * @return the name index
+     */
+    public TrigramIndex getNameIndex() {
+        if (nameIndex == null) {
+            nameIndex = new TrigramIndex();
+            for (String name : getImageFileNames()) {
+                nameIndex.add(name);
+            }
+        }
+        return nameIndex;
+    }
+
+    private void addToNameIndex(String name) {
+        if (nameIndex != null) {
+            nameIndex.add(name);
+        }
     }
 
     /**
-     * Get a reference to the main HashMap containing all ImageFiles on record
+     * Get a reference to the main HashMap containing all ImageFiles on record. Every record that has not been decoded
+     * yet is decoded first.
      *
      * @return a HashMap of image names to their corresponding ImageFile
      */
     public HashMap<String, ImageFile> getNameToImageFileMap() {
+        for (ImageRecord undecodedRecord : new ArrayList<>(undecodedRecords.values())) {
+            undecodedRecord.getImageFile();
+        }
         return nameToImageFileMap;
     }
 
@@ -129,7 +370,7 @@ public class UserImageFileData implements Serializable {
      * @return if it exists in the map
      */
     public boolean existsInMap(String imageName) {
-        return nameToImageFileMap.containsKey(imageName);
+        return nameToImageFileMap.containsKey(imageName) || undecodedRecords.containsKey(imageName);
     }
 
     /**
@@ -139,16 +380,69 @@ public class UserImageFileData implements Serializable {
      * @return returns true iff the image is present in our database.
      */
     public boolean existsInMap(File file) {
-        boolean rawNameExists = existsInMap(file.getName());
-        if (!rawNameExists){
-            String imagePath = file.getAbsolutePath();
-            for (ImageFile imageFile : nameToImageFileMap.values()){
-                if (imageFile.getThisFile().getAbsolutePath().equals(imagePath)){
-                    return true;
-                }
-            }
+        String imagePath = file.getAbsolutePath();
+        return pathToImageFileMap.containsKey(imagePath) || undecodedRecordsByPath.containsKey(imagePath);
+    }
+
+    /**
+     * Remove every ImageFile from this data.
+     */
+    void clearImageFiles() {
+        nameToImageFileMap.clear();
+        directoryIndex.clear();
+        tagIndex = new TagIndex();
+        nameIndex = null;
+        fingerprintIndex = new FingerprintIndex();
+        perceptualHashIndex = new PerceptualHashIndex();
+        pathToImageFileMap.clear();
+        idToImageFileMap.clear();
+    }
+
+    /**
+     * Add a stored record that has not been decoded yet.
+     *
+     * @param record the record
+     */
+    void addUndecodedRecord(ImageRecord record) {
+        undecodedRecords.put(record.key, record);
+        addToNameIndex(record.key);
+        undecodedRecordsByPath.put(record.path, record);
+        undecodedRecordsById.put(record.id, record);
+        tagIndex.addImage(record.id);
+        directoryIndex.addImage(record.id, record.path);
+        nextImageId = Math.max(nextImageId, record.id + 1);
+    }
+
+    /**
+     * Move a record that has just been decoded into nameToImageFileMap.
+     *
+     * @param record    the record
+     * @param imageFile the ImageFile decoded from it
+     */
+    void recordDecoded(ImageRecord record, ImageFile imageFile) {
+        undecodedRecords.remove(record.key);
+        undecodedRecordsByPath.remove(record.path);
+        undecodedRecordsById.remove(record.id);
+        nameToImageFileMap.put(record.key, imageFile);
+        addToIndex(imageFile);
+    }
+
+    private void addToIndex(ImageFile imageFile) {
+        pathToImageFileMap.put(imageFile.getThisFile().getAbsolutePath(), imageFile);
+        idToImageFileMap.put(imageFile.getId(), imageFile);
+        tagIndex.addImage(imageFile.getId());
+        directoryIndex.addImage(imageFile.getId(), imageFile.getThisFile().getAbsolutePath());
+        for (int tagId : imageFile.getTagIds()) {
+            tagIndex.addImageToTag(tagId, imageFile.getId());
         }
-        return false;
+    }
+
+    int getNextImageId() {
+        return nextImageId;
+    }
+
+    void setNextImageId(int nextImageId) {
+        this.nextImageId = nextImageId;
     }
 
     /**
@@ -172,19 +466,45 @@ public class UserImageFileData implements Serializable {
         return previousPathsVisited.toArray(new String[previousPathsVisited.size()]);
     }
 
-//    /**
-//     *
-//     */
-//    public void addToImageFileByDirectoryMap(File directory, ImageFile imageFile){
-//        String path = directory.getAbsolutePath();
-//
-//        if (directoryToImageFileMap.containsKey(path)){
-//            HashSet<ImageFile> imageFileSet = directoryToImageFileMap.get(path);
-//            boolean addedToSet = imageFileSet.add(imageFile);
-//            if (!addedToSet){
-//                imageFileSet.remove(imageFile);
-//                imageFileSet.add(imageFile);
-//            }
-//        }
-//    }
+    /**
+     * Get a reference to the list of previous paths visited.
+     *
+     * @return the list of previous paths
+     */
+    ArrayList<String> getVisitedPaths() {
+        return previousPathsVisited;
+    }
+
+    /**
+     * Initialize fields that are not serialized when this data is read with Java serialization.
+     */
+    private void readObject(ObjectInputStream objectInputStream) throws IOException, ClassNotFoundException {
+        objectInputStream.defaultReadObject();
+        undecodedRecords = new HashMap<>();
+        pathToImageFileMap = new HashMap<>();
+        idToImageFileMap = new HashMap<>();
+        undecodedRecordsByPath = new HashMap<>();
+        undecodedRecordsById = new HashMap<>();
+        tagIndex = new TagIndex();
+        directoryIndex = new DirectoryIndex();
+        fingerprintIndex = new FingerprintIndex();
+        perceptualHashIndex = new PerceptualHashIndex();
+        // Data saved before images had ids
+        if (nextImageId == 0) {
+            nextImageId = 1;
+        }
+        // Data saved before tags were interned
+        ArrayList<Tag> tags = new ArrayList<>();
+        for (Tag tag : allTags) {
+            tags.add(TagDictionary.intern(tag.name));
+        }
+        allTags = tags;
+        for (ImageFile imageFile : nameToImageFileMap.values()) {
+            imageFile.convertLegacyTags();
+            if (imageFile.getId() == 0) {
+                imageFile.setId(nextImageId++);
+            }
+            addToIndex(imageFile);
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package model;
 
+import utils.ImageDiscovery;
 import utils.ImageFileOperations;
 import org.brunocvcunha.instagram4j.Instagram4j;
 
@@ -11,17 +12,25 @@ import java.util.HashMap;
  * This class holds all user data for the duration of the ongoing session.
  */
 public class UserSessionData extends UserImageFileData implements Serializable {
+
+    private static final long serialVersionUID = -646398106860847904L;
+
     public Instagram4j instagramReference;
 
     /**
      * Set this session using the given path as the identifier for the session. Note that the instagram session,
      * if it exists, is not cleared after a new session is started.
+     * <p>
+     * The images of the directory are fetched in the background and added to this session as they are found. The
+     * parts of the directory that were scanned before and have not changed since are served from the scan cache
+     * instead of being listed again.
      *
      * @param directory the directory this session will browse.
+     * @return the running discovery of the images
      */
-    public void startNewSession(File directory) {
-        this.nameToImageFileMap.clear();
-        ImageFileOperations.fetchImageFiles(directory);
+    public ImageDiscovery startNewSession(File directory) {
+        clearImageFiles();
+        return ImageFileOperations.fetchImageFiles(directory);
     }
 
     /**
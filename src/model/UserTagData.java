@@ -1,7 +1,12 @@
 package model;
 
+import model.MutationJournal.Mutation;
+import utils.PrefixTrie;
+import utils.TrigramIndex;
+
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 /**
  * This class keeps track of all the existing tags in the system.
@@ -13,6 +18,21 @@ public class UserTagData implements Serializable {
      */
     private static ArrayList<Tag> tagList = new ArrayList<>();
 
+    /**
+     * The tags in tagList, by name.
+     */
+    private static HashMap<String, Tag> tagsByName = new HashMap<>();
+
+    /**
+     * The tags in tagList by name prefix, ranked by how many images have them.
+     */
+    private static PrefixTrie<Tag> tagsByPrefix = new PrefixTrie<>();
+
+    /**
+     * The names of the tags in tagList by trigram, for finding tags by text inside their names.
+     */
+    private static TrigramIndex tagsByTrigram = new TrigramIndex();
+
     /**
      * Add a new tag.
      *
@@ -20,6 +40,25 @@ public class UserTagData implements Serializable {
      */
     public static void addTag(Tag newTag) {
         tagList.add(newTag);
+        tagsByName.put(newTag.name, newTag);
+        tagsByPrefix.put(newTag.name, newTag, imageCount(newTag));
+        tagsByTrigram.add(newTag.name);
+        StateManager.recordMutation(Mutation.CREATE_TAG, newTag.name);
+    }
+
+    /**
+     * Remove a tag from the system. Images that have the tag are not changed.
+     *
+     * @param tag the tag to be removed from the list of tags.
+     */
+    public static void removeTag(Tag tag) {
+        if (tagList.remove(tag)) {
+            tagsByName.remove(tag.name);
+            tagsByPrefix.remove(tag.name, tag);
+            tagsByTrigram.remove(tag.name);
+            StateManager.userData.getTagIndex().removeTag(tag);
+            StateManager.recordMutation(Mutation.DELETE_TAG, tag.name);
+        }
     }
 
     /**
@@ -36,12 +75,7 @@ public class UserTagData implements Serializable {
      * @return The Tag with name matching stringOfTag. Returns null if there is no tag with that name.
      */
     public static Tag getTagByString(String stringOfTag) {
-        for (Tag i : UserTagData.tagList) {
-            if (i.toString().equals(stringOfTag)) {
-                return i;
-            }
-        }
-        return null;
+        return tagsByName.get(stringOfTag);
     }
 
     /**
@@ -51,5 +85,91 @@ public class UserTagData implements Serializable {
      */
     public static void setTagList(ArrayList<Tag> newList) {
         tagList = newList;
+        tagsByName = new HashMap<>();
+        tagsByPrefix = new PrefixTrie<>();
+        tagsByTrigram = new TrigramIndex();
+        for (Tag tag : newList) {
+            tagsByName.put(tag.name, tag);
+            tagsByPrefix.put(tag.name, tag, imageCount(tag));
+            tagsByTrigram.add(tag.name);
+        }
+    }
+
+    /**
+     * Get the tags whose names start with the given prefix, ignoring case. The tags on the most images come first.
+     *
+     * @param prefix the start of the tag names
+     * @param limit  the most tags to return
+     * @return a new list of at most limit tags
+     */
+    public static ArrayList<Tag> completeTag(String prefix, int limit) {
+        return tagsByPrefix.complete(prefix, limit);
+    }
+
+    /**
+     * Get the tags whose names contain the given text other than at their start, ignoring case. Only the tags whose
+     * names share the trigrams of the text are looked at; text shorter than three characters has no trigrams, so
+     * every tag is checked instead.
+     *
+     * @param text  the text inside the tag names
+     * @param limit the most tags to return
+     * @return a new list of at most limit tags
+     */
+    public static ArrayList<Tag> findTagsContaining(String text, int limit) {
+        ArrayList<Tag> found = new ArrayList<>();
+        if (text.length() < 3) {
+            for (Tag tag : tagList) {
+                if (found.size() == limit) {
+                    break;
+                }
+                if (containsInside(tag.name, text)) {
+                    found.add(tag);
+                }
+            }
+            return found;
+        }
+        for (String name : tagsByTrigram.candidates(text)) {
+            if (found.size() == limit) {
+                break;
+            }
+            if (containsInside(name, text)) {
+                found.add(tagsByName.get(name));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Check if the text occurs in the name other than at its start, ignoring case.
+     */
+    private static boolean containsInside(String name, String text) {
+        return !name.regionMatches(true, 0, text, 0, text.length()) && containsIgnoreCase(name, text);
+    }
+
+    /**
+     * Check if the text occurs in the name, ignoring case.
+     */
+    private static boolean containsIgnoreCase(String name, String text) {
+        for (int i = 0; i + text.length() <= name.length(); i++) {
+            if (name.regionMatches(true, i, text, 0, text.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Update the rank of a tag among completions after images were added to or removed from it.
+     *
+     * @param tag the tag
+     */
+    static void updateTagRank(Tag tag) {
+        if (tagsByName.get(tag.name) == tag) {
+            tagsByPrefix.put(tag.name, tag, imageCount(tag));
+        }
+    }
+
+    private static int imageCount(Tag tag) {
+        return StateManager.userData == null ? 0 : StateManager.userData.getTagIndex().getImageCount(tag);
     }
 }
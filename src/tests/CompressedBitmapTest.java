@@ -0,0 +1,89 @@
+package tests;
+
+import org.junit.Test;
+import utils.CompressedBitmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for CompressedBitmap, checked against a TreeSet holding the same ints.
+ */
+public class CompressedBitmapTest {
+
+    private static int[] toArray(TreeSet<Integer> set) {
+        int[] values = new int[set.size()];
+        int i = 0;
+        for (int value : set) {
+            values[i++] = value;
+        }
+        return values;
+    }
+
+    /**
+     * Fill a bitmap and a set with the same random ints, dense enough in places to use bitmap chunks.
+     */
+    private static CompressedBitmap fill(Random random, TreeSet<Integer> set, int count, int bound) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int i = 0; i < count; i++) {
+            int value = random.nextInt(bound);
+            assertEquals(set.add(value), bitmap.add(value));
+        }
+        return bitmap;
+    }
+
+    @Test
+    public void testAddRemoveContainsMatchTreeSet() {
+        Random random = new Random(1);
+        TreeSet<Integer> set = new TreeSet<>();
+        CompressedBitmap bitmap = fill(random, set, 20000, 140000);
+        for (int i = 0; i < 15000; i++) {
+            int value = random.nextInt(140000);
+            assertEquals(set.remove(value), bitmap.remove(value));
+        }
+        for (int value = 0; value < 140000; value += 7) {
+            assertEquals(set.contains(value), bitmap.contains(value));
+        }
+        assertEquals(set.size(), bitmap.getCardinality());
+        assertArrayEquals(toArray(set), bitmap.toArray());
+    }
+
+    @Test
+    public void testBooleanOperationsMatchTreeSet() {
+        Random random = new Random(2);
+        TreeSet<Integer> firstSet = new TreeSet<>();
+        TreeSet<Integer> secondSet = new TreeSet<>();
+        CompressedBitmap first = fill(random, firstSet, 30000, 100000);
+        CompressedBitmap second = fill(random, secondSet, 3000, 200000);
+
+        TreeSet<Integer> and = new TreeSet<>(firstSet);
+        and.retainAll(secondSet);
+        TreeSet<Integer> or = new TreeSet<>(firstSet);
+        or.addAll(secondSet);
+        TreeSet<Integer> andNot = new TreeSet<>(firstSet);
+        andNot.removeAll(secondSet);
+
+        assertArrayEquals(toArray(and), CompressedBitmap.and(first, second).toArray());
+        assertArrayEquals(toArray(or), CompressedBitmap.or(first, second).toArray());
+        assertArrayEquals(toArray(andNot), CompressedBitmap.andNot(first, second).toArray());
+        assertArrayEquals(toArray(firstSet), first.toArray());
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        TreeSet<Integer> set = new TreeSet<>();
+        CompressedBitmap bitmap = fill(new Random(3), set, 10000, 70000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bitmap.write(new DataOutputStream(bytes));
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        assertArrayEquals(toArray(set), CompressedBitmap.read(buffer).toArray());
+        assertFalse(buffer.hasRemaining());
+    }
+}
@@ -0,0 +1,136 @@
+package tests;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import utils.DirectoryScanner;
+import utils.ScanCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for scanning a directory tree with DirectoryScanner.
+ */
+public class DirectoryScannerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testScanFindsAcceptedFilesInEveryDirectory() throws IOException {
+        File beach = folder.newFile("beach.jpg");
+        folder.newFile("notes.txt");
+        folder.newFile(".hidden.jpg");
+        folder.newFolder("2017", "summer");
+        File forest = folder.newFile("2017/forest.png");
+        File lake = folder.newFile("2017/summer/lake.jpg");
+        folder.newFolder("empty");
+
+        DirectoryScanner scanner = new DirectoryScanner(new HashSet<>(Arrays.asList(".jpg", ".png")));
+        ArrayList<File> files = scanner.scan(folder.getRoot());
+
+        assertEquals(new HashSet<>(Arrays.asList(beach, forest, lake)), new HashSet<>(files));
+        assertEquals(3, files.size());
+        assertEquals(5, scanner.getFilesSeen());
+        assertEquals(4, scanner.getDirectoriesSeen());
+    }
+
+    @Test
+    public void testCacheSkipsUnchangedDirectories() throws IOException {
+        File beach = folder.newFile("beach.jpg");
+        folder.newFolder("2017");
+        File forest = folder.newFile("2017/forest.jpg");
+        File cacheFile = File.createTempFile("scancache", ".ctags");
+        cacheFile.deleteOnExit();
+        HashSet<String> extensions = new HashSet<>(Collections.singletonList(".jpg"));
+
+        ScanCache cache = new ScanCache();
+        DirectoryScanner scanner = new DirectoryScanner(extensions, cache);
+        scanner.scan(folder.getRoot());
+        assertEquals(0, scanner.getDirectoriesSkipped());
+        cache.setImageId(forest, 7);
+        cache.save(cacheFile);
+        // Keep the root's modification time so only 2017 looks changed
+        long rootModified = folder.getRoot().lastModified();
+        File lake = folder.newFile("2017/lake.jpg");
+        assertTrue(new File(folder.getRoot(), "2017").setLastModified(rootModified + 2000));
+        assertTrue(folder.getRoot().setLastModified(rootModified));
+
+        cache = ScanCache.load(cacheFile);
+        scanner = new DirectoryScanner(extensions, cache);
+        ArrayList<File> files = scanner.scan(folder.getRoot());
+
+        assertEquals(new HashSet<>(Arrays.asList(beach, forest, lake)), new HashSet<>(files));
+        assertEquals(1, scanner.getDirectoriesSkipped());
+        assertEquals(7, cache.getFile(forest).getImageId());
+        assertEquals(0, cache.getFile(lake).getImageId());
+    }
+
+    private File write(String name, byte... header) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), header);
+        return file;
+    }
+
+    @Test
+    public void testSniffingAcceptsFilesByContents() throws IOException {
+        File photo = write("photo", (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0);
+        File screenshot = write("screenshot.jpg", (byte) 0x89, (byte) 'P', (byte) 'N', (byte) 'G', (byte) '\r',
+                (byte) '\n', (byte) 0x1A, (byte) '\n');
+        File scan = write("scan.dat", (byte) 'I', (byte) 'I', (byte) 42, (byte) 0);
+        write("fake.jpg", (byte) '<', (byte) 'h', (byte) 't', (byte) 'm', (byte) 'l');
+        folder.newFile("empty.png");
+        File cacheFile = File.createTempFile("scancache", ".ctags");
+        cacheFile.deleteOnExit();
+
+        ScanCache cache = new ScanCache();
+        DirectoryScanner scanner = new DirectoryScanner(null, cache);
+        scanner.setSniffContent(true);
+        assertEquals(new HashSet<>(Arrays.asList(photo, screenshot, scan)),
+                new HashSet<>(scanner.scan(folder.getRoot())));
+        cache.save(cacheFile);
+
+        // The rejected files stay rejected when the directory is not listed again
+        scanner = new DirectoryScanner(null, ScanCache.load(cacheFile));
+        scanner.setSniffContent(true);
+        assertEquals(new HashSet<>(Arrays.asList(photo, screenshot, scan)),
+                new HashSet<>(scanner.scan(folder.getRoot())));
+        assertEquals(1, scanner.getDirectoriesSkipped());
+    }
+
+    @Test
+    public void testSwitchingSniffingListsUnchangedDirectoriesAgain() throws IOException {
+        File photo = write("photo.jpg", (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0);
+        File scan = write("scan0001", (byte) 'I', (byte) 'I', (byte) 42, (byte) 0);
+        File fake = write("fake.jpg", (byte) '<', (byte) 'h', (byte) 't', (byte) 'm', (byte) 'l');
+        HashSet<String> extensions = new HashSet<>(Collections.singletonList(".jpg"));
+
+        ScanCache cache = new ScanCache();
+        DirectoryScanner scanner = new DirectoryScanner(extensions, cache);
+        assertEquals(new HashSet<>(Arrays.asList(photo, fake)), new HashSet<>(scanner.scan(folder.getRoot())));
+        cache.setImageId(photo, 7);
+
+        scanner = new DirectoryScanner(extensions, cache);
+        scanner.setSniffContent(true);
+        assertEquals(new HashSet<>(Arrays.asList(photo, scan)), new HashSet<>(scanner.scan(folder.getRoot())));
+        assertEquals(0, scanner.getDirectoriesSkipped());
+        assertEquals(7, cache.getFile(photo).getImageId());
+
+        scanner = new DirectoryScanner(extensions, cache);
+        assertEquals(new HashSet<>(Arrays.asList(photo, fake)), new HashSet<>(scanner.scan(folder.getRoot())));
+        assertEquals(0, scanner.getDirectoriesSkipped());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testScanRejectsFile() throws IOException {
+        new DirectoryScanner(null).scan(folder.newFile("beach.jpg"));
+    }
+}
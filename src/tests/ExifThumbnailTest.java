@@ -0,0 +1,109 @@
+package tests;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import utils.ExifThumbnail;
+import utils.ThumbnailCache;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for taking the thumbnails embedded in the EXIF data of JPEG files.
+ */
+public class ExifThumbnailTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] jpeg(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, x * 255 / width << 8 | y * 255 / height);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(image, "jpg", out));
+        return out.toByteArray();
+    }
+
+    /**
+     * Put an APP1 segment holding the given thumbnail in EXIF data right after the start of a JPEG.
+     */
+    private static byte[] withExifThumbnail(byte[] jpeg, byte[] thumbnail, ByteOrder order) {
+        // TIFF header, an empty first directory, and a second directory pointing at the thumbnail after it
+        ByteBuffer tiff = ByteBuffer.allocate(44 + thumbnail.length).order(order);
+        tiff.put(order == ByteOrder.LITTLE_ENDIAN ? new byte[]{'I', 'I'} : new byte[]{'M', 'M'});
+        tiff.putShort((short) 42).putInt(8);
+        tiff.putShort((short) 0).putInt(14);
+        tiff.putShort((short) 2);
+        tiff.putShort((short) 0x0201).putShort((short) 4).putInt(1).putInt(44);
+        tiff.putShort((short) 0x0202).putShort((short) 4).putInt(1).putInt(thumbnail.length);
+        tiff.putInt(0);
+        tiff.put(thumbnail);
+        ByteBuffer file = ByteBuffer.allocate(jpeg.length + 10 + tiff.capacity());
+        file.put(jpeg, 0, 2);
+        file.put((byte) 0xFF).put((byte) 0xE1).putShort((short) (8 + tiff.capacity()));
+        file.put(new byte[]{'E', 'x', 'i', 'f', 0, 0}).put(tiff.array());
+        file.put(jpeg, 2, jpeg.length - 2);
+        return file.array();
+    }
+
+    @Test
+    public void testEmbeddedThumbnailIsUsedWhenLargeEnough() throws IOException {
+        byte[] thumbnail = jpeg(200, 150);
+        File photo = folder.newFile("photo.jpg");
+        Files.write(photo.toPath(), withExifThumbnail(jpeg(1200, 900), thumbnail, ByteOrder.LITTLE_ENDIAN));
+        File motorola = folder.newFile("motorola.jpg");
+        Files.write(motorola.toPath(), withExifThumbnail(jpeg(800, 600), thumbnail, ByteOrder.BIG_ENDIAN));
+        File plain = folder.newFile("plain.jpg");
+        Files.write(plain.toPath(), jpeg(640, 480));
+
+        assertArrayEquals(thumbnail, ExifThumbnail.read(photo, 160));
+        assertArrayEquals(thumbnail, ExifThumbnail.read(motorola, 160));
+        assertNull(ExifThumbnail.read(photo, 300));
+        assertNull(ExifThumbnail.read(plain, 160));
+
+        // The cache takes an embedded thumbnail as large as a tile as it is rather than scaling the image down
+        File phone = folder.newFile("phone.jpg");
+        Files.write(phone.toPath(), withExifThumbnail(jpeg(1200, 900), jpeg(320, 240), ByteOrder.LITTLE_ENDIAN));
+        ThumbnailCache cache = ThumbnailCache.load(folder.newFolder("cache"));
+        assertTrue(cache.create(phone));
+        try (InputStream in = cache.open(phone)) {
+            assertEquals(320, ImageIO.read(in).getWidth());
+        }
+        // A smaller one would be scaled up, so the image is decoded instead
+        assertTrue(cache.create(photo));
+        try (InputStream in = cache.open(photo)) {
+            assertEquals(ThumbnailCache.SIZE, ImageIO.read(in).getWidth());
+        }
+        assertTrue(cache.create(plain));
+        try (InputStream in = cache.open(plain)) {
+            assertEquals(ThumbnailCache.SIZE, ImageIO.read(in).getWidth());
+        }
+        cache.close();
+    }
+
+    @Test
+    public void testOverflowingThumbnailOffsetIsIgnored() throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(withExifThumbnail(jpeg(64, 48), jpeg(8, 8), ByteOrder.LITTLE_ENDIAN))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        // The offset and length of the thumbnail, in the second directory of the EXIF data
+        bytes.putInt(36, 0x7FFFFFF0).putInt(48, 0x7FFFFFF0);
+        File damaged = folder.newFile("damaged.jpg");
+        Files.write(damaged.toPath(), bytes.array());
+
+        assertNull(ExifThumbnail.read(damaged, 1));
+    }
+}
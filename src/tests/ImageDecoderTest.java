@@ -0,0 +1,61 @@
+package tests;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import utils.ImageDecoder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for decoding images at a reduced resolution.
+ */
+public class ImageDecoderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static int color(int x, int y) {
+        return (x / 7 % 256) << 16 | (y / 5 % 256) << 8 | ((x + y) % 256);
+    }
+
+    private File write(String name, String format, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, color(x, y));
+            }
+        }
+        File file = folder.newFile(name);
+        assertTrue(ImageIO.write(image, format, file));
+        return file;
+    }
+
+    @Test
+    public void testLargeBmpIsDecodedInBandsAtReducedResolution() throws IOException {
+        File scan = write("scan.bmp", "bmp", 2600, 1800);
+        BufferedImage image = ImageDecoder.decode(scan, 300, 300);
+
+        // Every sixth pixel, the most that still leaves 300 pixels on the shorter side
+        assertEquals(434, image.getWidth());
+        assertEquals(300, image.getHeight());
+        for (int y = 0; y < image.getHeight(); y += 37) {
+            for (int x = 0; x < image.getWidth(); x += 41) {
+                assertEquals(color(x * 6, y * 6), image.getRGB(x, y) & 0xFFFFFF);
+            }
+        }
+    }
+
+    @Test
+    public void testSmallImageIsDecodedInFull() throws IOException {
+        File icon = write("icon.png", "png", 120, 80);
+        BufferedImage image = ImageDecoder.decode(icon, 300, 300);
+        assertEquals(120, image.getWidth());
+        assertEquals(80, image.getHeight());
+    }
+}
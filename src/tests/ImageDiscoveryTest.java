@@ -0,0 +1,159 @@
+package tests;
+
+import model.ImageFile;
+import model.StateManager;
+import model.TagDictionary;
+import model.UserImageFileData;
+import model.UserSessionData;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import utils.ContentFingerprint;
+import utils.DirectoryScanner;
+import utils.ImageDiscovery;
+import utils.ScanCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for fetching the images of a directory tree in the background with ImageDiscovery.
+ */
+public class ImageDiscoveryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        StateManager.userData = new UserImageFileData();
+        StateManager.sessionData = new UserSessionData();
+        StateManager.scanCache = new ScanCache();
+    }
+
+    @Test
+    public void testImagesAreAddedToTheSessionAsFound() throws Exception {
+        ArrayList<File> images = new ArrayList<>();
+        folder.newFolder("2017");
+        for (int i = 0; i < 120; i++) {
+            images.add(folder.newFile((i % 2 == 0 ? "" : "2017/") + "IMG_" + i + ".jpg"));
+        }
+        folder.newFile("notes.txt");
+        // The listener runs on one thread, as it would on the JavaFX application thread
+        ExecutorService listenerThread = Executors.newSingleThreadExecutor();
+        List<ImageFile> found = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicBoolean wasCancelled = new AtomicBoolean();
+        ImageDiscovery discovery = new ImageDiscovery(folder.getRoot(),
+                new DirectoryScanner(new HashSet<>(Collections.singletonList(".jpg")), StateManager.scanCache),
+                listenerThread);
+        discovery.setListener(new ImageDiscovery.Listener() {
+            @Override
+            public void imagesFound(List<ImageFile> imageFiles) {
+                found.addAll(imageFiles);
+            }
+
+            @Override
+            public void finished(boolean cancelled) {
+                wasCancelled.set(cancelled);
+                finished.countDown();
+            }
+        });
+
+        discovery.start();
+
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        listenerThread.shutdown();
+        assertFalse(wasCancelled.get());
+        assertEquals(120, found.size());
+        HashSet<File> foundFiles = new HashSet<>();
+        for (ImageFile imageFile : found) {
+            foundFiles.add(imageFile.getThisFile());
+        }
+        assertEquals(new HashSet<>(images), foundFiles);
+        assertEquals(120, StateManager.sessionData.getNameToImageFileMap().size());
+        assertTrue(StateManager.userData.existsInMap(images.get(0)));
+    }
+
+    @Test
+    public void testMovedFileIsReattachedToItsImage() throws Exception {
+        File beach = folder.newFile("beach.jpg");
+        Files.write(beach.toPath(), "not really a jpeg".getBytes(StandardCharsets.UTF_8));
+        ImageFile imageFile = new ImageFile(beach);
+        imageFile.addTag(TagDictionary.intern("sun"));
+        StateManager.userData.addImageFileToMap(imageFile);
+        StateManager.userData.setFingerprint(imageFile, ContentFingerprint.quick(beach), ContentFingerprint.full(beach));
+
+        folder.newFolder("2017");
+        File moved = new File(folder.getRoot(), "2017/holiday.jpg");
+        Files.move(beach.toPath(), moved.toPath());
+        folder.newFile("copy.jpg");
+        runDiscovery();
+
+        assertEquals(2, StateManager.sessionData.getNameToImageFileMap().size());
+        assertSame(imageFile, StateManager.sessionData.getImageFileWithFile(moved));
+        assertEquals("holiday.jpg", imageFile.getCurrentName());
+        assertTrue(imageFile.hasTag(TagDictionary.intern("sun")));
+        assertFalse(StateManager.userData.existsInMap(beach));
+    }
+
+    @Test
+    public void testFileWithOtherFullFingerprintIsNotReattached() throws Exception {
+        File beach = folder.newFile("beach.jpg");
+        Files.write(beach.toPath(), "not really a jpeg".getBytes(StandardCharsets.UTF_8));
+        ImageFile imageFile = new ImageFile(beach);
+        StateManager.userData.addImageFileToMap(imageFile);
+        // As if another file had the same head, tail and size
+        StateManager.userData.setFingerprint(imageFile, ContentFingerprint.quick(beach), 42);
+
+        File moved = new File(folder.getRoot(), "holiday.jpg");
+        Files.move(beach.toPath(), moved.toPath());
+        runDiscovery();
+
+        assertNotSame(imageFile, StateManager.sessionData.getImageFileWithFile(moved));
+        assertEquals(beach, imageFile.getThisFile());
+    }
+
+    private void runDiscovery() throws InterruptedException {
+        ExecutorService listenerThread = Executors.newSingleThreadExecutor();
+        ImageDiscovery discovery = new ImageDiscovery(folder.getRoot(),
+                new DirectoryScanner(new HashSet<>(Collections.singletonList(".jpg")), StateManager.scanCache),
+                listenerThread);
+        discovery.setFingerprintContent(true);
+        discovery.start();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!discovery.isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        listenerThread.shutdown();
+        assertTrue(discovery.isFinished());
+    }
+
+    @Test
+    public void testScannerPassesEachDirectoryToTheSink() throws IOException {
+        File beach = folder.newFile("beach.jpg");
+        folder.newFolder("2017");
+        File forest = folder.newFile("2017/forest.jpg");
+        List<List<File>> batches = Collections.synchronizedList(new ArrayList<>());
+
+        new DirectoryScanner(null).scan(folder.getRoot(), batches::add);
+
+        assertEquals(new HashSet<>(Arrays.asList(Collections.singletonList(beach),
+                Collections.singletonList(forest))), new HashSet<>(batches));
+    }
+}
@@ -0,0 +1,135 @@
+package tests;
+
+import model.ImageFile;
+import model.ImageQuery;
+import model.Tag;
+import model.TagDictionary;
+import model.UserImageFileData;
+import model.UserTagData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for parsing and running image queries.
+ */
+public class ImageQueryTest {
+
+    private UserImageFileData data;
+
+    private ImageFile beach2019;
+
+    private ImageFile beach2020;
+
+    private ImageFile blurryBeach;
+
+    private ImageFile forest;
+
+    private ImageFile addImage(String name, String... tagNames) {
+        StringBuilder currentName = new StringBuilder();
+        ImageFile imageFile = new ImageFile(new File("/photos/" + name));
+        for (String tagName : tagNames) {
+            Tag tag = TagDictionary.intern(tagName);
+            imageFile.addTag(tag);
+            currentName.append("@").append(tagName).append(" ");
+        }
+        imageFile.setCurrentName(currentName + name);
+        data.addImageFileToMap(imageFile);
+        data.getTagIndex().setTags(imageFile.getId(), imageFile.getTagIds());
+        return imageFile;
+    }
+
+    @Before
+    public void setUp() {
+        data = new UserImageFileData();
+        beach2019 = addImage("IMG_0001.jpg", "beach", "2019");
+        beach2020 = addImage("DSC_0002.jpg", "beach", "2020");
+        blurryBeach = addImage("IMG_0003.jpg", "beach", "2020", "blurry");
+        forest = addImage("IMG_beach.jpg", "forest", "2019");
+    }
+
+    @After
+    public void tearDown() {
+        UserTagData.setTagList(new ArrayList<>());
+    }
+
+    private List<ImageFile> run(String query) {
+        return ImageQuery.parse(query).stream(data, data.getTagIndex().getAllImageIds())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testTagsAndNames() {
+        assertEquals(Collections.singletonList(beach2019),
+                run("@beach AND (@2019 OR @2020) NOT @blurry name:~\"IMG_\""));
+        assertEquals(Arrays.asList(beach2019, beach2020), run("@beach NOT @blurry"));
+        assertEquals(Arrays.asList(beach2020, forest), run("@2020 NOT @blurry OR @forest"));
+        assertEquals(Collections.singletonList(forest), run("@2019 not (@beach)"));
+    }
+
+    @Test
+    public void testNameTermsIgnoreTagsInTheName() {
+        // Every image is tagged beach except forest, whose name contains it
+        assertEquals(Collections.singletonList(forest), run("name:beach"));
+        assertEquals(Collections.singletonList(forest), run("BEACH"));
+        assertEquals(Arrays.asList(beach2019, blurryBeach), run("name:~\"img_\\\\d+\" NOT @missing"));
+        assertTrue(run("@missing").isEmpty());
+    }
+
+    @Test
+    public void testNameTermsUseTheCurrentNameWithoutTags() {
+        File original = new File("/photos/@lake shore.jpg");
+        ImageFile lake = new ImageFile(original);
+        data.addImageFileToMap(lake);
+        assertTrue(run("name:lake").isEmpty());
+
+        lake.generalReName("evening @lake stroll.jpg");
+        lake.setFile(new File("/photos/evening @lake stroll.jpg"));
+        data.resetImageFileKey(lake, "@lake shore.jpg", original);
+        assertEquals(Collections.singletonList(lake), run("name:\"evening stroll\""));
+        assertTrue(run("name:shore").isEmpty());
+    }
+
+    @Test
+    public void testSimilarAndDuplicateTerms() {
+        data.setPerceptualHash(beach2019, 0xF0F0F0F0F0F0F0F0L);
+        data.setPerceptualHash(beach2020, 0xF0F0F0F0F0F0F0F1L);
+        data.setPerceptualHash(forest, 0x0F0F0F0F0F0F0F0FL);
+        assertEquals(Arrays.asList(beach2019, beach2020), run("similar:\"" + beach2019.getCurrentName() + "\""));
+        assertEquals(Arrays.asList(beach2019, beach2020), run("is:duplicate"));
+        assertEquals(Collections.singletonList(beach2020), run("@2020 AND is:duplicate OR similar:missing"));
+        assertTrue(run("@forest is:duplicate").isEmpty());
+    }
+
+    @Test
+    public void testTagTermsIgnoreCaseAndMatchPrefixes() {
+        UserTagData.setTagList(new ArrayList<>(Arrays.asList(TagDictionary.intern("beach"),
+                TagDictionary.intern("blurry"), TagDictionary.intern("forest"))));
+        List<ImageFile> beaches = Arrays.asList(beach2019, beach2020, blurryBeach);
+        assertEquals(beaches, run("@Beach"));
+        assertTrue(run("@bea").isEmpty());
+        assertEquals(beaches, run("@BEA*"));
+
+        // While a query is typed, its last tag term is the start of a tag name
+        assertEquals(beaches, ImageQuery.parsePartial("@bea").stream(data, data.getTagIndex().getAllImageIds())
+                .collect(Collectors.toList()));
+        assertTrue(ImageQuery.parsePartial("@bea ").stream(data, data.getTagIndex().getAllImageIds())
+                .collect(Collectors.toList()).isEmpty());
+        assertEquals(Arrays.asList(beach2019, beach2020), ImageQuery.parsePartial("@beach NOT @BL")
+                .stream(data, data.getTagIndex().getAllImageIds()).collect(Collectors.toList()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIncompleteQueryIsRejected() {
+        ImageQuery.parse("@beach AND (@2019 OR");
+    }
+}
@@ -0,0 +1,83 @@
+package tests;
+
+import model.ImageFile;
+import model.LibraryFile;
+import model.Tag;
+import model.TagDictionary;
+import model.UserImageFileData;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for writing and reading LibraryFiles.
+ */
+public class LibraryFileTest {
+
+    private File firstFile;
+
+    private File secondFile;
+
+    @Before
+    public void setUp() throws IOException {
+        firstFile = File.createTempFile("library", ".ctags");
+        secondFile = File.createTempFile("library", ".ctags");
+        firstFile.deleteOnExit();
+        secondFile.deleteOnExit();
+    }
+
+    @Test
+    public void testRoundTripKeepsImagesTagsAndHistory() throws IOException {
+        UserImageFileData data = new UserImageFileData();
+        Tag sun = TagDictionary.intern("sun");
+        data.allTags = new ArrayList<>();
+        data.allTags.add(sun);
+        data.addPathToVisitedList("/photos");
+        ImageFile imageFile = new ImageFile(new File("/photos/beach.jpg"));
+        imageFile.updateTagHistory(imageFile.getTagList());
+        imageFile.addTag(sun);
+        imageFile.generalReName("@sun beach.jpg");
+        imageFile.setFile(new File("/photos/@sun beach.jpg"));
+        data.addImageFileToMap(imageFile);
+        data.addImageFileToMap(new ImageFile(new File("/photos/forest.jpg")));
+        data.setFingerprint(imageFile, 0x1234567890ABCDEFL, 0x0FEDCBA987654321L);
+
+        LibraryFile.write(data, firstFile);
+        assertTrue(LibraryFile.isLibraryFile(firstFile));
+        UserImageFileData readData = LibraryFile.read(firstFile);
+
+        assertEquals(2, readData.getImageFileNames().size());
+        assertArrayEquals(new String[]{"/photos"}, readData.getPreviousPathsVisited());
+        ImageFile readImageFile = readData.getImageFileWithFile(new File("/photos/@sun beach.jpg"));
+        assertNotNull(readImageFile);
+        assertEquals("@sun beach.jpg", readImageFile.getCurrentName());
+        assertEquals("beach.jpg", readImageFile.getOriginalName());
+        assertSame(readData.allTags.get(0), readImageFile.getTagList().get(0));
+        assertEquals(1, readData.getImageFilesWithTag(sun).size());
+        assertEquals("beach.jpg", readImageFile.getImageLogs().get(0).getOldName());
+        assertEquals(0x1234567890ABCDEFL, readData.getFingerprintIndex().get(readImageFile.getId()));
+        assertEquals(0x0FEDCBA987654321L, readData.getFingerprintIndex().getFull(readImageFile.getId()));
+    }
+
+    @Test
+    public void testRewritingUndecodedRecordsCopiesThem() throws IOException {
+        UserImageFileData data = new UserImageFileData();
+        data.allTags = new ArrayList<>();
+        ImageFile imageFile = new ImageFile(new File("/photos/beach.jpg"));
+        imageFile.generalReName("renamed.jpg");
+        data.addImageFileToMap(imageFile);
+        LibraryFile.write(data, firstFile);
+
+        // Write again without touching any record, then check the copy reads back intact.
+        LibraryFile.write(LibraryFile.read(firstFile), secondFile);
+        UserImageFileData readData = LibraryFile.read(secondFile);
+        ImageFile readImageFile = readData.getImageFileWithName("renamed.jpg");
+        assertNotNull(readImageFile);
+        assertEquals(1, readImageFile.getImageLogs().size());
+    }
+}
@@ -0,0 +1,70 @@
+package tests;
+
+import model.ImageFile;
+import model.MutationJournal;
+import model.MutationJournal.Mutation;
+import model.UserImageFileData;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for replaying and appending to a MutationJournal.
+ */
+public class MutationJournalTest {
+
+    private File journalFile;
+
+    @Before
+    public void setUp() throws IOException {
+        journalFile = File.createTempFile("journal", ".ctags");
+        journalFile.deleteOnExit();
+    }
+
+    @Test
+    public void testReplayRestoresRenameAndTags() throws IOException {
+        File image = new File(journalFile.getParentFile(), "beach.jpg");
+        File renamed = new File(journalFile.getParentFile(), "@sun beach.jpg");
+        MutationJournal journal = new MutationJournal(journalFile);
+        journal.open();
+        journal.append(Mutation.ADD_IMAGE, image.getAbsolutePath());
+        journal.append(Mutation.RENAME_IMAGE, image.getAbsolutePath(), renamed.getAbsolutePath(), "42");
+        journal.append(Mutation.SET_TAGS, renamed.getAbsolutePath(), "sun");
+        journal.close();
+
+        UserImageFileData data = new UserImageFileData();
+        assertEquals(3, new MutationJournal(journalFile).replay(data));
+        ImageFile imageFile = data.getImageFileWithFile(renamed);
+        assertNotNull(imageFile);
+        assertEquals("@sun beach.jpg", imageFile.getCurrentName());
+        assertEquals("42", imageFile.getImageLogs().get(0).getTimeStamp());
+        assertEquals("sun", imageFile.getTagList().get(0).name);
+        assertSame(data.allTags.get(0), imageFile.getTagList().get(0));
+    }
+
+    @Test
+    public void testReplayIgnoresIncompleteRecord() throws IOException {
+        MutationJournal journal = new MutationJournal(journalFile);
+        journal.open();
+        journal.append(Mutation.CREATE_TAG, "first");
+        journal.close();
+        try (FileOutputStream outputStream = new FileOutputStream(journalFile, true)) {
+            outputStream.write(new byte[]{0, 0, 0, 9, 4});
+        }
+
+        MutationJournal reopened = new MutationJournal(journalFile);
+        assertEquals(1, reopened.replay(new UserImageFileData()));
+        reopened.open();
+        reopened.append(Mutation.CREATE_TAG, "second");
+        reopened.close();
+
+        UserImageFileData data = new UserImageFileData();
+        assertEquals(2, new MutationJournal(journalFile).replay(data));
+        assertEquals("second", data.allTags.get(1).name);
+    }
+}
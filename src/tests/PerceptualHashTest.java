@@ -0,0 +1,114 @@
+package tests;
+
+import model.ImageFile;
+import model.UserImageFileData;
+import org.junit.Test;
+import utils.BKTree;
+import utils.CompressedBitmap;
+import utils.PerceptualHash;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for perceptual hashes and finding near duplicates with them.
+ */
+public class PerceptualHashTest {
+
+    private static BufferedImage gradient(int width, int height, boolean flipped) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int brightness = (x * 255 / width + (y * y) % 97) % 256;
+                if (flipped) {
+                    brightness = 255 - brightness;
+                }
+                image.setRGB(x, y, new Color(brightness, brightness / 2, 255 - brightness).getRGB());
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage resize(BufferedImage image, int width, int height) {
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        return resized;
+    }
+
+    @Test
+    public void testResizedCopyIsNear() {
+        BufferedImage original = gradient(640, 480, false);
+        long hash = PerceptualHash.dHash(original);
+        long resizedHash = PerceptualHash.dHash(resize(original, 200, 150));
+        long otherHash = PerceptualHash.dHash(gradient(640, 480, true));
+        assertTrue(BKTree.distance(hash, resizedHash) <= PerceptualHash.NEAR_DUPLICATE_DISTANCE);
+        assertTrue(BKTree.distance(hash, otherHash) > PerceptualHash.NEAR_DUPLICATE_DISTANCE);
+        assertNotEquals(0, PerceptualHash.dHash(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB)));
+    }
+
+    @Test
+    public void testTreeSearchMatchesLinearScan() {
+        Random random = new Random(17);
+        BKTree<Integer> tree = new BKTree<>();
+        long[] hashes = new long[500];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = random.nextLong();
+            tree.add(hashes[i], i);
+        }
+        // Near copies of the first hash
+        for (int i = 0; i < 5; i++) {
+            tree.add(hashes[0] ^ (1L << i * 7), hashes.length + i);
+        }
+        ArrayList<BKTree.Match<Integer>> matches = tree.search(hashes[0], 6);
+        assertEquals(6, matches.size());
+        assertEquals(0, (int) matches.get(0).getValue());
+        assertEquals(1, matches.get(1).getDistance());
+
+        assertTrue(tree.remove(hashes[0], 0));
+        assertFalse(tree.remove(hashes[0], 0));
+        assertEquals(5, tree.search(hashes[0], 6).size());
+        assertEquals(hashes.length + 4, tree.size());
+    }
+
+    @Test
+    public void testClusters() {
+        UserImageFileData data = new UserImageFileData();
+        ImageFile[] imageFiles = new ImageFile[5];
+        long[] hashes = {0xFF00FF00FF00FF00L, 0xFF00FF00FF00FF07L, 0xFF00FF00FF00FF3FL, 0x00FF00FF00FF00FFL, 0x1234L};
+        CompressedBitmap scope = new CompressedBitmap();
+        for (int i = 0; i < imageFiles.length; i++) {
+            imageFiles[i] = new ImageFile(new File("/photos/IMG_" + i + ".jpg"));
+            data.addImageFileToMap(imageFiles[i]);
+            data.setPerceptualHash(imageFiles[i], hashes[i]);
+            scope.add(imageFiles[i].getId());
+        }
+        data.setPerceptualHash(imageFiles[4], hashes[3] ^ 1);
+
+        // The first three are chained by small differences, and the last two are a pair
+        ArrayList<int[]> clusters = data.getPerceptualHashIndex().cluster(scope,
+                PerceptualHash.NEAR_DUPLICATE_DISTANCE);
+        assertEquals(2, clusters.size());
+        assertArrayEquals(new int[]{imageFiles[0].getId(), imageFiles[1].getId(), imageFiles[2].getId()},
+                clusters.get(0));
+        assertArrayEquals(new int[]{imageFiles[3].getId(), imageFiles[4].getId()}, clusters.get(1));
+        assertEquals(Arrays.asList(imageFiles[0].getId(), imageFiles[1].getId(), imageFiles[2].getId()),
+                data.getPerceptualHashIndex().findNear(imageFiles[0].getId(), PerceptualHash.NEAR_DUPLICATE_DISTANCE));
+
+        // Without the image in the middle of the chain, the first and third are too far apart
+        assertEquals(2, data.getPerceptualHashIndex().cluster(scope, 3).size());
+        data.removeImageFile(imageFiles[1]);
+        scope.remove(imageFiles[1].getId());
+        assertEquals(1, data.getPerceptualHashIndex().cluster(scope, 3).size());
+    }
+}
@@ -0,0 +1,47 @@
+package tests;
+
+import org.junit.Before;
+import org.junit.Test;
+import utils.PrefixTrie;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ranked completion in a PrefixTrie.
+ */
+public class PrefixTrieTest {
+
+    private PrefixTrie<String> trie;
+
+    @Before
+    public void setUp() {
+        trie = new PrefixTrie<>();
+        trie.put("sun", "sun", 3);
+        trie.put("Sunset", "Sunset", 10);
+        trie.put("sunday", "sunday", 3);
+        trie.put("sea", "sea", 7);
+        trie.put("trees", "trees", 20);
+    }
+
+    @Test
+    public void testCompleteRanksByWeightThenKey() {
+        assertEquals(Arrays.asList("Sunset", "sun", "sunday"), trie.complete("SU", 10));
+        assertEquals(Arrays.asList("trees", "Sunset"), trie.complete("", 2));
+        assertEquals(Collections.emptyList(), trie.complete("x", 10));
+    }
+
+    @Test
+    public void testPutUpdatesWeightAndRemovePrunes() {
+        trie.put("sun", "sun", 30);
+        assertEquals(Arrays.asList("sun", "Sunset"), trie.complete("s", 2));
+
+        trie.remove("sunset", "Sunset");
+        trie.remove("sunday", "sunday");
+        assertEquals(Collections.singletonList("sun"), trie.complete("sun", 10));
+        assertEquals(Collections.emptyList(), trie.complete("sunset", 10));
+        assertEquals(3, trie.size());
+    }
+}
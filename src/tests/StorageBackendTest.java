@@ -0,0 +1,101 @@
+package tests;
+
+import model.CheckpointWorker;
+import model.ImageFile;
+import model.MutationJournal.Mutation;
+import model.SerializedFileBackend;
+import model.StorageBackend;
+import model.UserImageFileData;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for loading data saved through a StorageBackend.
+ */
+public class StorageBackendTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("storage").toFile();
+        directory.deleteOnExit();
+    }
+
+    private StorageBackend fileBackend() {
+        return new SerializedFileBackend(new File(directory, "data.ctags"), new File(directory, "journal.ctags"),
+                3600, 1000);
+    }
+
+    @Test
+    public void testFileBackendLoadsRecordedChanges() throws IOException {
+        File image = new File(directory, "beach.jpg");
+        StorageBackend backend = fileBackend();
+        UserImageFileData data = backend.load();
+        assertEquals(0, data.getImageFileNames().size());
+        backend.record(Mutation.CREATE_TAG, "sun");
+        backend.record(Mutation.ADD_IMAGE, image.getAbsolutePath());
+        backend.record(Mutation.SET_TAGS, image.getAbsolutePath(), "sun");
+        backend.record(Mutation.VISIT_PATH, directory.getAbsolutePath());
+        backend.close();
+
+        StorageBackend reopened = fileBackend();
+        UserImageFileData readData = reopened.load();
+        reopened.close();
+        ImageFile imageFile = readData.getImageFileWithFile(image);
+        assertNotNull(imageFile);
+        assertSame(readData.allTags.get(0), imageFile.getTagList().get(0));
+        assertArrayEquals(new String[]{directory.getAbsolutePath()}, readData.getPreviousPathsVisited());
+    }
+
+    @Test
+    public void testFileBackendReportsCheckpoints() throws IOException, InterruptedException {
+        File dataFile = new File(directory, "data.ctags");
+        SerializedFileBackend backend = new SerializedFileBackend(dataFile, new File(directory, "journal.ctags"),
+                3600, 2);
+        backend.load();
+        CheckpointWorker checkpointWorker = backend.getCheckpointWorker();
+        assertEquals(-1, checkpointWorker.getLastCheckpointBytes());
+        backend.record(Mutation.CREATE_TAG, "sun");
+        backend.record(Mutation.CREATE_TAG, "sea");
+        for (int i = 0; i < 100 && checkpointWorker.getLastCheckpointBytes() < 0; i++) {
+            Thread.sleep(50);
+        }
+        backend.close();
+
+        assertEquals(2, checkpointWorker.getLastCheckpointMutations());
+        assertEquals(new File(directory, "data.ctags.1").length(), checkpointWorker.getLastCheckpointBytes());
+        assertTrue(checkpointWorker.getLastCheckpointMillis() >= 0);
+    }
+
+    @Test
+    public void testCheckpointsSaveNewSnapshotFiles() throws IOException, InterruptedException {
+        File firstSnapshot = new File(directory, "data.ctags.1");
+        File secondSnapshot = new File(directory, "data.ctags.2");
+        SerializedFileBackend backend = new SerializedFileBackend(new File(directory, "data.ctags"),
+                new File(directory, "journal.ctags"), 3600, 1);
+        backend.load();
+        backend.record(Mutation.CREATE_TAG, "sun");
+        for (int i = 0; i < 100 && !firstSnapshot.exists(); i++) {
+            Thread.sleep(50);
+        }
+        backend.record(Mutation.CREATE_TAG, "sea");
+        for (int i = 0; i < 100 && firstSnapshot.exists(); i++) {
+            Thread.sleep(50);
+        }
+        backend.close();
+
+        assertTrue(secondSnapshot.exists());
+        assertFalse(firstSnapshot.exists());
+        StorageBackend reopened = fileBackend();
+        UserImageFileData readData = reopened.load();
+        reopened.close();
+        assertEquals(2, readData.allTags.size());
+    }
+}
@@ -0,0 +1,42 @@
+package tests;
+
+import model.ImageFile;
+import model.Tag;
+import model.TagDictionary;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for interned tags and the tag ids stored by ImageFile.
+ */
+public class TagDictionaryTest {
+
+    @Test
+    public void testInternReturnsOneTagPerName() {
+        Tag first = TagDictionary.intern("dictionary-first");
+        Tag second = TagDictionary.intern("dictionary-second");
+
+        assertSame(first, TagDictionary.intern("dictionary-first"));
+        assertSame(first, TagDictionary.get(first.getId()));
+        assertSame(second, TagDictionary.get("dictionary-second"));
+        assertNotEquals(first.getId(), second.getId());
+        assertNull(TagDictionary.get("dictionary-missing"));
+    }
+
+    @Test
+    public void testImageFileTags() {
+        Tag first = TagDictionary.intern("dictionary-first");
+        Tag second = TagDictionary.intern("dictionary-second");
+        ImageFile imageFile = new ImageFile(new File("/photos/beach.jpg"));
+
+        imageFile.setTags(Arrays.asList(first, second, first));
+        assertEquals(Arrays.asList(first, second), imageFile.getTagList());
+        imageFile.removeTag(first);
+        assertFalse(imageFile.hasTag(first));
+        assertArrayEquals(new int[]{second.getId()}, imageFile.getTagIds());
+    }
+}
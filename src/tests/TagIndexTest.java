@@ -0,0 +1,90 @@
+package tests;
+
+import model.ImageFile;
+import model.Tag;
+import model.TagDictionary;
+import model.TagIndex;
+import model.UserImageFileData;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for boolean queries on a TagIndex.
+ */
+public class TagIndexTest {
+
+    private UserImageFileData data;
+
+    private ImageFile beach;
+
+    private ImageFile forest;
+
+    private ImageFile lake;
+
+    private ImageFile addImage(String path, Tag... tags) {
+        ImageFile imageFile = new ImageFile(new File(path));
+        imageFile.setTags(Arrays.asList(tags));
+        data.addImageFileToMap(imageFile);
+        return imageFile;
+    }
+
+    @Before
+    public void setUp() {
+        data = new UserImageFileData();
+        Tag sun = TagDictionary.intern("sun");
+        Tag water = TagDictionary.intern("water");
+        Tag trees = TagDictionary.intern("trees");
+        beach = addImage("/photos/beach.jpg", sun, water);
+        forest = addImage("/photos/forest.jpg", sun, trees);
+        lake = addImage("/photos/lake.jpg", water, trees);
+    }
+
+    private ArrayList<ImageFile> query(String[] allOf, String[] anyOf, String[] noneOf) {
+        TagIndex tagIndex = data.getTagIndex();
+        return data.getImageFilesWithIds(tagIndex.query(Arrays.asList(allOf), Arrays.asList(anyOf),
+                Arrays.asList(noneOf)));
+    }
+
+    @Test
+    public void testAndOrNot() {
+        String[] none = {};
+        assertEquals(Collections.singletonList(beach), query(new String[]{"sun", "water"}, none, none));
+        assertEquals(Arrays.asList(forest, lake), query(none, new String[]{"trees", "missing"}, none));
+        assertEquals(Collections.singletonList(forest), query(new String[]{"sun"}, none, new String[]{"water"}));
+        assertEquals(Collections.singletonList(lake), query(none, none, new String[]{"sun"}));
+    }
+
+    @Test
+    public void testSetTagsReplacesTags() {
+        lake.setTags(Collections.<Tag>emptyList());
+        data.getTagIndex().setTags(lake.getId(), lake.getTagIds());
+        data.getTagIndex().removeTag(TagDictionary.intern("sun"));
+
+        String[] none = {};
+        assertEquals(Collections.singletonList(forest), query(new String[]{"trees"}, none, none));
+        assertTrue(data.getTagIndex().getImageIds(TagDictionary.intern("sun")).isEmpty());
+        assertEquals(3, data.getTagIndex().getAllImageIds().getCardinality());
+    }
+
+    @Test
+    public void testSetTagsReturnsChangedTags() {
+        Tag sun = TagDictionary.intern("sun");
+        Tag water = TagDictionary.intern("water");
+        Tag trees = TagDictionary.intern("trees");
+        beach.setTags(Arrays.asList(water, trees));
+
+        int[] changed = data.getTagIndex().setTags(beach.getId(), beach.getTagIds()).toArray();
+        int[] expected = {sun.getId(), trees.getId()};
+        Arrays.sort(expected);
+        assertArrayEquals(expected, changed);
+        assertArrayEquals(new int[]{forest.getId()}, data.getTagIndex().getImageIds(sun).toArray());
+        assertEquals(3, data.getTagIndex().getImageCount(trees));
+    }
+}
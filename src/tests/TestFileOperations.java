@@ -71,6 +71,15 @@ public class TestFileOperations {
         assert suffixedName.equals("newfile (3).txt");
     }
 
+    @Test
+    public void testGetFileSuffixWithoutExtension() throws IOException {
+        File folder = Files.createTempDirectory("suffix").toFile();
+        File file = new File(folder, "scan0001");
+        makeFiles(file);
+        String suffixedName = FileOperations.getSuffixedFileName(folder, "scan0001");
+        assert suffixedName.equals("scan0001 (1)");
+    }
+
 
     private void makeFiles(File ... files){
         for (File file : files){
@@ -0,0 +1,74 @@
+package tests;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import utils.ThumbnailCache;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for making and reading back cached thumbnails.
+ */
+public class ThumbnailCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File writeImage(String name, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height));
+            }
+        }
+        File file = folder.newFile(name);
+        assertTrue(ImageIO.write(image, "png", file));
+        return file;
+    }
+
+    private static BufferedImage read(InputStream thumbnail) throws IOException {
+        assertNotNull(thumbnail);
+        try (InputStream in = thumbnail) {
+            return ImageIO.read(in);
+        }
+    }
+
+    @Test
+    public void testThumbnailsAreScaledAndKeptBetweenSessions() throws IOException {
+        File cacheDirectory = folder.newFolder("cache");
+        File beach = writeImage("beach.png", 1200, 800);
+        File icon = writeImage("icon.png", 40, 30);
+        File notes = folder.newFile("notes.png");
+        Files.write(notes.toPath(), "not an image".getBytes());
+
+        ThumbnailCache cache = ThumbnailCache.load(cacheDirectory);
+        assertNull(cache.open(beach));
+        assertTrue(cache.create(beach));
+        assertTrue(cache.create(icon));
+        assertFalse(cache.create(notes));
+        BufferedImage thumbnail = read(cache.open(beach));
+        assertEquals(ThumbnailCache.SIZE, thumbnail.getWidth());
+        assertEquals(ThumbnailCache.SIZE * 2 / 3, thumbnail.getHeight());
+        cache.close();
+
+        cache = ThumbnailCache.load(cacheDirectory);
+        assertEquals(2, cache.size());
+        thumbnail = read(cache.open(icon));
+        // Small images are not scaled up
+        assertEquals(40, thumbnail.getWidth());
+        assertEquals(ThumbnailCache.SIZE, read(cache.open(beach)).getWidth());
+
+        // A changed file needs a new thumbnail
+        assertTrue(beach.setLastModified(beach.lastModified() + 2000));
+        assertNull(cache.open(beach));
+        cache.close();
+    }
+}
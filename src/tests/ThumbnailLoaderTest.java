@@ -0,0 +1,61 @@
+package tests;
+
+import org.junit.Test;
+import utils.ThumbnailLoader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for loading thumbnails in order of distance from the view.
+ */
+public class ThumbnailLoaderTest {
+
+    @Test
+    public void testNearestRequestsLoadFirstAndCancelledOnesNever() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> loaded = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(6);
+        ThumbnailLoader<String> loader = new ThumbnailLoader<>(1, file -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return file.getName();
+        }, Runnable::run);
+
+        // The only thread is kept busy with the first request while the rest wait
+        loader.load(new File("0"), 0, thumbnail -> {
+            loaded.add(thumbnail);
+            done.countDown();
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        ArrayList<ThumbnailLoader<String>.Request> requests = new ArrayList<>();
+        for (int index = 1; index < 10; index++) {
+            requests.add(loader.load(new File(Integer.toString(index)), index, thumbnail -> {
+                loaded.add(thumbnail);
+                done.countDown();
+            }));
+        }
+        loader.setFocus(7);
+        requests.get(7).cancel();
+        requests.get(0).cancel();
+        requests.get(1).cancel();
+        requests.get(2).cancel();
+        assertEquals(5, loader.getPendingCount());
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("0", "7", "6", "5", "9", "4"), loaded);
+    }
+}
@@ -0,0 +1,66 @@
+package tests;
+
+import org.junit.Before;
+import org.junit.Test;
+import utils.TrigramIndex;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that a TrigramIndex never leaves out a name that matches.
+ */
+public class TrigramIndexTest {
+
+    private static final String[] NAMES = {"@sun Beach.jpg", "forest.png", "@sun @trees Forest walk.jpg",
+            "lake.gif", "sunset.jpg", "IMG_0042.JPG"};
+
+    private TrigramIndex index;
+
+    @Before
+    public void setUp() {
+        index = new TrigramIndex();
+        for (String name : NAMES) {
+            index.add(name);
+        }
+    }
+
+    private static void assertContainsMatches(Collection<String> candidates, Pattern pattern) {
+        for (String name : NAMES) {
+            if (pattern.matcher(name.toLowerCase()).find()) {
+                assertTrue(name, candidates.contains(name));
+            }
+        }
+    }
+
+    @Test
+    public void testSubstringCandidates() {
+        assertEquals(new HashSet<>(Arrays.asList("forest.png", "@sun @trees Forest walk.jpg")),
+                new HashSet<>(index.candidates("FOREST")));
+        assertTrue(index.candidates("missing").isEmpty());
+        assertEquals(NAMES.length, index.candidates("jp").size());
+    }
+
+    @Test
+    public void testRegexCandidatesIncludeEveryMatch() {
+        String[] regexes = {"sun.*\\.jpg", "for?est", "img_\\d+\\.jpg", "(sun)set", "lake|forest", "\\Qwalk.\\E",
+                "[a-z]+\\.gif"};
+        for (String regex : regexes) {
+            assertContainsMatches(index.candidatesForRegex(regex), Pattern.compile(regex));
+        }
+        assertEquals(1, index.candidatesForRegex("img_\\d+\\.jpg").size());
+    }
+
+    @Test
+    public void testRemoveAndRename() {
+        index.remove("lake.gif");
+        index.add("lake shore.gif");
+        assertTrue(index.candidates("lake.gif").isEmpty());
+        assertEquals(Arrays.asList("lake shore.gif"), index.candidates("shore"));
+        assertEquals(NAMES.length, index.size());
+    }
+}
@@ -0,0 +1,129 @@
+package tests;
+
+import model.DirectoryIndex;
+import model.ImageFile;
+import model.LibraryFile;
+import model.TagDictionary;
+import model.UserImageFileData;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for looking up ImageFiles in UserImageFileData by path and id.
+ */
+public class UserImageFileDataTest {
+
+    @Test
+    public void testLookupsFollowRenameAndMove() {
+        UserImageFileData data = new UserImageFileData();
+        File original = new File("/photos/beach.jpg");
+        ImageFile imageFile = new ImageFile(original);
+        data.addImageFileToMap(imageFile);
+        int id = imageFile.getId();
+        assertTrue(id > 0);
+        assertTrue(data.existsInMap(original));
+
+        File renamed = new File("/photos/@sun beach.jpg");
+        imageFile.generalReName(renamed.getName());
+        imageFile.setFile(renamed);
+        data.resetImageFileKey(imageFile, "beach.jpg", original);
+        File moved = new File("/archive/@sun beach.jpg");
+        imageFile.setFile(moved);
+        data.resetImageFileKey(imageFile, "@sun beach.jpg", renamed);
+
+        assertFalse(data.existsInMap(original));
+        assertFalse(data.existsInMap(renamed));
+        assertTrue(data.existsInMap(moved));
+        assertSame(imageFile, data.getImageFileWithFile(moved));
+        assertSame(imageFile, data.getImageFileWithId(id));
+    }
+
+    @Test
+    public void testResetKeepsOtherImageWithOldName() {
+        UserImageFileData data = new UserImageFileData();
+        ImageFile first = new ImageFile(new File("/photos/beach.jpg"));
+        data.addImageFileToMap(first);
+        // An image of another data, such as one not in the session, with the same name
+        ImageFile other = new ImageFile(new File("/archive/beach.jpg"));
+        new UserImageFileData().addImageFileToMap(other);
+
+        File moved = new File("/archive/2017/beach.jpg");
+        other.setFile(moved);
+        data.resetImageFileKey(other, "beach.jpg", new File("/archive/beach.jpg"));
+
+        assertSame(first, data.getImageFileWithName("beach.jpg"));
+        assertSame(first, data.getImageFileWithFile(new File("/photos/beach.jpg")));
+        assertNull(data.getImageFileWithFile(moved));
+    }
+
+    @Test
+    public void testDirectoryIndexFollowsMove() {
+        UserImageFileData data = new UserImageFileData();
+        File original = new File("/photos/2017/beach.jpg");
+        ImageFile imageFile = new ImageFile(original);
+        data.addImageFileToMap(imageFile);
+        data.addImageFileToMap(new ImageFile(new File("/photos/forest.jpg")));
+        DirectoryIndex directoryIndex = data.getDirectoryIndex();
+        assertEquals(2, directoryIndex.getImageCount(new File("/photos")));
+        assertEquals(1, directoryIndex.getImageIds(new File("/photos"), false).getCardinality());
+
+        File moved = new File("/archive/beach.jpg");
+        imageFile.setFile(moved);
+        data.resetImageFileKey(imageFile, "beach.jpg", original);
+
+        assertEquals(1, directoryIndex.getImageCount(new File("/photos")));
+        assertEquals(0, directoryIndex.getImageCount(new File("/photos/2017")));
+        assertArrayEquals(new int[]{imageFile.getId()},
+                directoryIndex.getImageIds(new File("/archive"), true).toArray());
+    }
+
+    @Test
+    public void testRemovedImageLeavesEveryIndex() {
+        UserImageFileData data = new UserImageFileData();
+        File file = new File("/photos/beach.jpg");
+        ImageFile imageFile = new ImageFile(file);
+        imageFile.addTag(TagDictionary.intern("sun"));
+        data.addImageFileToMap(imageFile);
+        data.getTagIndex().setTags(imageFile.getId(), imageFile.getTagIds());
+
+        data.removeImageFile(imageFile);
+
+        assertFalse(data.existsInMap(file));
+        assertNull(data.getImageFileWithId(imageFile.getId()));
+        assertEquals(0, data.getDirectoryIndex().getImageCount(new File("/photos")));
+        assertEquals(0, data.getTagIndex().getImageCount(TagDictionary.intern("sun")));
+        assertTrue(data.getNameIndex().candidates("beach").isEmpty());
+    }
+
+    @Test
+    public void testSameNameInAnotherDirectoryIsNotFound() {
+        UserImageFileData data = new UserImageFileData();
+        data.addImageFileToMap(new ImageFile(new File("/photos/beach.jpg")));
+
+        File other = new File("/archive/beach.jpg");
+        assertFalse(data.existsInMap(other));
+        assertNull(data.getImageFileWithFile(other));
+    }
+
+    @Test
+    public void testIdsSurviveLibraryFile() throws IOException {
+        File libraryFile = File.createTempFile("library", ".ctags");
+        libraryFile.deleteOnExit();
+        UserImageFileData data = new UserImageFileData();
+        ImageFile first = new ImageFile(new File("/photos/beach.jpg"));
+        ImageFile second = new ImageFile(new File("/photos/forest.jpg"));
+        data.addImageFileToMap(first);
+        data.addImageFileToMap(second);
+        LibraryFile.write(data, libraryFile);
+
+        UserImageFileData readData = LibraryFile.read(libraryFile);
+        assertEquals("forest.jpg", readData.getImageFileWithId(second.getId()).getCurrentName());
+        ImageFile third = new ImageFile(new File("/photos/lake.jpg"));
+        readData.addImageFileToMap(third);
+        assertTrue(third.getId() > second.getId());
+    }
+}
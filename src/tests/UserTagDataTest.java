@@ -0,0 +1,58 @@
+package tests;
+
+import model.StateManager;
+import model.Tag;
+import model.TagDictionary;
+import model.UserImageFileData;
+import model.UserTagData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for finding tags by text in UserTagData.
+ */
+public class UserTagDataTest {
+
+    @Before
+    public void setUp() {
+        StateManager.userData = new UserImageFileData();
+        UserTagData.setTagList(new ArrayList<>(Arrays.asList(TagDictionary.intern("sunset"),
+                TagDictionary.intern("Midsummer"), TagDictionary.intern("sundown"), TagDictionary.intern("trees"))));
+    }
+
+    @After
+    public void tearDown() {
+        UserTagData.setTagList(new ArrayList<>());
+    }
+
+    @Test
+    public void testFindTagsContainingSkipsPrefixMatches() {
+        assertEquals(Collections.singletonList(TagDictionary.intern("Midsummer")),
+                UserTagData.findTagsContaining("SUM", 10));
+        assertEquals(Collections.<Tag>emptyList(), UserTagData.findTagsContaining("sun", 10));
+    }
+
+    @Test
+    public void testFindTagsContainingShortText() {
+        assertEquals(Collections.singletonList(TagDictionary.intern("trees")),
+                UserTagData.findTagsContaining("EE", 10));
+        assertEquals(Arrays.asList(TagDictionary.intern("sunset"), TagDictionary.intern("Midsummer"),
+                TagDictionary.intern("sundown")), UserTagData.findTagsContaining("u", 10));
+        assertEquals(Collections.singletonList(TagDictionary.intern("sunset")),
+                UserTagData.findTagsContaining("u", 1));
+        assertEquals(Collections.<Tag>emptyList(), UserTagData.findTagsContaining("tr", 10));
+    }
+
+    @Test
+    public void testRemovedTagIsNotFound() {
+        UserTagData.removeTag(TagDictionary.intern("Midsummer"));
+        assertTrue(UserTagData.findTagsContaining("summer", 10).isEmpty());
+    }
+}
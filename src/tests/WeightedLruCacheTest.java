@@ -0,0 +1,35 @@
+package tests;
+
+import org.junit.Test;
+import utils.WeightedLruCache;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for evicting the least recently used values by weight.
+ */
+public class WeightedLruCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsedByWeight() {
+        WeightedLruCache<String, String> cache = new WeightedLruCache<>(10, String::length);
+        cache.put("a", "aaaa");
+        cache.put("b", "bbb");
+        cache.put("c", "cc");
+        assertEquals(9, cache.getWeight());
+        // Using a makes b the least recently used
+        assertEquals("aaaa", cache.get("a"));
+        cache.put("d", "dd");
+        assertFalse(cache.contains("b"));
+        assertTrue(cache.contains("a"));
+        assertEquals(8, cache.getWeight());
+
+        cache.put("a", "a");
+        assertEquals(5, cache.getWeight());
+        // Too heavy to keep, and replacing drops the old value
+        cache.put("c", "ccccccccccc");
+        assertFalse(cache.contains("c"));
+        assertEquals(3, cache.getWeight());
+        assertEquals(2, cache.size());
+    }
+}
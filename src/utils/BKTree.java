@@ -0,0 +1,176 @@
+package utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A BK-tree of values keyed by 64 bit hashes, for finding the values whose hashes are within a Hamming distance of a
+ * given hash without comparing against every hash. Each child of a node is keyed by its distance from the node, so by
+ * the triangle inequality a search only descends into the children whose distance is within the search radius of the
+ * distance between the node and the searched hash.
+ *
+ * @param <T> the type of the values
+ */
+public class BKTree<T> {
+
+    /**
+     * A value found by a search, with the distance of its hash from the searched hash.
+     *
+     * @param <T> the type of the value
+     */
+    public static class Match<T> {
+        private final T value;
+
+        private final int distance;
+
+        Match(T value, int distance) {
+            this.value = value;
+            this.distance = distance;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+    }
+
+    private static class Node<T> {
+        final long hash;
+
+        /**
+         * The values with this hash. A node whose values were all removed stays in the tree to keep its children
+         * reachable.
+         */
+        final ArrayList<T> values = new ArrayList<>(1);
+
+        /**
+         * The children of this node, by the distance of their hash from this node's.
+         */
+        HashMap<Integer, Node<T>> children;
+
+        Node(long hash) {
+            this.hash = hash;
+        }
+    }
+
+    private Node<T> root;
+
+    private int size;
+
+    /**
+     * Get the Hamming distance between two hashes.
+     *
+     * @param first  a hash
+     * @param second another hash
+     * @return the number of bits that differ
+     */
+    public static int distance(long first, long second) {
+        return Long.bitCount(first ^ second);
+    }
+
+    /**
+     * Add a value under a hash.
+     *
+     * @param hash  the hash
+     * @param value the value
+     */
+    public void add(long hash, T value) {
+        size++;
+        if (root == null) {
+            root = new Node<>(hash);
+            root.values.add(value);
+            return;
+        }
+        Node<T> node = root;
+        while (true) {
+            int distance = distance(node.hash, hash);
+            if (distance == 0) {
+                node.values.add(value);
+                return;
+            }
+            if (node.children == null) {
+                node.children = new HashMap<>();
+            }
+            Node<T> child = node.children.get(distance);
+            if (child == null) {
+                child = new Node<>(hash);
+                child.values.add(value);
+                node.children.put(distance, child);
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Remove a value added under a hash.
+     *
+     * @param hash  the hash the value was added under
+     * @param value the value
+     * @return true if the value was in the tree
+     */
+    public boolean remove(long hash, T value) {
+        Node<T> node = root;
+        while (node != null) {
+            int distance = distance(node.hash, hash);
+            if (distance == 0) {
+                if (node.values.remove(value)) {
+                    size--;
+                    return true;
+                }
+                return false;
+            }
+            node = node.children == null ? null : node.children.get(distance);
+        }
+        return false;
+    }
+
+    /**
+     * Find the values whose hashes are within the given distance of a hash.
+     *
+     * @param hash        the hash to search around
+     * @param maxDistance the greatest distance to include
+     * @return the values found, nearest first
+     */
+    public ArrayList<Match<T>> search(long hash, int maxDistance) {
+        ArrayList<Match<T>> matches = new ArrayList<>();
+        if (root == null) {
+            return matches;
+        }
+        ArrayDeque<Node<T>> nodes = new ArrayDeque<>();
+        nodes.push(root);
+        while (!nodes.isEmpty()) {
+            Node<T> node = nodes.pop();
+            int distance = distance(node.hash, hash);
+            if (distance <= maxDistance) {
+                for (T value : node.values) {
+                    matches.add(new Match<>(value, distance));
+                }
+            }
+            if (node.children != null) {
+                for (int childDistance = Math.max(1, distance - maxDistance);
+                     childDistance <= distance + maxDistance; childDistance++) {
+                    Node<T> child = node.children.get(childDistance);
+                    if (child != null) {
+                        nodes.push(child);
+                    }
+                }
+            }
+        }
+        matches.sort((first, second) -> Integer.compare(first.distance, second.distance));
+        return matches;
+    }
+
+    /**
+     * Get the number of values in the tree.
+     *
+     * @return the number of values
+     */
+    public int size() {
+        return size;
+    }
+}
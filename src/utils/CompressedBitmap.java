@@ -0,0 +1,581 @@
+package utils;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed set of non-negative ints, used to hold sets of image ids.
+ * <p>
+ * The ints are split into chunks of 65536 by their high 16 bits. A chunk holding few ints stores them as a sorted
+ * array of their low 16 bits; a chunk holding more than {@value #ARRAY_MAX} stores a 65536-bit bitmap. AND, OR and
+ * AND NOT work a chunk at a time, so they take time proportional to the compressed size rather than to the number of
+ * ints.
+ */
+public final class CompressedBitmap {
+
+    /**
+     * The largest number of ints a chunk stores as an array. Above this a bitmap is smaller.
+     */
+    private static final int ARRAY_MAX = 4096;
+
+    /**
+     * The number of longs in the bitmap of a chunk.
+     */
+    private static final int BITMAP_LONGS = 1024;
+
+    /**
+     * The number of chunks.
+     */
+    private int size;
+
+    /**
+     * The high 16 bits of each chunk, in increasing order.
+     */
+    private char[] keys = new char[4];
+
+    /**
+     * The contents of each chunk: a char[] of sorted low bits, or a long[] bitmap.
+     */
+    private Object[] chunks = new Object[4];
+
+    /**
+     * The number of ints in each chunk.
+     */
+    private int[] cardinalities = new int[4];
+
+    /**
+     * Construct an empty bitmap.
+     */
+    public CompressedBitmap() {
+    }
+
+    /**
+     * Get a bitmap holding the given ints.
+     *
+     * @param values the ints
+     * @return a new bitmap
+     */
+    public static CompressedBitmap of(int... values) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Add an int to this bitmap.
+     *
+     * @param value the int to add
+     * @return true iff the int was not in the bitmap already
+     */
+    public boolean add(int value) {
+        char key = (char) (value >>> 16);
+        char low = (char) value;
+        int index = indexOfKey(key);
+        if (index < 0) {
+            index = -index - 1;
+            insertChunk(index, key, new char[4], 0);
+        }
+        Object chunk = chunks[index];
+        int cardinality = cardinalities[index];
+        if (chunk instanceof long[]) {
+            long[] bitmap = (long[]) chunk;
+            long mask = 1L << low;
+            if ((bitmap[low >>> 6] & mask) != 0) {
+                return false;
+            }
+            bitmap[low >>> 6] |= mask;
+        } else {
+            char[] array = (char[]) chunk;
+            int position = Arrays.binarySearch(array, 0, cardinality, low);
+            if (position >= 0) {
+                return false;
+            }
+            position = -position - 1;
+            if (cardinality == ARRAY_MAX) {
+                long[] bitmap = toBitmap(array, cardinality);
+                bitmap[low >>> 6] |= 1L << low;
+                chunks[index] = bitmap;
+            } else {
+                if (cardinality == array.length) {
+                    array = Arrays.copyOf(array, Math.min(ARRAY_MAX, array.length * 2));
+                    chunks[index] = array;
+                }
+                System.arraycopy(array, position, array, position + 1, cardinality - position);
+                array[position] = low;
+            }
+        }
+        cardinalities[index]++;
+        return true;
+    }
+
+    /**
+     * Remove an int from this bitmap.
+     *
+     * @param value the int to remove
+     * @return true iff the int was in the bitmap
+     */
+    public boolean remove(int value) {
+        int index = indexOfKey((char) (value >>> 16));
+        if (index < 0) {
+            return false;
+        }
+        char low = (char) value;
+        Object chunk = chunks[index];
+        int cardinality = cardinalities[index];
+        if (chunk instanceof long[]) {
+            long[] bitmap = (long[]) chunk;
+            long mask = 1L << low;
+            if ((bitmap[low >>> 6] & mask) == 0) {
+                return false;
+            }
+            bitmap[low >>> 6] &= ~mask;
+            if (cardinality - 1 <= ARRAY_MAX) {
+                chunks[index] = toArray(bitmap, cardinality - 1);
+            }
+        } else {
+            char[] array = (char[]) chunk;
+            int position = Arrays.binarySearch(array, 0, cardinality, low);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(array, position + 1, array, position, cardinality - position - 1);
+        }
+        if (--cardinalities[index] == 0) {
+            removeChunk(index);
+        }
+        return true;
+    }
+
+    /**
+     * Check if an int is in this bitmap.
+     *
+     * @param value the int to check
+     * @return true iff the int is in the bitmap
+     */
+    public boolean contains(int value) {
+        int index = indexOfKey((char) (value >>> 16));
+        if (index < 0) {
+            return false;
+        }
+        char low = (char) value;
+        Object chunk = chunks[index];
+        if (chunk instanceof long[]) {
+            return (((long[]) chunk)[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) chunk, 0, cardinalities[index], low) >= 0;
+    }
+
+    /**
+     * Get the number of ints in this bitmap.
+     *
+     * @return the number of ints
+     */
+    public int getCardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += cardinalities[i];
+        }
+        return cardinality;
+    }
+
+    /**
+     * Check if this bitmap is empty.
+     *
+     * @return true iff the bitmap holds no ints
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Call the given consumer with every int in this bitmap, in increasing order.
+     *
+     * @param consumer the consumer to call
+     */
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < size; i++) {
+            int high = keys[i] << 16;
+            Object chunk = chunks[i];
+            if (chunk instanceof long[]) {
+                long[] bitmap = (long[]) chunk;
+                for (int word = 0; word < BITMAP_LONGS; word++) {
+                    long bits = bitmap[word];
+                    while (bits != 0) {
+                        consumer.accept(high | (word << 6) | Long.numberOfTrailingZeros(bits));
+                        bits &= bits - 1;
+                    }
+                }
+            } else {
+                char[] array = (char[]) chunk;
+                for (int j = 0; j < cardinalities[i]; j++) {
+                    consumer.accept(high | array[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the ints in this bitmap.
+     *
+     * @return an array of the ints, in increasing order
+     */
+    public int[] toArray() {
+        int[] values = new int[getCardinality()];
+        int[] position = {0};
+        forEach(value -> values[position[0]++] = value);
+        return values;
+    }
+
+    /**
+     * Get a copy of this bitmap.
+     *
+     * @return a bitmap holding the same ints
+     */
+    public CompressedBitmap copy() {
+        CompressedBitmap copy = new CompressedBitmap();
+        copy.size = size;
+        copy.keys = Arrays.copyOf(keys, keys.length);
+        copy.cardinalities = Arrays.copyOf(cardinalities, cardinalities.length);
+        copy.chunks = new Object[chunks.length];
+        for (int i = 0; i < size; i++) {
+            copy.chunks[i] = chunks[i] instanceof long[] ? ((long[]) chunks[i]).clone() : ((char[]) chunks[i]).clone();
+        }
+        return copy;
+    }
+
+    /**
+     * Get the ints that are in both bitmaps.
+     *
+     * @param first  the first bitmap
+     * @param second the second bitmap
+     * @return a new bitmap
+     */
+    public static CompressedBitmap and(CompressedBitmap first, CompressedBitmap second) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < first.size && j < second.size) {
+            if (first.keys[i] < second.keys[j]) {
+                i++;
+            } else if (first.keys[i] > second.keys[j]) {
+                j++;
+            } else {
+                Object firstChunk = first.chunks[i];
+                Object secondChunk = second.chunks[j];
+                if (firstChunk instanceof long[] && secondChunk instanceof long[]) {
+                    long[] bitmap = new long[BITMAP_LONGS];
+                    long[] a = (long[]) firstChunk;
+                    long[] b = (long[]) secondChunk;
+                    for (int word = 0; word < BITMAP_LONGS; word++) {
+                        bitmap[word] = a[word] & b[word];
+                    }
+                    result.appendBitmap(first.keys[i], bitmap);
+                } else if (firstChunk instanceof long[]) {
+                    result.appendFiltered(first.keys[i], (char[]) secondChunk, second.cardinalities[j],
+                            (long[]) firstChunk, true);
+                } else if (secondChunk instanceof long[]) {
+                    result.appendFiltered(first.keys[i], (char[]) firstChunk, first.cardinalities[i],
+                            (long[]) secondChunk, true);
+                } else {
+                    result.appendArrayIntersection(first.keys[i], (char[]) firstChunk, first.cardinalities[i],
+                            (char[]) secondChunk, second.cardinalities[j]);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the ints that are in either bitmap.
+     *
+     * @param first  the first bitmap
+     * @param second the second bitmap
+     * @return a new bitmap
+     */
+    public static CompressedBitmap or(CompressedBitmap first, CompressedBitmap second) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < first.size || j < second.size) {
+            if (j == second.size || (i < first.size && first.keys[i] < second.keys[j])) {
+                result.appendCopy(first, i++);
+            } else if (i == first.size || first.keys[i] > second.keys[j]) {
+                result.appendCopy(second, j++);
+            } else {
+                Object firstChunk = first.chunks[i];
+                Object secondChunk = second.chunks[j];
+                int cardinality = first.cardinalities[i] + second.cardinalities[j];
+                if (firstChunk instanceof char[] && secondChunk instanceof char[] && cardinality <= ARRAY_MAX) {
+                    result.appendArrayUnion(first.keys[i], (char[]) firstChunk, first.cardinalities[i],
+                            (char[]) secondChunk, second.cardinalities[j]);
+                } else {
+                    long[] bitmap = first.bitmapOf(i);
+                    long[] b = second.bitmapOf(j);
+                    for (int word = 0; word < BITMAP_LONGS; word++) {
+                        bitmap[word] |= b[word];
+                    }
+                    result.appendBitmap(first.keys[i], bitmap);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the ints that are in the first bitmap but not in the second.
+     *
+     * @param first  the first bitmap
+     * @param second the second bitmap
+     * @return a new bitmap
+     */
+    public static CompressedBitmap andNot(CompressedBitmap first, CompressedBitmap second) {
+        CompressedBitmap result = new CompressedBitmap();
+        int j = 0;
+        for (int i = 0; i < first.size; i++) {
+            while (j < second.size && second.keys[j] < first.keys[i]) {
+                j++;
+            }
+            if (j == second.size || second.keys[j] != first.keys[i]) {
+                result.appendCopy(first, i);
+                continue;
+            }
+            Object firstChunk = first.chunks[i];
+            Object secondChunk = second.chunks[j];
+            if (firstChunk instanceof char[]) {
+                if (secondChunk instanceof long[]) {
+                    result.appendFiltered(first.keys[i], (char[]) firstChunk, first.cardinalities[i],
+                            (long[]) secondChunk, false);
+                } else {
+                    result.appendArrayDifference(first.keys[i], (char[]) firstChunk, first.cardinalities[i],
+                            (char[]) secondChunk, second.cardinalities[j]);
+                }
+            } else {
+                long[] bitmap = first.bitmapOf(i);
+                long[] b = second.bitmapOf(j);
+                for (int word = 0; word < BITMAP_LONGS; word++) {
+                    bitmap[word] &= ~b[word];
+                }
+                result.appendBitmap(first.keys[i], bitmap);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Write this bitmap: the number of chunks, then for each chunk its key, its cardinality and its contents.
+     *
+     * @param outputStream the stream to write to
+     * @throws IOException if the bitmap could not be written
+     */
+    public void write(DataOutputStream outputStream) throws IOException {
+        outputStream.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            outputStream.writeChar(keys[i]);
+            outputStream.writeInt(cardinalities[i]);
+            if (chunks[i] instanceof long[]) {
+                for (long word : (long[]) chunks[i]) {
+                    outputStream.writeLong(word);
+                }
+            } else {
+                char[] array = (char[]) chunks[i];
+                for (int j = 0; j < cardinalities[i]; j++) {
+                    outputStream.writeChar(array[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a bitmap written by {@link #write(DataOutputStream)}.
+     *
+     * @param buffer the buffer to read from
+     * @return the bitmap
+     */
+    public static CompressedBitmap read(ByteBuffer buffer) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        int size = buffer.getInt();
+        for (int i = 0; i < size; i++) {
+            char key = buffer.getChar();
+            int cardinality = buffer.getInt();
+            if (cardinality > ARRAY_MAX) {
+                long[] words = new long[BITMAP_LONGS];
+                buffer.asLongBuffer().get(words);
+                buffer.position(buffer.position() + BITMAP_LONGS * 8);
+                bitmap.insertChunk(bitmap.size, key, words, cardinality);
+            } else {
+                char[] array = new char[cardinality];
+                buffer.asCharBuffer().get(array);
+                buffer.position(buffer.position() + cardinality * 2);
+                bitmap.insertChunk(bitmap.size, key, array, cardinality);
+            }
+        }
+        return bitmap;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    private int indexOfKey(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insertChunk(int index, char key, Object chunk, int cardinality) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            chunks = Arrays.copyOf(chunks, size * 2);
+            cardinalities = Arrays.copyOf(cardinalities, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(chunks, index, chunks, index + 1, size - index);
+        System.arraycopy(cardinalities, index, cardinalities, index + 1, size - index);
+        keys[index] = key;
+        chunks[index] = chunk;
+        cardinalities[index] = cardinality;
+        size++;
+    }
+
+    private void removeChunk(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(chunks, index + 1, chunks, index, size - index - 1);
+        System.arraycopy(cardinalities, index + 1, cardinalities, index, size - index - 1);
+        size--;
+        chunks[size] = null;
+    }
+
+    /**
+     * Get the chunk at the given index as a bitmap the caller may change.
+     */
+    private long[] bitmapOf(int index) {
+        if (chunks[index] instanceof long[]) {
+            return ((long[]) chunks[index]).clone();
+        }
+        return toBitmap((char[]) chunks[index], cardinalities[index]);
+    }
+
+    private void appendCopy(CompressedBitmap source, int index) {
+        Object chunk = source.chunks[index];
+        insertChunk(size, source.keys[index], chunk instanceof long[] ? ((long[]) chunk).clone()
+                : Arrays.copyOf((char[]) chunk, source.cardinalities[index]), source.cardinalities[index]);
+    }
+
+    /**
+     * Append a chunk given as a bitmap, storing it as an array if it is small enough.
+     */
+    private void appendBitmap(char key, long[] bitmap) {
+        int cardinality = 0;
+        for (long word : bitmap) {
+            cardinality += Long.bitCount(word);
+        }
+        if (cardinality == 0) {
+            return;
+        }
+        insertChunk(size, key, cardinality <= ARRAY_MAX ? toArray(bitmap, cardinality) : bitmap, cardinality);
+    }
+
+    /**
+     * Append the values of an array chunk that are (or are not) set in a bitmap chunk.
+     */
+    private void appendFiltered(char key, char[] array, int arrayCardinality, long[] bitmap, boolean keepSet) {
+        char[] result = new char[arrayCardinality];
+        int cardinality = 0;
+        for (int i = 0; i < arrayCardinality; i++) {
+            char low = array[i];
+            boolean set = (bitmap[low >>> 6] & (1L << low)) != 0;
+            if (set == keepSet) {
+                result[cardinality++] = low;
+            }
+        }
+        if (cardinality > 0) {
+            insertChunk(size, key, result, cardinality);
+        }
+    }
+
+    private void appendArrayIntersection(char key, char[] a, int aCardinality, char[] b, int bCardinality) {
+        char[] result = new char[Math.min(aCardinality, bCardinality)];
+        int cardinality = 0;
+        int i = 0;
+        int j = 0;
+        while (i < aCardinality && j < bCardinality) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[cardinality++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        if (cardinality > 0) {
+            insertChunk(size, key, result, cardinality);
+        }
+    }
+
+    private void appendArrayUnion(char key, char[] a, int aCardinality, char[] b, int bCardinality) {
+        char[] result = new char[aCardinality + bCardinality];
+        int cardinality = 0;
+        int i = 0;
+        int j = 0;
+        while (i < aCardinality || j < bCardinality) {
+            if (j == bCardinality || (i < aCardinality && a[i] < b[j])) {
+                result[cardinality++] = a[i++];
+            } else if (i == aCardinality || a[i] > b[j]) {
+                result[cardinality++] = b[j++];
+            } else {
+                result[cardinality++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        insertChunk(size, key, result, cardinality);
+    }
+
+    private void appendArrayDifference(char key, char[] a, int aCardinality, char[] b, int bCardinality) {
+        char[] result = new char[aCardinality];
+        int cardinality = 0;
+        int j = 0;
+        for (int i = 0; i < aCardinality; i++) {
+            while (j < bCardinality && b[j] < a[i]) {
+                j++;
+            }
+            if (j == bCardinality || b[j] != a[i]) {
+                result[cardinality++] = a[i];
+            }
+        }
+        if (cardinality > 0) {
+            insertChunk(size, key, result, cardinality);
+        }
+    }
+
+    private static long[] toBitmap(char[] array, int cardinality) {
+        long[] bitmap = new long[BITMAP_LONGS];
+        for (int i = 0; i < cardinality; i++) {
+            bitmap[array[i] >>> 6] |= 1L << array[i];
+        }
+        return bitmap;
+    }
+
+    private static char[] toArray(long[] bitmap, int cardinality) {
+        char[] array = new char[Math.max(cardinality, 1)];
+        int position = 0;
+        for (int word = 0; word < BITMAP_LONGS; word++) {
+            long bits = bitmap[word];
+            while (bits != 0) {
+                array[position++] = (char) ((word << 6) | Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+        return array;
+    }
+}
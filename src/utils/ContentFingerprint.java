@@ -0,0 +1,133 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Fingerprints the contents of files with a fast non-cryptographic 64 bit hash, so that a file can be recognized
+ * after it was renamed or moved. The quick fingerprint only reads the head and tail of a file and mixes in its size,
+ * which finds the candidates for a file; the full fingerprint reads the whole file, and has to agree before a file is
+ * taken to be one of them.
+ * <p>
+ * A fingerprint is never 0, so 0 can stand for a file that was not fingerprinted.
+ */
+public class ContentFingerprint {
+
+    /**
+     * Whether scans fingerprint the files they find. Off unless turned on with the cheaptags.fingerprints system
+     * property, since it reads every file in the tree once.
+     */
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("cheaptags.fingerprints", "false"));
+
+    /**
+     * The number of bytes read from each end of a file for the quick fingerprint.
+     */
+    private static final int SAMPLE_SIZE = 64 * 1024;
+
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+
+    /**
+     * The pool files are fingerprinted in, shared by every batch.
+     */
+    private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Fingerprint the head, tail and size of a file.
+     *
+     * @param file the file
+     * @return the fingerprint
+     * @throws IOException if the file could not be read
+     */
+    public static long quick(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long hash = PRIME_2 ^ size * PRIME_1;
+            ByteBuffer buffer = ByteBuffer.allocate(SAMPLE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            hash = update(hash, channel, 0, buffer);
+            if (size > SAMPLE_SIZE) {
+                hash = update(hash, channel, Math.max(SAMPLE_SIZE, size - SAMPLE_SIZE), buffer);
+            }
+            return finish(hash);
+        }
+    }
+
+    /**
+     * Fingerprint the whole contents of a file.
+     *
+     * @param file the file
+     * @return the fingerprint
+     * @throws IOException if the file could not be read
+     */
+    public static long full(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long hash = PRIME_1 ^ size * PRIME_2;
+            ByteBuffer buffer = ByteBuffer.allocate(SAMPLE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (long position = 0; position < size; position += SAMPLE_SIZE) {
+                hash = update(hash, channel, position, buffer);
+            }
+            return finish(hash);
+        }
+    }
+
+    /**
+     * Take the quick and full fingerprints of several files in parallel.
+     *
+     * @param files the files
+     * @return the quick and full fingerprint of each file, both 0 for a file that could not be read
+     */
+    public static long[][] fingerprintAll(List<File> files) {
+        long[][] fingerprints = new long[files.size()][2];
+        POOL.submit(() -> IntStream.range(0, fingerprints.length).parallel().forEach(i -> {
+            try {
+                long quick = quick(files.get(i));
+                fingerprints[i][1] = full(files.get(i));
+                fingerprints[i][0] = quick;
+            } catch (IOException e) {
+                // The file went away or cannot be read; leave it without fingerprints
+            }
+        })).join();
+        return fingerprints;
+    }
+
+    /**
+     * Mix the bytes at the given position of a file into a hash.
+     */
+    private static long update(long hash, FileChannel channel, long position, ByteBuffer buffer)
+            throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        while (buffer.remaining() >= 8) {
+            hash = Long.rotateLeft(hash ^ buffer.getLong() * PRIME_2, 31) * PRIME_1;
+        }
+        while (buffer.hasRemaining()) {
+            hash = Long.rotateLeft(hash ^ (buffer.get() & 0xFF) * PRIME_1, 11) * PRIME_2;
+        }
+        return hash;
+    }
+
+    /**
+     * Spread the bits of a hash, and keep it from being 0.
+     */
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        return hash == 0 ? 1 : hash;
+    }
+}
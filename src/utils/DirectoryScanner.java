@@ -0,0 +1,389 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Scans a directory tree for files with given extensions. Each directory is listed by its own fork/join task, so the
+ * subdirectories of a large tree are listed in parallel, and the attributes of each entry are read only once. Given a
+ * {@link ScanCache}, a directory whose modification time has not changed is not listed at all.
+ * <p>
+ * Instead of by extension, files can be accepted by their contents, sniffed with the {@link ImageTypeDetector}. With a
+ * cache, a file is only sniffed again once its size or modification time changes. A cached directory listed with
+ * other extensions, or with sniffing switched the other way, is listed again.
+ */
+public class DirectoryScanner {
+
+    /**
+     * The pool the scanning tasks run in, shared by every scan.
+     */
+    private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * The extensions to accept, including the dot, or null to accept every file.
+     */
+    private final Collection<String> acceptedExtensions;
+
+    /**
+     * Whether hidden files are marked by a DOS attribute rather than only by a leading dot.
+     */
+    private boolean dosAttributes;
+
+    /**
+     * Whether files are accepted by their contents instead of their extension.
+     */
+    private boolean sniffContent;
+
+    /**
+     * The filter this scanner accepts files with, as recorded in the cache.
+     */
+    private int filter;
+
+    /**
+     * The cache of earlier scans, or null to list every directory.
+     */
+    private final ScanCache cache;
+
+    /**
+     * Receives the files of each directory as it is listed, or null to collect every file before returning them.
+     */
+    private Consumer<List<File>> sink;
+
+    private volatile boolean cancelled;
+
+    private final LongAdder filesSeen = new LongAdder();
+
+    private final LongAdder directoriesSeen = new LongAdder();
+
+    private final LongAdder directoriesSkipped = new LongAdder();
+
+    private long elapsedNanos;
+
+    /**
+     * Constructs a new scanner.
+     *
+     * @param acceptedExtensions the extensions to accept, including the dot, or null to accept every file
+     */
+    public DirectoryScanner(Collection<String> acceptedExtensions) {
+        this(acceptedExtensions, null);
+    }
+
+    /**
+     * Constructs a new scanner that skips listing the directories unchanged since they were put in the given cache,
+     * and puts the directories it lists in it.
+     *
+     * @param acceptedExtensions the extensions to accept, including the dot, or null to accept every file
+     * @param cache              the cache of earlier scans
+     */
+    public DirectoryScanner(Collection<String> acceptedExtensions, ScanCache cache) {
+        this.acceptedExtensions = acceptedExtensions;
+        this.cache = cache;
+    }
+
+    /**
+     * Find the files in the given directory and every directory below it that are not hidden and have an accepted
+     * extension.
+     *
+     * @param directory the directory to scan
+     * @return the files found, each directory's files in the order the directory listed them
+     * @throws IllegalArgumentException if the given file is not a directory
+     */
+    public ArrayList<File> scan(File directory) throws IllegalArgumentException {
+        if (!directory.isDirectory()) {
+            throw new IllegalArgumentException("File passed in is not a directory.");
+        }
+        Path root = directory.toPath();
+        dosAttributes = root.getFileSystem().supportedFileAttributeViews().contains("dos");
+        filter = getFilter();
+        long start = System.nanoTime();
+        ArrayList<File> files = POOL.invoke(new ScanTask(root));
+        elapsedNanos = System.nanoTime() - start;
+        return files;
+    }
+
+    /**
+     * Find the same files as {@link #scan(File)}, but pass the files of each directory to the given sink as soon as
+     * the directory is listed. The sink is called from several threads at once, and may block to slow the scan
+     * down.
+     *
+     * @param directory the directory to scan
+     * @param sink      receives the files found in each directory, in the order the directory listed them
+     * @throws IllegalArgumentException if the given file is not a directory
+     */
+    public void scan(File directory, Consumer<List<File>> sink) throws IllegalArgumentException {
+        this.sink = sink;
+        scan(directory);
+    }
+
+    /**
+     * Set whether files are accepted by the magic bytes at their start instead of their extension, so images with
+     * a missing or wrong extension are found and other files with an image extension are not. Must be set before
+     * scanning.
+     *
+     * @param sniffContent true to accept files by their contents
+     */
+    public void setSniffContent(boolean sniffContent) {
+        this.sniffContent = sniffContent;
+    }
+
+    /**
+     * Stop the scan. Directories not listed yet are skipped, and nothing more is passed to the sink.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Check if the scan was stopped with {@link #cancel()}.
+     *
+     * @return true if the scan was stopped
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Get the cache of earlier scans this scanner uses.
+     *
+     * @return the cache, or null if it lists every directory
+     */
+    ScanCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Get the number of files, of any extension, seen by the last scan.
+     *
+     * @return the number of files
+     */
+    public long getFilesSeen() {
+        return filesSeen.sum();
+    }
+
+    /**
+     * Get the number of directories listed by the last scan.
+     *
+     * @return the number of directories
+     */
+    public long getDirectoriesSeen() {
+        return directoriesSeen.sum();
+    }
+
+    /**
+     * Get the number of directories the last scan did not list because they were unchanged in the cache.
+     *
+     * @return the number of directories
+     */
+    public long getDirectoriesSkipped() {
+        return directoriesSkipped.sum();
+    }
+
+    /**
+     * Get how long the last scan took.
+     *
+     * @return the time in milliseconds
+     */
+    public long getElapsedMillis() {
+        return elapsedNanos / 1000000;
+    }
+
+    /**
+     * Get the number of files seen per second by the last scan.
+     *
+     * @return the files per second
+     */
+    public double getFilesPerSecond() {
+        return elapsedNanos == 0 ? 0 : getFilesSeen() * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Get a number identifying which files this scanner accepts: -1 when sniffing contents, and otherwise a hash of
+     * the accepted extensions.
+     */
+    private int getFilter() {
+        if (sniffContent) {
+            return -1;
+        }
+        return acceptedExtensions == null ? 0 : new HashSet<>(acceptedExtensions).hashCode();
+    }
+
+    /**
+     * Check if the file with the given name and attributes is not hidden and, unless contents are sniffed, has an
+     * accepted extension.
+     */
+    private boolean isCandidate(String fileName, BasicFileAttributes attributes) {
+        if (!attributes.isRegularFile() || fileName.startsWith(".")
+                || (attributes instanceof DosFileAttributes && ((DosFileAttributes) attributes).isHidden())) {
+            return false;
+        }
+        if (sniffContent) {
+            return true;
+        }
+        int dot = fileName.lastIndexOf('.');
+        return dot >= 0 && (acceptedExtensions == null || acceptedExtensions.contains(fileName.substring(dot)));
+    }
+
+    /**
+     * Sniff the type of a file, taking the verdict from the previous listing of its directory if the file is
+     * unchanged since.
+     */
+    private byte sniff(Path file, ScanCache.FileEntry previousFile, BasicFileAttributes attributes) {
+        if (previousFile != null && previousFile.imageType != ImageTypeDetector.UNKNOWN
+                && previousFile.matches(attributes.size(), attributes.lastModifiedTime().toMillis())) {
+            return previousFile.imageType;
+        }
+        return ImageTypeDetector.detect(file);
+    }
+
+    /**
+     * Lists one directory, forking a task for each of its subdirectories.
+     */
+    private class ScanTask extends RecursiveTask<ArrayList<File>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+
+        ScanTask(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected ArrayList<File> compute() {
+            if (cancelled) {
+                return new ArrayList<>();
+            }
+            directoriesSeen.increment();
+            // Files and subdirectory tasks, in the order the directory lists them
+            ArrayList<Object> entries = new ArrayList<>();
+            String path = directory.toString();
+            long modified = 0;
+            if (cache != null) {
+                try {
+                    modified = Files.getLastModifiedTime(directory).toMillis();
+                } catch (IOException e) {
+                    // The directory went away
+                    return new ArrayList<>();
+                }
+                ScanCache.DirectoryEntry cached = cache.get(path);
+                if (cached != null && cached.modified == modified && cached.filter == filter) {
+                    directoriesSkipped.increment();
+                    for (String subdirectory : cached.subdirectories) {
+                        ScanTask task = new ScanTask(directory.resolve(subdirectory));
+                        task.fork();
+                        entries.add(task);
+                    }
+                    for (ScanCache.FileEntry file : cached.files.values()) {
+                        if (file.isAccepted()) {
+                            entries.add(directory.resolve(file.name).toFile());
+                        }
+                    }
+                    return join(entries);
+                }
+            }
+            ScanCache.DirectoryEntry listed = cache == null ? null : new ScanCache.DirectoryEntry(modified, filter);
+            ScanCache.DirectoryEntry previous = cache == null ? null : cache.get(path);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path entry : stream) {
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = dosAttributes ? Files.readAttributes(entry, DosFileAttributes.class)
+                                : Files.readAttributes(entry, BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        // The entry went away or cannot be read
+                        continue;
+                    }
+                    String fileName = entry.getFileName().toString();
+                    if (attributes.isDirectory()) {
+                        ScanTask task = new ScanTask(entry);
+                        task.fork();
+                        entries.add(task);
+                        if (listed != null) {
+                            listed.subdirectories.add(fileName);
+                        }
+                    } else {
+                        filesSeen.increment();
+                        if (isCandidate(fileName, attributes)) {
+                            ScanCache.FileEntry previousFile = previous == null ? null : previous.files.get(fileName);
+                            byte imageType = sniffContent ? sniff(entry, previousFile, attributes)
+                                    : ImageTypeDetector.UNKNOWN;
+                            if (imageType != ImageTypeDetector.NOT_IMAGE) {
+                                entries.add(entry.toFile());
+                            }
+                            if (listed != null) {
+                                remember(listed, previousFile, fileName, attributes, imageType);
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // The directory cannot be listed; skip it as File.listFiles did
+                listed = null;
+            }
+            if (listed != null) {
+                cache.put(path, listed);
+            }
+            return join(entries);
+        }
+
+        /**
+         * Put the fingerprint and type of a listed file in the new entry of its directory, keeping the image id and
+         * content fingerprints of the file if it is unchanged from its previous entry.
+         */
+        private void remember(ScanCache.DirectoryEntry listed, ScanCache.FileEntry previousFile, String fileName,
+                              BasicFileAttributes attributes, byte imageType) {
+            long size = attributes.size();
+            long modified = attributes.lastModifiedTime().toMillis();
+            ScanCache.FileEntry file = previousFile != null && previousFile.matches(size, modified)
+                    ? new ScanCache.FileEntry(fileName, size, modified, previousFile.imageId,
+                    previousFile.contentFingerprint, previousFile.fullContentFingerprint, imageType)
+                    : new ScanCache.FileEntry(fileName, size, modified, 0, 0, 0, imageType);
+            listed.files.put(fileName, file);
+        }
+
+        /**
+         * Collect the files of a directory and of the tasks of its subdirectories, in order. With a sink, the files
+         * of the directory are passed to it instead, and nothing is collected.
+         */
+        private ArrayList<File> join(ArrayList<Object> entries) {
+            ArrayList<File> files = new ArrayList<>();
+            if (sink != null) {
+                for (Object entry : entries) {
+                    if (entry instanceof File) {
+                        files.add((File) entry);
+                    }
+                }
+                if (!files.isEmpty() && !cancelled) {
+                    sink.accept(files);
+                }
+                for (Object entry : entries) {
+                    if (entry instanceof ScanTask) {
+                        ((ScanTask) entry).join();
+                    }
+                }
+                return new ArrayList<>();
+            }
+            for (Object entry : entries) {
+                if (entry instanceof ScanTask) {
+                    files.addAll(((ScanTask) entry).join());
+                } else {
+                    files.add((File) entry);
+                }
+            }
+            return files;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches a directory tree for files being created and deleted, and passes each change to a listener. A rename shows
+ * up as the old file being deleted and the new one created. Each change costs one read of the attributes of the
+ * changed file, except a new directory, whose tree is walked once.
+ */
+public class DirectoryWatcher {
+
+    /**
+     * Receives the changes in a watched tree.
+     */
+    public interface Listener {
+        /**
+         * A file was created, or was moved or renamed into the tree.
+         *
+         * @param file       the file
+         * @param attributes the attributes of the file
+         */
+        void fileCreated(File file, BasicFileAttributes attributes);
+
+        /**
+         * A file or directory was deleted, or was moved or renamed out of the tree.
+         *
+         * @param file the file or directory
+         */
+        void fileDeleted(File file);
+
+        /**
+         * Too many changes happened at once and some were lost, so the tree has to be scanned again.
+         */
+        void overflowed();
+    }
+
+    private final File root;
+
+    /**
+     * Runs the listener calls, such as on the JavaFX application thread.
+     */
+    private final Executor listenerExecutor;
+
+    private final Listener listener;
+
+    private WatchService watchService;
+
+    /**
+     * The directory each watch key is for.
+     */
+    private final HashMap<WatchKey, Path> directories = new HashMap<>();
+
+    private Thread thread;
+
+    /**
+     * Constructs a new watcher. It does not watch anything until {@link #start()} is called.
+     *
+     * @param root             the root of the tree to watch
+     * @param listenerExecutor runs the listener calls
+     * @param listener         receives the changes
+     */
+    public DirectoryWatcher(File root, Executor listenerExecutor, Listener listener) {
+        this.root = root;
+        this.listenerExecutor = listenerExecutor;
+        this.listener = listener;
+    }
+
+    /**
+     * Start watching the tree on a background thread.
+     *
+     * @throws IOException if the tree could not be watched
+     */
+    public void start() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        register(root.toPath(), false);
+        thread = new Thread(this::run, "directory-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop watching the tree. No more changes are passed to the listener.
+     */
+    public void close() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                Path directory = directories.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        listenerExecutor.execute(listener::overflowed);
+                    } else if (directory != null) {
+                        Path path = directory.resolve((Path) event.context());
+                        if (event.kind() == ENTRY_CREATE) {
+                            created(path);
+                        } else if (event.kind() == ENTRY_DELETE) {
+                            File file = path.toFile();
+                            listenerExecutor.execute(() -> listener.fileDeleted(file));
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    directories.remove(key);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    /**
+     * Handle a created path, which may be a whole directory tree moved in.
+     */
+    private void created(Path path) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            // Already gone again
+            return;
+        }
+        if (attributes.isDirectory()) {
+            try {
+                register(path, true);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else {
+            File file = path.toFile();
+            listenerExecutor.execute(() -> listener.fileCreated(file, attributes));
+        }
+    }
+
+    /**
+     * Watch a directory and every directory below it.
+     *
+     * @param start       the directory
+     * @param reportFiles whether to pass the files found to the listener as created
+     */
+    private void register(Path start, boolean reportFiles) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes)
+                    throws IOException {
+                directories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE), directory);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) {
+                if (reportFiles) {
+                    File file = path.toFile();
+                    listenerExecutor.execute(() -> listener.fileCreated(file, attributes));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path path, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,162 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the thumbnail that cameras embed in the EXIF data of a JPEG file. The EXIF data is in an APP1 segment at the
+ * start of the file, so only the head of the file is read, and the thumbnail is taken as it is, without decoding the
+ * image.
+ */
+public class ExifThumbnail {
+
+    /**
+     * The most bytes read from the head of a file: an APP1 segment is at most 64 KB, after at most an APP0 segment of
+     * the same size.
+     */
+    private static final int HEAD_SIZE = 2 * 65536 + 4;
+
+    private static final int SOI = 0xD8;
+
+    private static final int SOS = 0xDA;
+
+    private static final int APP1 = 0xE1;
+
+    private static final int THUMBNAIL_OFFSET_TAG = 0x0201;
+
+    private static final int THUMBNAIL_LENGTH_TAG = 0x0202;
+
+    /**
+     * Read the embedded thumbnail of a JPEG file, if it is at least the given size.
+     *
+     * @param file    the file
+     * @param minSize the least width or height of the thumbnail to take
+     * @return the thumbnail, encoded as a JPEG, or null if the file has none as large as the given size
+     * @throws IOException if the file could not be read
+     */
+    public static byte[] read(File file, int minSize) throws IOException {
+        ByteBuffer head;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            head = ByteBuffer.allocate((int) Math.min(HEAD_SIZE, channel.size()));
+            while (head.hasRemaining() && channel.read(head) > 0) {
+                // Keep reading; a short read does not mean the end of the file
+            }
+        }
+        head.flip();
+        byte[] thumbnail = find(head);
+        if (thumbnail == null) {
+            return null;
+        }
+        int[] size = jpegSize(ByteBuffer.wrap(thumbnail));
+        return size != null && Math.max(size[0], size[1]) >= minSize ? thumbnail : null;
+    }
+
+    /**
+     * Find the thumbnail in the APP1 segment of the head of a JPEG file.
+     *
+     * @return the thumbnail, or null if the head has none
+     */
+    private static byte[] find(ByteBuffer head) {
+        head.order(ByteOrder.BIG_ENDIAN);
+        if (head.remaining() < 4 || (head.get(0) & 0xFF) != 0xFF || (head.get(1) & 0xFF) != SOI) {
+            return null;
+        }
+        int position = 2;
+        while (position + 4 <= head.limit() && (head.get(position) & 0xFF) == 0xFF) {
+            int marker = head.get(position + 1) & 0xFF;
+            int length = head.getShort(position + 2) & 0xFFFF;
+            if (marker == SOS || length < 2) {
+                return null;
+            }
+            int start = position + 4;
+            int end = position + 2 + length;
+            if (end > head.limit()) {
+                return null;
+            }
+            if (marker == APP1 && length >= 8 && head.get(start) == 'E' && head.get(start + 1) == 'x'
+                    && head.get(start + 2) == 'i' && head.get(start + 3) == 'f') {
+                // The TIFF structure starts after "Exif" and two zero bytes
+                ByteBuffer tiff = head.duplicate();
+                tiff.position(start + 6).limit(end);
+                return findInTiff(tiff.slice());
+            }
+            position = end;
+        }
+        return null;
+    }
+
+    /**
+     * Find the thumbnail through the second image file directory of the TIFF structure of EXIF data.
+     */
+    private static byte[] findInTiff(ByteBuffer tiff) {
+        try {
+            if (tiff.get(0) == 'I' && tiff.get(1) == 'I') {
+                tiff.order(ByteOrder.LITTLE_ENDIAN);
+            } else if (tiff.get(0) != 'M' || tiff.get(1) != 'M') {
+                return null;
+            }
+            int firstDirectory = tiff.getInt(4);
+            int secondDirectory = tiff.getInt(firstDirectory + 2 + 12 * (tiff.getShort(firstDirectory) & 0xFFFF));
+            if (secondDirectory <= 0) {
+                return null;
+            }
+            int entries = tiff.getShort(secondDirectory) & 0xFFFF;
+            int offset = -1;
+            int length = -1;
+            for (int i = 0; i < entries; i++) {
+                int entry = secondDirectory + 2 + 12 * i;
+                int tag = tiff.getShort(entry) & 0xFFFF;
+                if (tag == THUMBNAIL_OFFSET_TAG) {
+                    offset = tiff.getInt(entry + 8);
+                } else if (tag == THUMBNAIL_LENGTH_TAG) {
+                    length = tiff.getInt(entry + 8);
+                }
+            }
+            // In long arithmetic, so a damaged offset and length cannot overflow past the check
+            if (offset <= 0 || length <= 0 || (long) offset + length > tiff.limit()) {
+                return null;
+            }
+            byte[] thumbnail = new byte[length];
+            tiff.position(offset);
+            tiff.get(thumbnail);
+            return thumbnail;
+        } catch (IndexOutOfBoundsException e) {
+            // Damaged EXIF data pointing past the segment
+            return null;
+        }
+    }
+
+    /**
+     * Get the width and height of a JPEG image from its start of frame segment.
+     *
+     * @param jpeg the encoded image
+     * @return the width and height, or null if they could not be found
+     */
+    static int[] jpegSize(ByteBuffer jpeg) {
+        jpeg.order(ByteOrder.BIG_ENDIAN);
+        if (jpeg.remaining() < 4 || (jpeg.get(0) & 0xFF) != 0xFF || (jpeg.get(1) & 0xFF) != SOI) {
+            return null;
+        }
+        int position = 2;
+        while (position + 4 <= jpeg.limit() && (jpeg.get(position) & 0xFF) == 0xFF) {
+            int marker = jpeg.get(position + 1) & 0xFF;
+            int length = jpeg.getShort(position + 2) & 0xFFFF;
+            // Start of frame markers, other than the DHT, JPG and DAC markers in their range
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                if (position + 9 > jpeg.limit()) {
+                    return null;
+                }
+                return new int[]{jpeg.getShort(position + 7) & 0xFFFF, jpeg.getShort(position + 5) & 0xFFFF};
+            }
+            if (marker == SOS || length < 2) {
+                return null;
+            }
+            position += 2 + length;
+        }
+        return null;
+    }
+}
@@ -1,13 +1,9 @@
 package utils;
 
-import com.sun.istack.internal.Nullable;
-
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayDeque;
-import java.util.Collection;
 
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static utils.FileOperations.FileOperationsResponse.*;
@@ -60,6 +56,10 @@ public final class FileOperations{
      */
     public static String getSuffixedFileName(File parentDirectory, String existingFileName) {
         String fileExtension = getFileExtension(new File(parentDirectory, existingFileName), true);
+        if (fileExtension == null) {
+            // A file taken to be an image by its contents may have no extension
+            fileExtension = "";
+        }
         String nameWithoutExt = existingFileName.substring(0, existingFileName.length() - fileExtension.length());
 
         int suffix = 1;
@@ -119,36 +119,4 @@ public final class FileOperations{
         }
         return FAILURE;
     }
-
-    /**
-     * Fetch files from a given directory
-     *
-     * @param directory          the directory to fetch from
-     * @param acceptedExtensions a collection of extensions to filter the files with
-     * @return an arraylist of the fetched files (as File objects)
-     */
-    public static ArrayDeque<File> fetchFromDirectory(File directory, @Nullable Collection acceptedExtensions)
-            throws IllegalArgumentException {
-        if (!directory.isDirectory()) {
-            throw new IllegalArgumentException("File passed in is not a directory.");
-        }
-        File[] filesInDirectory = directory.listFiles();
-        ArrayDeque<File> validFiles = new ArrayDeque<>();
-
-        if (filesInDirectory != null) {
-            for (File file : filesInDirectory) {
-                if (file.isDirectory()) {
-                    validFiles.addAll(fetchFromDirectory(file, acceptedExtensions));
-                } else {
-                    String fileExtension = FileOperations.getFileExtension(file, true);
-                    if ((fileExtension != null) &&
-                            (acceptedExtensions == null || acceptedExtensions.contains(fileExtension))) {
-                        validFiles.add(file);
-                    }
-                }
-            }
-
-        }
-        return validFiles;
-    }
 }
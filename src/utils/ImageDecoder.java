@@ -0,0 +1,94 @@
+package utils;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Decodes images at a reduced resolution with ImageIO, so a rendition the size of a tile or of the screen is made
+ * without the full-resolution raster ever being in memory. Only every few pixels are decoded, and TIFF and BMP files,
+ * whose readers can seek to any row, are decoded a band of rows at a time.
+ */
+public class ImageDecoder {
+
+    /**
+     * The most source pixels decoded at a time from a TIFF or BMP file.
+     */
+    private static final long BAND_PIXELS = 4L * 1024 * 1024;
+
+    /**
+     * Decode an image at the lowest resolution that is still at least the given size, or at its own resolution if it
+     * is smaller.
+     *
+     * @param file   the image file
+     * @param width  the least width wanted
+     * @param height the least height wanted
+     * @return the image
+     * @throws IOException if the file could not be read or is not an image ImageIO can decode
+     */
+    public static BufferedImage decode(File file, int width, int height) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("No image reader for " + file.getName());
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int sourceWidth = reader.getWidth(0);
+                int sourceHeight = reader.getHeight(0);
+                int subsampling = Math.max(1, Math.min(sourceWidth / Math.max(1, width),
+                        sourceHeight / Math.max(1, height)));
+                String format = reader.getFormatName().toLowerCase();
+                boolean seekable = format.startsWith("tif") || format.equals("bmp");
+                if (seekable && (long) sourceWidth * sourceHeight > BAND_PIXELS) {
+                    return decodeInBands(reader, sourceWidth, sourceHeight, subsampling);
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Decode an image a band of rows at a time, drawing each subsampled band into the image returned.
+     */
+    private static BufferedImage decodeInBands(ImageReader reader, int sourceWidth, int sourceHeight,
+                                               int subsampling) throws IOException {
+        // Whole multiples of the subsampling, so every band starts on a row that is kept
+        int bandHeight = (int) Math.max(subsampling, BAND_PIXELS / sourceWidth / subsampling * subsampling);
+        BufferedImage image = null;
+        Graphics2D graphics = null;
+        try {
+            for (int top = 0; top < sourceHeight; top += bandHeight) {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(new Rectangle(0, top, sourceWidth, Math.min(bandHeight, sourceHeight - top)));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage band = reader.read(0, param);
+                if (image == null) {
+                    image = new BufferedImage((sourceWidth + subsampling - 1) / subsampling,
+                            (sourceHeight + subsampling - 1) / subsampling,
+                            band.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB
+                                    : BufferedImage.TYPE_INT_RGB);
+                    graphics = image.createGraphics();
+                }
+                graphics.drawImage(band, 0, top / subsampling, null);
+            }
+        } finally {
+            if (graphics != null) {
+                graphics.dispose();
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,232 @@
+package utils;
+
+import model.ImageFile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fetches the images in a directory tree in the background. A scan thread lists the tree and puts the files it finds
+ * on a bounded queue in batches; the batches are taken off the queue on the listener's thread, where the images are
+ * added to the session and passed on to the listener. When the queue is full the scan waits, so a huge tree never
+ * holds more than a few batches in memory ahead of the screen showing them.
+ * <p>
+ * If turned on, the scanning threads also fingerprint the contents of the files not fingerprinted before, a batch at a
+ * time in parallel, so a file renamed or moved outside the program can be matched to its image.
+ */
+public class ImageDiscovery {
+
+    /**
+     * Receives the images as they are found.
+     */
+    public interface Listener {
+        /**
+         * Images were found and added to the session.
+         *
+         * @param imageFiles the ImageFiles found
+         */
+        void imagesFound(List<ImageFile> imageFiles);
+
+        /**
+         * The discovery ended.
+         *
+         * @param cancelled whether it ended because it was cancelled
+         */
+        void finished(boolean cancelled);
+    }
+
+    /**
+     * The most files in a batch.
+     */
+    private static final int BATCH_SIZE = 50;
+
+    /**
+     * The most batches waiting on the queue.
+     */
+    private static final int QUEUE_CAPACITY = 32;
+
+    /**
+     * The most batches added to the session at a time, so the listener's thread stays responsive.
+     */
+    private static final int BATCHES_PER_DRAIN = 4;
+
+    private final File directory;
+
+    private final DirectoryScanner scanner;
+
+    /**
+     * Runs the draining of the queue, such as on the JavaFX application thread.
+     */
+    private final Executor listenerExecutor;
+
+    private final ArrayBlockingQueue<List<File>> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    /**
+     * Whether a drain is waiting to run, so at most one is scheduled at a time.
+     */
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    private volatile boolean scanDone;
+
+    private volatile boolean finished;
+
+    private Listener listener;
+
+    private boolean fingerprintContent;
+
+    /**
+     * Constructs a new discovery. Nothing is scanned until {@link #start()} is called.
+     *
+     * @param directory        the directory to fetch from
+     * @param scanner          the scanner to list the directory with
+     * @param listenerExecutor runs the draining of the queue and the listener calls
+     */
+    public ImageDiscovery(File directory, DirectoryScanner scanner, Executor listenerExecutor) {
+        this.directory = directory;
+        this.scanner = scanner;
+        this.listenerExecutor = listenerExecutor;
+    }
+
+    /**
+     * Set the listener to pass the images found to from now on. Images found before are already in the session.
+     *
+     * @param listener the listener, or null for none
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Set whether the files found are fingerprinted by their contents. Must be called before {@link #start()}.
+     *
+     * @param fingerprintContent true to fingerprint the files
+     */
+    public void setFingerprintContent(boolean fingerprintContent) {
+        this.fingerprintContent = fingerprintContent;
+    }
+
+    /**
+     * Start scanning on a background thread.
+     */
+    public void start() {
+        Thread thread = new Thread(() -> {
+            try {
+                scanner.scan(directory, this::publish);
+            } catch (IllegalArgumentException e) {
+                // Nothing is found in a directory that does not exist
+                e.printStackTrace();
+            }
+            scanDone = true;
+            scheduleDrain();
+        }, "image-discovery");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the discovery. The images already added to the session stay there. Must be called on the listener's
+     * thread.
+     */
+    public void cancel() {
+        scanner.cancel();
+        queue.clear();
+        finish(true);
+    }
+
+    /**
+     * Check if the discovery ended.
+     *
+     * @return true if every image was found or the discovery was cancelled
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Put the files of a listed directory on the queue, waiting while it is full. Called by the scanning threads.
+     */
+    private void publish(List<File> files) {
+        for (int start = 0; start < files.size(); start += BATCH_SIZE) {
+            List<File> batch = new ArrayList<>(files.subList(start, Math.min(files.size(), start + BATCH_SIZE)));
+            if (fingerprintContent && scanner.getCache() != null) {
+                fingerprint(batch, scanner.getCache());
+            }
+            try {
+                while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                    if (scanner.isCancelled()) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * Fingerprint the files of a batch that the scan cache has no content fingerprint for.
+     */
+    private void fingerprint(List<File> batch, ScanCache cache) {
+        ArrayList<File> files = new ArrayList<>();
+        ArrayList<ScanCache.FileEntry> entries = new ArrayList<>();
+        for (File file : batch) {
+            ScanCache.FileEntry entry = cache.getFile(file);
+            if (entry != null && entry.fullContentFingerprint == 0) {
+                files.add(file);
+                entries.add(entry);
+            }
+        }
+        if (!files.isEmpty()) {
+            long[][] fingerprints = ContentFingerprint.fingerprintAll(files);
+            for (int i = 0; i < fingerprints.length; i++) {
+                entries.get(i).contentFingerprint = fingerprints[i][0];
+                entries.get(i).fullContentFingerprint = fingerprints[i][1];
+            }
+        }
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            listenerExecutor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Add a few batches from the queue to the session and pass them to the listener. Runs on the listener's thread.
+     */
+    private void drain() {
+        drainScheduled.set(false);
+        if (finished) {
+            return;
+        }
+        ArrayList<ImageFile> found = new ArrayList<>();
+        List<File> batch;
+        for (int drained = 0; drained < BATCHES_PER_DRAIN && (batch = queue.poll()) != null; drained++) {
+            found.addAll(ImageFileOperations.fetchScannedImageFiles(batch));
+        }
+        if (!found.isEmpty() && listener != null) {
+            listener.imagesFound(found);
+        }
+        if (!queue.isEmpty()) {
+            scheduleDrain();
+        } else if (scanDone) {
+            finish(false);
+        }
+    }
+
+    private void finish(boolean cancelled) {
+        if (!finished) {
+            finished = true;
+            if (listener != null) {
+                listener.finished(cancelled);
+            }
+        }
+    }
+}
@@ -1,18 +1,26 @@
 package utils;
 
 import com.sun.istack.internal.Nullable;
+import model.FingerprintIndex;
 import model.ImageFile;
 
+import model.MutationJournal.Mutation;
 import model.StateManager;
 import model.Tag;
+import model.TagDictionary;
 import model.UserTagData;
 import gui.Dialogs;
+import javafx.application.Platform;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayDeque;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 
 import static utils.FileOperations.*;
 import static utils.FileOperations.FileOperationsResponse.FAILURE;
@@ -44,9 +52,13 @@ public class ImageFileOperations {
         if (response == SUCCESS) {
             String oldName = imageFile.getCurrentName();
             imageFile.generalReName(newName);
-            StateManager.userData.resetImageFileKey(oldName);
-            StateManager.sessionData.resetImageFileKey(oldName);
             imageFilePath = Paths.get(imageFilePath.toAbsolutePath().toString(), newName);
+            imageFile.setFile(imageFilePath.toFile());
+            StateManager.userData.resetImageFileKey(imageFile, oldName, currentImageFile);
+            StateManager.sessionData.resetImageFileKey(imageFile, oldName, currentImageFile);
+            String timeStamp = imageFile.getImageLogs().get(imageFile.getImageLogs().size() - 1).getTimeStamp();
+            StateManager.recordMutation(Mutation.RENAME_IMAGE, currentImageFile.getAbsolutePath(),
+                    imageFilePath.toString(), timeStamp);
         } else if (response == FILENAME_TAKEN) {
             String suffixedFileName = Dialogs.showFileExistsAlert(currentImageFile.getParentFile(), newName,
                     StateManager.userData.getImageFileNames());
@@ -59,7 +71,6 @@ public class ImageFileOperations {
             Dialogs.showErrorAlert("Renaming Error", "Error",
                     "There was an error renaming your file");
         }
-        imageFile.setFile(imageFilePath.toFile());
         return imageFile;
     }
 
@@ -85,9 +96,11 @@ public class ImageFileOperations {
         if (response == FILENAME_TAKEN) {
             String suffixedFileName = Dialogs.showFileExistsAlert(newDirectory, newFile.getName(), null);
 
-            if (suffixedFileName != null) {
+            // Rename the file in place, then move it under its new name
+            if (suffixedFileName != null && renameFile(oldFile, suffixedFileName) == SUCCESS) {
                 imageFile.generalReName(suffixedFileName);
-                moveFile(imageFile.getThisFile(), newDirectory.toPath());
+                newFile = new File(newDirectory, suffixedFileName);
+                response = moveFile(new File(oldFile.getParentFile(), suffixedFileName), newDirectory.toPath());
             } else {
                 // Don't move
                 newFile = null;
@@ -95,40 +108,229 @@ public class ImageFileOperations {
         } else if(response == FAILURE) {
             Dialogs.showErrorAlert("Move Error", "Error", "There was an error moving your file");
         }
-        imageFile.setFile(newFile);
-        StateManager.sessionData.resetImageFileKey(oldName);
-        StateManager.userData.resetImageFileKey(oldName);
+        if (newFile != null && response == SUCCESS) {
+            imageFile.setFile(newFile);
+            StateManager.sessionData.resetImageFileKey(imageFile, oldName, oldFile);
+            StateManager.userData.resetImageFileKey(imageFile, oldName, oldFile);
+            StateManager.recordMutation(Mutation.MOVE_IMAGE, oldFile.getAbsolutePath(), newFile.getAbsolutePath());
+        }
         return newFile;
     }
 
     /**
-     * Fetch images in a given directory and handle various possible events.
+     * Start fetching the images in a given directory in the background. The images are added to the session as they
+     * are found.
+     * <p>
+     * Directories unchanged since the last scan are not listed again, and a file unchanged since it was last fetched
+     * is found by the image id remembered in the scan cache. If turned on, files are taken to be images by their
+     * contents rather than their extension, and fingerprinted so files moved outside the program are re-attached.
      *
      * @param directory the directory to fetch from
+     * @return the running discovery, to listen to or cancel
      */
-    public static void fetchImageFiles(File directory) {
-        ArrayDeque<String> acceptedExtensions = new ArrayDeque<>();
-        acceptedExtensions.addAll(Arrays.asList(ACCEPTED_EXTENSIONS));
-        try {
-            // Get a list of files from the directory that have an accepted extension
-            ArrayDeque<File> filesFromDir = fetchFromDirectory(directory, acceptedExtensions);
-            for (File file : filesFromDir) {
-                if (StateManager.userData.existsInMap(file)) {
-                    // The file name already exists in our records
-                    ImageFile imageFile = StateManager.userData.getImageFileWithFile(file);
-                    processFetchedImageFile(null, imageFile);
-
-                } else {
-                    // Image is new. Process it as new
-                    processFetchedImageFile(file, null);
+    public static ImageDiscovery fetchImageFiles(File directory) {
+        HashSet<String> acceptedExtensions = new HashSet<>(Arrays.asList(ACCEPTED_EXTENSIONS));
+        DirectoryScanner scanner = new DirectoryScanner(acceptedExtensions, StateManager.scanCache);
+        scanner.setSniffContent(ImageTypeDetector.ENABLED);
+        ImageDiscovery discovery = new ImageDiscovery(directory.getAbsoluteFile(), scanner, Platform::runLater);
+        discovery.setFingerprintContent(ContentFingerprint.ENABLED);
+        discovery.start();
+        return discovery;
+    }
+
+    /**
+     * Add scanned image files that are not in the session yet to the session, and to the user's data if they are
+     * new. A file not on record whose content fingerprints match an image that lost its file is taken to be that
+     * image, renamed or moved outside the program.
+     *
+     * @param files the files found by a scan
+     * @return the ImageFiles added to the session
+     */
+    static ArrayList<ImageFile> fetchScannedImageFiles(List<File> files) {
+        ScanCache scanCache = StateManager.scanCache;
+        ArrayList<ImageFile> fetched = new ArrayList<>();
+        for (File file : files) {
+            ScanCache.FileEntry cached = scanCache.getFile(file);
+            ImageFile imageFile = cached == null || cached.getImageId() == 0 ? null
+                    : StateManager.userData.getImageFileWithId(cached.getImageId());
+            if (imageFile == null || !imageFile.getThisFile().equals(file)) {
+                imageFile = StateManager.userData.getImageFileWithFile(file);
+            }
+            long fingerprint = cached == null ? 0 : cached.getContentFingerprint();
+            long fullFingerprint = cached == null ? 0 : cached.getFullContentFingerprint();
+            if (imageFile == null && fingerprint != 0) {
+                imageFile = reattachMovedImageFile(file, fingerprint, fullFingerprint);
+            }
+            if (imageFile != null) {
+                // The file already exists in our records; it may have been added by the directory watcher already
+                if (StateManager.sessionData.getImageFileWithId(imageFile.getId()) != null) {
+                    continue;
                 }
+                processFetchedImageFile(null, imageFile);
+
+            } else {
+                // Image is new. Process it as new
+                imageFile = processFetchedImageFile(file, null);
             }
-        } catch (IllegalArgumentException e) {
-//            e.printStackTrace();
-            Dialogs.showErrorAlert("Error", "Fetch Error",
-                    "There was an error fetching your files. You sure that folder exists?");
+            recordFingerprint(imageFile, fingerprint, fullFingerprint);
+            scanCache.setImageId(file, imageFile.getId());
+            fetched.add(imageFile);
+        }
+        return fetched;
+    }
+
+    /**
+     * A file that appeared in the session's directory and is an image, with its content fingerprints.
+     */
+    public static class CreatedImage {
+        private final File file;
+
+        private final long fingerprint;
 
+        private final long fullFingerprint;
+
+        private CreatedImage(File file, long fingerprint, long fullFingerprint) {
+            this.file = file;
+            this.fingerprint = fingerprint;
+            this.fullFingerprint = fullFingerprint;
+        }
+    }
+
+    /**
+     * Check if a file that appeared in the session's directory is an image, and take its content fingerprints if
+     * they are enabled. This reads the file, so it is meant to run off the JavaFX application thread; the image is
+     * then added with {@link #fetchCreatedImageFile(CreatedImage)}.
+     *
+     * @param file       the file
+     * @param attributes the attributes of the file
+     * @return the image found, or null if the file is not an image
+     */
+    public static CreatedImage inspectCreatedFile(File file, BasicFileAttributes attributes) {
+        String fileName = file.getName();
+        if (!attributes.isRegularFile() || fileName.startsWith(".")) {
+            return null;
         }
+        int dot = fileName.lastIndexOf('.');
+        boolean acceptedExtension = dot >= 0 && Arrays.asList(ACCEPTED_EXTENSIONS).contains(fileName.substring(dot));
+        // A file still being copied in may not have its first bytes yet, so it is judged by its extension
+        boolean image = ImageTypeDetector.ENABLED && attributes.size() > 0
+                ? ImageTypeDetector.isImage(ImageTypeDetector.detect(file)) : acceptedExtension;
+        if (!image) {
+            return null;
+        }
+        long fingerprint = 0;
+        long fullFingerprint = 0;
+        if (ContentFingerprint.ENABLED) {
+            try {
+                fingerprint = ContentFingerprint.quick(file);
+                fullFingerprint = ContentFingerprint.full(file);
+            } catch (IOException e) {
+                // Still being written or already gone; take it as a new image
+                fingerprint = 0;
+                fullFingerprint = 0;
+            }
+        }
+        return new CreatedImage(file, fingerprint, fullFingerprint);
+    }
+
+    /**
+     * Add an image that appeared in the session's directory to the session. An image on record that lost its file
+     * and has the same content fingerprints is given the new file.
+     *
+     * @param createdImage the image, as found by {@link #inspectCreatedFile(File, BasicFileAttributes)}
+     * @return the ImageFile added to the session, or null if the file is already in the session
+     */
+    public static ImageFile fetchCreatedImageFile(CreatedImage createdImage) {
+        File file = createdImage.file;
+        if (StateManager.sessionData.existsInMap(file)) {
+            return null;
+        }
+        ImageFile imageFile = StateManager.userData.getImageFileWithFile(file);
+        if (imageFile == null && createdImage.fingerprint != 0) {
+            imageFile = reattachMovedImageFile(file, createdImage.fingerprint, createdImage.fullFingerprint);
+        }
+        if (imageFile != null) {
+            processFetchedImageFile(null, imageFile);
+        } else {
+            imageFile = processFetchedImageFile(file, null);
+        }
+        recordFingerprint(imageFile, createdImage.fingerprint, createdImage.fullFingerprint);
+        return imageFile;
+    }
+
+    /**
+     * Find the image on record that lost its file and has the given content fingerprints, and give it the file the
+     * fingerprints were taken from. The quick fingerprint finds the candidates, and the full fingerprints of the file
+     * and of a candidate must agree, so an image whose full fingerprint was never taken is not re-attached. An image
+     * whose file still exists is not taken either, since the new file is a copy of it. The file itself is not read.
+     *
+     * @param file            the file not on record
+     * @param fingerprint     the quick fingerprint of the file
+     * @param fullFingerprint the full fingerprint of the file, or 0 if it was not taken
+     * @return the image given the file, or null if there is none
+     */
+    private static ImageFile reattachMovedImageFile(File file, long fingerprint, long fullFingerprint) {
+        if (fullFingerprint == 0) {
+            return null;
+        }
+        FingerprintIndex fingerprintIndex = StateManager.userData.getFingerprintIndex();
+        CompressedBitmap imageIds = fingerprintIndex.getImageIds(fingerprint);
+        for (ImageFile imageFile : StateManager.userData.getImageFilesWithIds(imageIds)) {
+            File oldFile = imageFile.getThisFile();
+            if (oldFile.exists()) {
+                continue;
+            }
+            if (fullFingerprint == fingerprintIndex.getFull(imageFile.getId())) {
+                String oldName = imageFile.getCurrentName();
+                if (!oldFile.getName().equals(file.getName())) {
+                    imageFile.generalReName(file.getName());
+                }
+                imageFile.setFile(file);
+                StateManager.userData.resetImageFileKey(imageFile, oldName, oldFile);
+                StateManager.sessionData.resetImageFileKey(imageFile, oldName, oldFile);
+                StateManager.recordMutation(Mutation.MOVE_IMAGE, oldFile.getAbsolutePath(), file.getAbsolutePath());
+                return imageFile;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Record the content fingerprints of an image if they changed.
+     *
+     * @param imageFile       the image
+     * @param fingerprint     the quick fingerprint of its file, or 0 if it was not taken
+     * @param fullFingerprint the full fingerprint of its file, or 0 if it was not taken
+     */
+    private static void recordFingerprint(ImageFile imageFile, long fingerprint, long fullFingerprint) {
+        FingerprintIndex fingerprintIndex = StateManager.userData.getFingerprintIndex();
+        if (fingerprint == 0 || fingerprintIndex.get(imageFile.getId()) == fingerprint
+                && (fullFingerprint == 0 || fingerprintIndex.getFull(imageFile.getId()) == fullFingerprint)) {
+            return;
+        }
+        StateManager.userData.setFingerprint(imageFile, fingerprint, fullFingerprint);
+        StateManager.recordMutation(Mutation.SET_FINGERPRINT, imageFile.getThisFile().getAbsolutePath(),
+                Long.toString(fingerprint), Long.toString(fullFingerprint));
+    }
+
+    /**
+     * Remove a file, or every image under a directory, that went away from the session's directory from the
+     * session. The images stay in the user's data.
+     *
+     * @param file the file or directory
+     * @return the ImageFiles removed from the session
+     */
+    public static ArrayList<ImageFile> removeDeletedImageFiles(File file) {
+        ArrayList<ImageFile> removed = StateManager.sessionData.getImageFilesWithIds(
+                StateManager.sessionData.getDirectoryIndex().getImageIds(file, true));
+        ImageFile imageFile = StateManager.sessionData.getImageFileWithFile(file);
+        if (imageFile != null) {
+            removed.add(imageFile);
+        }
+        for (ImageFile removedImageFile : removed) {
+            StateManager.sessionData.removeImageFile(removedImageFile);
+        }
+        return removed;
     }
 
     /**
@@ -139,8 +341,9 @@ public class ImageFileOperations {
      *
      * @param file              the file being imported (if this files ImageFile isn't stored already), null otherwise
      * @param existingImageFIle the ImageFile for the file being imported (iff it exists in records), null otherwise
+     * @return the ImageFile added to the session
      */
-    private static void processFetchedImageFile(@Nullable File file,
+    private static ImageFile processFetchedImageFile(@Nullable File file,
                                                 @Nullable ImageFile existingImageFIle) {
         ImageFile fileToProcess;
         if (file == null) {
@@ -153,22 +356,22 @@ public class ImageFileOperations {
             for (String i : beginningName) {
                 if (i.startsWith("@")) {
                     String withoutSymbol = i.substring(1, i.length());
+                    Tag tempTag = TagDictionary.intern(withoutSymbol);
+                    fileToProcess.addTag(tempTag);
                     if (UserTagData.getTagByString(withoutSymbol) == null) {
-                        Tag tempTag = new Tag(withoutSymbol);
-                        fileToProcess.getTagList().add(tempTag);
-                        tempTag.images.add(fileToProcess);
                         UserTagData.addTag(tempTag);
-                    } else {
-                        Tag tempTag = new Tag(withoutSymbol);
-                        fileToProcess.getTagList().add(tempTag);
-                        tempTag.images.add(fileToProcess);
                     }
 
                 }
             }
             StateManager.userData.addImageFileToMap(fileToProcess);
+            StateManager.recordMutation(Mutation.ADD_IMAGE, file.getAbsolutePath());
+            if (!fileToProcess.getTagList().isEmpty()) {
+                StateManager.recordTagChange(fileToProcess);
+            }
         }
         StateManager.sessionData.addImageFileToMap(fileToProcess);
+        return fileToProcess;
     }
 }
 
@@ -0,0 +1,127 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Tells what kind of image a file holds from the magic bytes at its start, rather than from its extension. Only the
+ * first few bytes are read, into a small direct buffer kept by each thread, so sniffing a file costs one open and one
+ * read.
+ * <p>
+ * A verdict is a byte so it can be kept with a file's fingerprint in the {@link ScanCache}; 0 stands for a file that
+ * was not sniffed yet.
+ */
+public class ImageTypeDetector {
+
+    /**
+     * Whether scans accept files by their contents instead of their extension. Off unless turned on with the
+     * cheaptags.sniff system property, since it opens every file in the tree once.
+     */
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("cheaptags.sniff", "false"));
+
+    public static final byte UNKNOWN = 0;
+
+    public static final byte NOT_IMAGE = 1;
+
+    public static final byte JPEG = 2;
+
+    public static final byte PNG = 3;
+
+    public static final byte BMP = 4;
+
+    public static final byte TIFF = 5;
+
+    /**
+     * The number of bytes read from the start of a file, enough for the longest signature.
+     */
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    /**
+     * The buffer each thread reads headers into.
+     */
+    private static final ThreadLocal<ByteBuffer> BUFFERS =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(HEADER_SIZE));
+
+    /**
+     * Sniff the type of a file.
+     *
+     * @param file the file
+     * @return the type, or {@link #NOT_IMAGE} if the file is not an accepted image or could not be read
+     */
+    public static byte detect(File file) {
+        return detect(file.toPath());
+    }
+
+    /**
+     * Sniff the type of a file.
+     *
+     * @param path the path of the file
+     * @return the type, or {@link #NOT_IMAGE} if the file is not an accepted image or could not be read
+     */
+    public static byte detect(Path path) {
+        ByteBuffer buffer = BUFFERS.get();
+        buffer.clear();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                // Keep reading; a short read does not mean the end of the file
+            }
+        } catch (IOException e) {
+            // Gone, locked or unreadable; it cannot be shown either
+            return NOT_IMAGE;
+        }
+        buffer.flip();
+        return detect(buffer);
+    }
+
+    /**
+     * Sniff the type of an image from its first bytes.
+     *
+     * @param header the first bytes of the file, from its position to its limit
+     * @return the type, or {@link #NOT_IMAGE} if the bytes do not start an accepted image
+     */
+    static byte detect(ByteBuffer header) {
+        int start = header.position();
+        int length = header.remaining();
+        if (length >= 3 && (header.get(start) & 0xFF) == 0xFF && (header.get(start + 1) & 0xFF) == 0xD8
+                && (header.get(start + 2) & 0xFF) == 0xFF) {
+            return JPEG;
+        }
+        if (length >= PNG_SIGNATURE.length && startsWith(header, PNG_SIGNATURE)) {
+            return PNG;
+        }
+        if (length >= 4 && (startsWith(header, new byte[]{'I', 'I', 42, 0})
+                || startsWith(header, new byte[]{'M', 'M', 0, 42}))) {
+            return TIFF;
+        }
+        if (length >= 2 && header.get(start) == 'B' && header.get(start + 1) == 'M') {
+            return BMP;
+        }
+        return NOT_IMAGE;
+    }
+
+    /**
+     * Check if a verdict is one of the accepted image types.
+     *
+     * @param type the verdict
+     * @return true if the file is an image
+     */
+    public static boolean isImage(byte type) {
+        return type > NOT_IMAGE;
+    }
+
+    private static boolean startsWith(ByteBuffer header, byte[] signature) {
+        int start = header.position();
+        for (int i = 0; i < signature.length; i++) {
+            if (header.get(start + i) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,81 @@
+package utils;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Computes the difference hash (dHash) of an image: the image is shrunk to 9 by 8 cells of average brightness, and
+ * each of the 64 bits says whether a cell is brighter than the cell to its right. Copies of an image that were
+ * re-encoded, resized or slightly edited get hashes only a few bits apart.
+ * <p>
+ * A hash is never 0, so 0 can stand for an image that was not hashed.
+ */
+public class PerceptualHash {
+
+    /**
+     * The greatest number of differing bits for two images to count as near duplicates.
+     */
+    public static final int NEAR_DUPLICATE_DISTANCE = 10;
+
+    private static final int COLUMNS = 9;
+
+    private static final int ROWS = 8;
+
+    /**
+     * The least number of pixels decoded for each cell, in each direction, when the image is subsampled.
+     */
+    private static final int PIXELS_PER_CELL = 8;
+
+    /**
+     * Compute the difference hash of an image file. Only every few pixels are decoded, as many as the cells need.
+     *
+     * @param file the image file
+     * @return the hash
+     * @throws IOException if the file could not be read or is not an image ImageIO can decode
+     */
+    public static long dHash(File file) throws IOException {
+        return dHash(ImageDecoder.decode(file, COLUMNS * PIXELS_PER_CELL, ROWS * PIXELS_PER_CELL));
+    }
+
+    /**
+     * Compute the difference hash of a decoded image.
+     *
+     * @param image the image
+     * @return the hash
+     */
+    public static long dHash(BufferedImage image) {
+        double[][] brightness = new double[ROWS][COLUMNS];
+        int width = image.getWidth();
+        int height = image.getHeight();
+        for (int row = 0; row < ROWS; row++) {
+            int top = row * height / ROWS;
+            int bottom = Math.max(top + 1, (row + 1) * height / ROWS);
+            for (int column = 0; column < COLUMNS; column++) {
+                int left = column * width / COLUMNS;
+                int right = Math.max(left + 1, (column + 1) * width / COLUMNS);
+                double sum = 0;
+                int count = 0;
+                for (int y = top; y < bottom && y < height; y++) {
+                    for (int x = left; x < right && x < width; x++) {
+                        int rgb = image.getRGB(x, y);
+                        sum += 0.299 * (rgb >> 16 & 0xFF) + 0.587 * (rgb >> 8 & 0xFF) + 0.114 * (rgb & 0xFF);
+                        count++;
+                    }
+                }
+                brightness[row][column] = count == 0 ? 0 : sum / count;
+            }
+        }
+        long hash = 0;
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS - 1; column++) {
+                hash <<= 1;
+                if (brightness[row][column] > brightness[row][column + 1]) {
+                    hash |= 1;
+                }
+            }
+        }
+        // A flat image hashes to 0, which stands for no hash
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,110 @@
+package utils;
+
+import model.ImageFile;
+import model.MutationJournal.Mutation;
+import model.StateManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Executor;
+
+/**
+ * Computes the perceptual hashes of images that do not have one yet on a background thread, and stores each batch of
+ * hashes in the user's data on the listener's thread. Images that cannot be decoded are skipped.
+ */
+public class PerceptualHashJob {
+
+    /**
+     * The number of hashes stored at a time.
+     */
+    private static final int BATCH_SIZE = 20;
+
+    private final ArrayList<ImageFile> imageFiles = new ArrayList<>();
+
+    /**
+     * Stores the hashes, such as on the JavaFX application thread.
+     */
+    private final Executor resultExecutor;
+
+    private volatile boolean cancelled;
+
+    /**
+     * Constructs a new job for the given images. Must be called on the thread the hashes are stored on.
+     *
+     * @param candidates     the images to hash; those that already have a hash are left out
+     * @param resultExecutor stores the hashes
+     */
+    public PerceptualHashJob(Collection<ImageFile> candidates, Executor resultExecutor) {
+        for (ImageFile imageFile : candidates) {
+            if (StateManager.userData.getPerceptualHashIndex().get(imageFile.getId()) == 0) {
+                imageFiles.add(imageFile);
+            }
+        }
+        this.resultExecutor = resultExecutor;
+    }
+
+    /**
+     * Get the number of images this job hashes.
+     *
+     * @return the number of images
+     */
+    public int size() {
+        return imageFiles.size();
+    }
+
+    /**
+     * Start hashing on a background thread.
+     */
+    public void start() {
+        if (imageFiles.isEmpty()) {
+            return;
+        }
+        // Files are read on the background thread, so take them from the ImageFiles now
+        ArrayList<File> files = new ArrayList<>();
+        for (ImageFile imageFile : imageFiles) {
+            files.add(imageFile.getThisFile());
+        }
+        Thread thread = new Thread(() -> {
+            for (int start = 0; start < files.size() && !cancelled; start += BATCH_SIZE) {
+                int end = Math.min(files.size(), start + BATCH_SIZE);
+                long[] hashes = new long[end - start];
+                for (int i = start; i < end && !cancelled; i++) {
+                    try {
+                        hashes[i - start] = PerceptualHash.dHash(files.get(i));
+                    } catch (IOException | RuntimeException e) {
+                        // Not an image that can be decoded, or it went away; left at 0
+                    }
+                }
+                int batchStart = start;
+                resultExecutor.execute(() -> store(batchStart, end, hashes, files));
+            }
+        }, "perceptual-hash");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Stop hashing. The hashes already stored stay.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Store a batch of hashes, skipping images that moved since they were hashed.
+     */
+    private void store(int start, int end, long[] hashes, ArrayList<File> files) {
+        for (int i = start; i < end; i++) {
+            ImageFile imageFile = imageFiles.get(i);
+            long hash = hashes[i - start];
+            if (hash != 0 && imageFile.getThisFile().equals(files.get(i))) {
+                StateManager.userData.setPerceptualHash(imageFile, hash);
+                StateManager.recordMutation(Mutation.SET_PERCEPTUAL_HASH,
+                        imageFile.getThisFile().getAbsolutePath(), Long.toString(hash));
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * A trie of weighted values by key, for completing a prefix to the highest weighted values whose keys start with it.
+ * Keys are compared in lower case, and several values may share a key.
+ * <p>
+ * Each node remembers the highest weight in its subtree, so the best completions are found without visiting the
+ * rest of the subtree.
+ *
+ * @param <T> the type of the values
+ */
+public class PrefixTrie<T> {
+
+    private static class Node<T> {
+        /**
+         * The key of the values at this node, which every key below it starts with.
+         */
+        final String prefix;
+
+        final HashMap<Character, Node<T>> children = new HashMap<>();
+
+        final ArrayList<Entry<T>> entries = new ArrayList<>();
+
+        /**
+         * The highest weight of an entry in this subtree.
+         */
+        int best = Integer.MIN_VALUE;
+
+        Node(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    private static class Entry<T> {
+        final String key;
+
+        final T value;
+
+        int weight;
+
+        Entry(String key, T value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A node or entry waiting to be visited by {@link #complete(String, int)}.
+     */
+    private static class Candidate<T> {
+        final int weight;
+
+        final String key;
+
+        final Node<T> node;
+
+        final Entry<T> entry;
+
+        Candidate(Node<T> node) {
+            this.weight = node.best;
+            this.key = node.prefix;
+            this.node = node;
+            this.entry = null;
+        }
+
+        Candidate(Entry<T> entry) {
+            this.weight = entry.weight;
+            this.key = entry.key.toLowerCase();
+            this.node = null;
+            this.entry = entry;
+        }
+    }
+
+    private final Node<T> root = new Node<>("");
+
+    private int size;
+
+    /**
+     * Add a value under the given key, or change its weight if it is already there.
+     *
+     * @param key    the key
+     * @param value  the value
+     * @param weight how highly the value ranks among completions
+     */
+    public void put(String key, T value, int weight) {
+        ArrayList<Node<T>> path = pathTo(key.toLowerCase(), true);
+        Node<T> node = path.get(path.size() - 1);
+        Entry<T> entry = findEntry(node, value);
+        if (entry == null) {
+            node.entries.add(new Entry<>(key, value, weight));
+            size++;
+        } else {
+            entry.weight = weight;
+        }
+        updateBest(path);
+    }
+
+    /**
+     * Remove a value from under the given key.
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    public void remove(String key, T value) {
+        ArrayList<Node<T>> path = pathTo(key.toLowerCase(), false);
+        if (path == null) {
+            return;
+        }
+        Node<T> node = path.get(path.size() - 1);
+        Entry<T> entry = findEntry(node, value);
+        if (entry != null) {
+            node.entries.remove(entry);
+            size--;
+            // Drop nodes left with nothing below them
+            for (int i = path.size() - 1; i > 0; i--) {
+                Node<T> child = path.get(i);
+                if (!child.entries.isEmpty() || !child.children.isEmpty()) {
+                    break;
+                }
+                path.get(i - 1).children.remove(child.prefix.charAt(child.prefix.length() - 1));
+            }
+            updateBest(path);
+        }
+    }
+
+    /**
+     * Remove every value.
+     */
+    public void clear() {
+        root.children.clear();
+        root.entries.clear();
+        root.best = Integer.MIN_VALUE;
+        size = 0;
+    }
+
+    /**
+     * Get the number of values in the trie.
+     *
+     * @return the number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the highest weighted values whose keys start with the given prefix, highest weight first. Values of equal
+     * weight are ordered by key.
+     *
+     * @param prefix the prefix
+     * @param limit  the most values to return
+     * @return a new list of at most limit values
+     */
+    public ArrayList<T> complete(String prefix, int limit) {
+        ArrayList<T> completions = new ArrayList<>();
+        ArrayList<Node<T>> path = pathTo(prefix.toLowerCase(), false);
+        if (path == null || limit <= 0) {
+            return completions;
+        }
+
+        // Best first over nodes (ranked by the best weight below them) and entries together
+        PriorityQueue<Candidate<T>> queue = new PriorityQueue<>((first, second) -> {
+            int byWeight = Integer.compare(second.weight, first.weight);
+            return byWeight != 0 ? byWeight : first.key.compareTo(second.key);
+        });
+        queue.add(new Candidate<>(path.get(path.size() - 1)));
+        while (!queue.isEmpty() && completions.size() < limit) {
+            Candidate<T> candidate = queue.poll();
+            if (candidate.entry != null) {
+                completions.add(candidate.entry.value);
+            } else {
+                for (Entry<T> entry : candidate.node.entries) {
+                    queue.add(new Candidate<>(entry));
+                }
+                for (Node<T> child : candidate.node.children.values()) {
+                    queue.add(new Candidate<>(child));
+                }
+            }
+        }
+        return completions;
+    }
+
+    /**
+     * Get the nodes from the root to the node of the given key.
+     *
+     * @param key    the key, in lower case
+     * @param create whether to create missing nodes
+     * @return the nodes, or null if the key has no node and create is false
+     */
+    private ArrayList<Node<T>> pathTo(String key, boolean create) {
+        ArrayList<Node<T>> path = new ArrayList<>(key.length() + 1);
+        Node<T> node = root;
+        path.add(node);
+        for (int i = 0; i < key.length(); i++) {
+            Node<T> child = node.children.get(key.charAt(i));
+            if (child == null) {
+                if (!create) {
+                    return null;
+                }
+                child = new Node<>(key.substring(0, i + 1));
+                node.children.put(key.charAt(i), child);
+            }
+            node = child;
+            path.add(node);
+        }
+        return path;
+    }
+
+    private Entry<T> findEntry(Node<T> node, T value) {
+        for (Entry<T> entry : node.entries) {
+            if (entry.value.equals(value)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Recompute the best weight of each node on the path, from the bottom up.
+     */
+    private void updateBest(ArrayList<Node<T>> path) {
+        for (int i = path.size() - 1; i >= 0; i--) {
+            Node<T> node = path.get(i);
+            int best = Integer.MIN_VALUE;
+            for (Entry<T> entry : node.entries) {
+                best = Math.max(best, entry.weight);
+            }
+            for (Node<T> child : node.children.values()) {
+                best = Math.max(best, child.best);
+            }
+            node.best = best;
+        }
+    }
+}
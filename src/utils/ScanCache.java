@@ -0,0 +1,268 @@
+package utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers what each scanned directory held when it was last listed: its modification time, a fingerprint of each
+ * accepted file in it, and its subdirectories. A directory whose modification time has not changed since does not
+ * have to be listed again. The cache is only a shortcut and is kept apart from the user's data, so losing it costs
+ * one full scan.
+ * <p>
+ * Each directory remembers the filter it was listed with, a set of accepted extensions or content sniffing, so a
+ * scan with another filter lists it again instead of taking files the filter would not accept.
+ */
+public class ScanCache {
+
+    private static final int MAGIC = 0x43534341;
+
+    private static final int VERSION = 5;
+
+    /**
+     * A fingerprint of a file, and the id of the image it was fetched as.
+     */
+    public static class FileEntry {
+        final String name;
+
+        final long size;
+
+        final long modified;
+
+        /**
+         * The id of the image fetched from this file, or 0 if it was not fetched yet.
+         */
+        int imageId;
+
+        /**
+         * The {@link ContentFingerprint} of the file, or 0 if it was not fingerprinted yet.
+         */
+        long contentFingerprint;
+
+        /**
+         * The full {@link ContentFingerprint} of the file, or 0 if it was not fingerprinted yet.
+         */
+        long fullContentFingerprint;
+
+        /**
+         * The verdict of the {@link ImageTypeDetector} on the file, or {@link ImageTypeDetector#UNKNOWN} if it was
+         * accepted by its extension.
+         */
+        final byte imageType;
+
+        FileEntry(String name, long size, long modified, int imageId, long contentFingerprint,
+                  long fullContentFingerprint, byte imageType) {
+            this.name = name;
+            this.size = size;
+            this.modified = modified;
+            this.imageId = imageId;
+            this.contentFingerprint = contentFingerprint;
+            this.fullContentFingerprint = fullContentFingerprint;
+            this.imageType = imageType;
+        }
+
+        /**
+         * Check if a file with the given size and modification time is unchanged from this fingerprint.
+         */
+        boolean matches(long size, long modified) {
+            return this.size == size && this.modified == modified;
+        }
+
+        public int getImageId() {
+            return imageId;
+        }
+
+        public long getContentFingerprint() {
+            return contentFingerprint;
+        }
+
+        public long getFullContentFingerprint() {
+            return fullContentFingerprint;
+        }
+
+        /**
+         * Check if the file was accepted by the scan that listed it. A scan sniffing contents also remembers the
+         * files it rejected, so they are not read again.
+         */
+        boolean isAccepted() {
+            return imageType != ImageTypeDetector.NOT_IMAGE;
+        }
+    }
+
+    /**
+     * What a directory held when it was last listed.
+     */
+    static class DirectoryEntry {
+        final long modified;
+
+        /**
+         * The filter the directory was listed with, as given by the scanner.
+         */
+        final int filter;
+
+        /**
+         * The accepted files directly in the directory, by name, in the order the directory listed them. With
+         * content sniffing, the files rejected by their contents are kept too.
+         */
+        final LinkedHashMap<String, FileEntry> files = new LinkedHashMap<>();
+
+        final ArrayList<String> subdirectories = new ArrayList<>();
+
+        DirectoryEntry(long modified, int filter) {
+            this.modified = modified;
+            this.filter = filter;
+        }
+    }
+
+    /**
+     * The entry of each directory, by absolute path. Written to by the parallel tasks of a scan.
+     */
+    private final ConcurrentHashMap<String, DirectoryEntry> directories = new ConcurrentHashMap<>();
+
+    /**
+     * Read a cache from the given file.
+     *
+     * @param cacheFile the file to read
+     * @return the cache read, or an empty cache if the file does not exist or cannot be read
+     */
+    public static ScanCache load(File cacheFile) {
+        ScanCache cache = new ScanCache();
+        if (!cacheFile.exists()) {
+            return cache;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return cache;
+            }
+            int directoryCount = in.readInt();
+            for (int i = 0; i < directoryCount; i++) {
+                String path = in.readUTF();
+                DirectoryEntry directory = new DirectoryEntry(in.readLong(), in.readInt());
+                int fileCount = in.readInt();
+                for (int j = 0; j < fileCount; j++) {
+                    FileEntry file = new FileEntry(in.readUTF(), in.readLong(), in.readLong(), in.readInt(),
+                            in.readLong(), in.readLong(), in.readByte());
+                    directory.files.put(file.name, file);
+                }
+                int subdirectoryCount = in.readInt();
+                for (int j = 0; j < subdirectoryCount; j++) {
+                    directory.subdirectories.add(in.readUTF());
+                }
+                cache.directories.put(path, directory);
+            }
+        } catch (IOException e) {
+            // A damaged cache is thrown away and rebuilt by the next scans
+            e.printStackTrace();
+            cache.directories.clear();
+        }
+        return cache;
+    }
+
+    /**
+     * Write this cache to the given file.
+     *
+     * @param cacheFile the file to write
+     * @throws IOException if the file could not be written
+     */
+    public void save(File cacheFile) throws IOException {
+        File parent = cacheFile.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(directories.size());
+            for (Map.Entry<String, DirectoryEntry> entry : directories.entrySet()) {
+                DirectoryEntry directory = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(directory.modified);
+                out.writeInt(directory.filter);
+                out.writeInt(directory.files.size());
+                for (FileEntry file : directory.files.values()) {
+                    out.writeUTF(file.name);
+                    out.writeLong(file.size);
+                    out.writeLong(file.modified);
+                    out.writeInt(file.imageId);
+                    out.writeLong(file.contentFingerprint);
+                    out.writeLong(file.fullContentFingerprint);
+                    out.writeByte(file.imageType);
+                }
+                out.writeInt(directory.subdirectories.size());
+                for (String subdirectory : directory.subdirectories) {
+                    out.writeUTF(subdirectory);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of directories in this cache.
+     *
+     * @return the number of directories
+     */
+    public int size() {
+        return directories.size();
+    }
+
+    /**
+     * Get the fingerprint of the given file from the last listing of its directory.
+     *
+     * @param file the file
+     * @return the fingerprint, or null if the file was not seen
+     */
+    public FileEntry getFile(File file) {
+        DirectoryEntry directory = directories.get(file.getParent());
+        return directory == null ? null : directory.files.get(file.getName());
+    }
+
+    /**
+     * Remember the id of the image the given file was fetched as, so the next fetch can find it by id.
+     *
+     * @param file    the file
+     * @param imageId the id of the image
+     */
+    public void setImageId(File file, int imageId) {
+        FileEntry entry = getFile(file);
+        if (entry != null) {
+            entry.imageId = imageId;
+        }
+    }
+
+    DirectoryEntry get(String path) {
+        return directories.get(path);
+    }
+
+    /**
+     * Replace the entry of a directory that was listed again. Subdirectories that went away are forgotten along
+     * with every directory below them.
+     */
+    void put(String path, DirectoryEntry directory) {
+        DirectoryEntry previous = directories.put(path, directory);
+        if (previous != null) {
+            for (String subdirectory : previous.subdirectories) {
+                if (!directory.subdirectories.contains(subdirectory)) {
+                    removeTree(path + File.separator + subdirectory);
+                }
+            }
+        }
+    }
+
+    private void removeTree(String path) {
+        DirectoryEntry directory = directories.remove(path);
+        if (directory != null) {
+            for (String subdirectory : directory.subdirectories) {
+                removeTree(path + File.separator + subdirectory);
+            }
+        }
+    }
+}
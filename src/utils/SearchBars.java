@@ -15,28 +15,47 @@ import java.util.regex.Pattern;
  */
 public class SearchBars  {
 
+    /**
+     * The most tags a search by plain text shows.
+     */
+    public static final int TAG_SEARCH_LIMIT = 200;
+
+    /**
+     * Characters that make a search input a regex rather than plain text.
+     */
+    private static final String REGEX_CHARACTERS = "\\^$.|?*+()[]{}";
+
     /**
      * this method takes an input from user and searches throw the tag manager,
      * adds all result to an observable list to show on the screen
+     * <p>
+     * Plain text is completed from the tag prefix index, with the tags on the most images first, followed by tags
+     * that contain the text elsewhere in their names, found through the tag trigram index. Any other input is run as
+     * a regex over every tag.
      *
      * @param listView the list to populate
      * @param data the observable list of searching results
      * @param input users input in text field
      *
      */
-    public static void TagSearchByText(ListView listView, ObservableList data, String input ){
-        ArrayList searchResult = new ArrayList<>();
-
-        Pattern tagSearchPattern = Pattern.compile(input);
-        Matcher tagSearchMatcher;
+    public static void TagSearchByText(ListView<Tag> listView, ObservableList<Tag> data, String input ){
+        ArrayList<Tag> searchResult = new ArrayList<>();
 
         data.clear();
         if (input.isEmpty()) {
             searchResult.clear();
             data = ConfigureJFXControl.populateListViewWithArrayList(listView, UserTagData.getTagList());
+        } else if (isPlainText(input)) {
+            searchResult.addAll(UserTagData.completeTag(input, TAG_SEARCH_LIMIT));
+            if (searchResult.size() < TAG_SEARCH_LIMIT) {
+                searchResult.addAll(UserTagData.findTagsContaining(input, TAG_SEARCH_LIMIT - searchResult.size()));
+            }
+            data.addAll(searchResult);
         } else {
+            Pattern tagSearchPattern = Pattern.compile(input);
+            Matcher tagSearchMatcher = tagSearchPattern.matcher("");
             for (Tag tag : UserTagData.getTagList()) {
-                tagSearchMatcher = tagSearchPattern.matcher(tag.toString().toLowerCase());
+                tagSearchMatcher.reset(tag.toString().toLowerCase());
                 if (tagSearchMatcher.find()) {
                     searchResult.add(tag);
                 }
@@ -44,4 +63,13 @@ public class SearchBars  {
             data.addAll(searchResult);
         }
     }
+
+    private static boolean isPlainText(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            if (REGEX_CHARACTERS.indexOf(input.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
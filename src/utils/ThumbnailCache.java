@@ -0,0 +1,305 @@
+package utils;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps small, pre-scaled copies of images on disk so the tile pane does not decode every full-size file each time it
+ * is built. The thumbnails are appended to one pack file, which is read through a memory mapping, and an index file
+ * says where the thumbnail of each image file is. A thumbnail is keyed by the path, size and modification time of
+ * its file, so a changed file gets a new one.
+ * <p>
+ * Like the {@link ScanCache}, this is only a shortcut kept apart from the user's data; losing it costs decoding every
+ * image once more.
+ */
+public class ThumbnailCache {
+
+    /**
+     * The greatest width and height of a thumbnail, in pixels.
+     */
+    public static final int SIZE = 300;
+
+    private static final int MAGIC = 0x43544843;
+
+    private static final int VERSION = 1;
+
+    /**
+     * Past this size the pack file is started over when the cache is opened, dropping the thumbnails of files that
+     * changed or went away along with the rest.
+     */
+    private static final long MAX_PACK_SIZE = 512L * 1024 * 1024;
+
+    /**
+     * Where a thumbnail is in the pack file, and the fingerprint of the file it was made from.
+     */
+    private static class Entry {
+        final long size;
+
+        final long modified;
+
+        final long offset;
+
+        final int length;
+
+        Entry(long size, long modified, long offset, int length) {
+            this.size = size;
+            this.modified = modified;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Reads a region of the mapped pack file.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    private final File indexFile;
+
+    /**
+     * The entry of each thumbnail, by the absolute path of its file.
+     */
+    private final HashMap<String, Entry> entries = new HashMap<>();
+
+    private final FileChannel pack;
+
+    /**
+     * The mapping of the pack file, which is mapped again once thumbnails are appended past its end.
+     */
+    private MappedByteBuffer mapped;
+
+    /**
+     * Open the cache in the given directory, creating it if it does not exist.
+     *
+     * @param directory the directory the pack and index files are kept in
+     * @return the cache
+     * @throws IOException if the pack file could not be opened
+     */
+    public static ThumbnailCache load(File directory) throws IOException {
+        directory.mkdirs();
+        return new ThumbnailCache(new File(directory, "thumbnails.pack"), new File(directory, "thumbnails.index"));
+    }
+
+    private ThumbnailCache(File packFile, File indexFile) throws IOException {
+        this.indexFile = indexFile;
+        if (packFile.length() > MAX_PACK_SIZE || !readIndex(packFile.length())) {
+            entries.clear();
+            packFile.delete();
+        }
+        pack = FileChannel.open(packFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Read the index, checking that every thumbnail in it is inside the pack file.
+     *
+     * @return false if the index is damaged or does not fit the pack file
+     */
+    private boolean readIndex(long packSize) {
+        if (!indexFile.exists()) {
+            return packSize == 0;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return false;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                Entry entry = new Entry(in.readLong(), in.readLong(), in.readLong(), in.readInt());
+                if (entry.offset + entry.length > packSize) {
+                    return false;
+                }
+                entries.put(path, entry);
+            }
+            return true;
+        } catch (IOException e) {
+            // A damaged cache is thrown away and rebuilt as images are shown
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Write the index of this cache. The thumbnails themselves are already in the pack file.
+     *
+     * @throws IOException if the index could not be written
+     */
+    public synchronized void save() throws IOException {
+        pack.force(false);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> pathAndEntry : entries.entrySet()) {
+                Entry entry = pathAndEntry.getValue();
+                out.writeUTF(pathAndEntry.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.modified);
+                out.writeLong(entry.offset);
+                out.writeInt(entry.length);
+            }
+        }
+    }
+
+    /**
+     * Save the index and close the pack file.
+     */
+    public synchronized void close() {
+        try {
+            save();
+            pack.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Get the number of thumbnails in this cache.
+     *
+     * @return the number of thumbnails
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Open the cached thumbnail of a file.
+     *
+     * @param file the image file
+     * @return a stream of the encoded thumbnail, or null if there is none for the file as it is now
+     */
+    public InputStream open(File file) {
+        long size = file.length();
+        long modified = file.lastModified();
+        Entry entry;
+        ByteBuffer thumbnail;
+        synchronized (this) {
+            entry = entries.get(file.getAbsolutePath());
+            if (entry == null || entry.size != size || entry.modified != modified) {
+                return null;
+            }
+            try {
+                if (mapped == null || entry.offset + entry.length > mapped.capacity()) {
+                    mapped = pack.map(FileChannel.MapMode.READ_ONLY, 0, pack.size());
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+            thumbnail = mapped.duplicate();
+        }
+        thumbnail.position((int) entry.offset);
+        thumbnail.limit((int) entry.offset + entry.length);
+        return new ByteBufferInputStream(thumbnail);
+    }
+
+    /**
+     * Make the thumbnail of a file and add it to the cache, replacing the one it had. A JPEG whose EXIF data holds a
+     * thumbnail of its own as large as a tile gets that one, so the image does not have to be decoded; a smaller one,
+     * such as the usual 160 pixel one, would be scaled up blurry, so the image is decoded instead.
+     *
+     * @param file the image file
+     * @return true if the thumbnail was made, false if the file could not be decoded
+     */
+    public boolean create(File file) {
+        long size = file.length();
+        long modified = file.lastModified();
+        byte[] thumbnail;
+        try {
+            thumbnail = ExifThumbnail.read(file, SIZE);
+            if (thumbnail == null) {
+                thumbnail = encode(file);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Not an image ImageIO can decode, or it went away
+            return false;
+        }
+        synchronized (this) {
+            try {
+                long offset = pack.size();
+                if (offset + thumbnail.length > Integer.MAX_VALUE) {
+                    // The pack file is as large as one mapping can be; it is started over next time
+                    return false;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(thumbnail);
+                while (buffer.hasRemaining()) {
+                    pack.write(buffer, offset + buffer.position());
+                }
+                entries.put(file.getAbsolutePath(), new Entry(size, modified, offset, thumbnail.length));
+                return true;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Decode an image file at a reduced resolution and encode it as a thumbnail, as a JPEG, or as a PNG if it has
+     * transparency.
+     */
+    private static byte[] encode(File file) throws IOException {
+        // Keep at least twice the thumbnail size for a smooth scale
+        BufferedImage image = ImageDecoder.decode(file, 2 * SIZE, 2 * SIZE);
+        double scale = Math.min(1, Math.min((double) SIZE / image.getWidth(), (double) SIZE / image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        boolean alpha = image.getColorModel().hasAlpha();
+        BufferedImage thumbnail = new BufferedImage(width, height,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = thumbnail.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!ImageIO.write(thumbnail, alpha ? "png" : "jpg", out)) {
+            throw new IOException("No image writer for " + file.getName());
+        }
+        return out.toByteArray();
+    }
+}
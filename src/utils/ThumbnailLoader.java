@@ -0,0 +1,198 @@
+package utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Loads thumbnails on a fixed number of background threads, nearest to the part of the gallery in view first. Each
+ * request carries the position of its tile; when the view moves the waiting requests are reordered by their distance
+ * from the new position. A request for a tile that scrolled away or was removed can be cancelled, and its result is
+ * then never delivered.
+ *
+ * @param <T> the type of a loaded thumbnail
+ */
+public class ThumbnailLoader<T> {
+
+    /**
+     * A thumbnail waiting to be loaded.
+     */
+    public class Request {
+        private final File file;
+
+        private final int index;
+
+        private final long sequence;
+
+        private final Consumer<T> callback;
+
+        private volatile boolean cancelled;
+
+        private Request(File file, int index, long sequence, Consumer<T> callback) {
+            this.file = file;
+            this.index = index;
+            this.sequence = sequence;
+            this.callback = callback;
+        }
+
+        /**
+         * Stop the request. If the thumbnail is being loaded already it is thrown away.
+         */
+        public void cancel() {
+            cancelled = true;
+            synchronized (lock) {
+                queue.remove(this);
+            }
+        }
+    }
+
+    /**
+     * Loads the thumbnail of a file. Runs on the loading threads.
+     */
+    private final Function<File, T> decoder;
+
+    /**
+     * Delivers the thumbnails, such as on the JavaFX application thread.
+     */
+    private final Executor resultExecutor;
+
+    private final Object lock = new Object();
+
+    /**
+     * The requests waiting, nearest the focus first. Rebuilt when the focus moves.
+     */
+    private PriorityQueue<Request> queue = new PriorityQueue<>(byDistance(0));
+
+    private int focus;
+
+    private long nextSequence;
+
+    /**
+     * The requests being loaded, so {@link #cancelAll()} reaches them too.
+     */
+    private final ArrayList<Request> loading = new ArrayList<>();
+
+    /**
+     * Constructs a new loader and starts its threads.
+     *
+     * @param threads        the number of thumbnails loaded at once
+     * @param decoder        loads the thumbnail of a file, or returns null if it cannot
+     * @param resultExecutor delivers the thumbnails to the requests' callbacks
+     */
+    public ThumbnailLoader(int threads, Function<File, T> decoder, Executor resultExecutor) {
+        this.decoder = decoder;
+        this.resultExecutor = resultExecutor;
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(this::work, "thumbnail-loader-" + i);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            thread.start();
+        }
+    }
+
+    /**
+     * Ask for the thumbnail of a file.
+     *
+     * @param file     the image file
+     * @param index    the position of the tile the thumbnail is for
+     * @param callback receives the thumbnail, unless the request is cancelled first
+     * @return the request, to cancel it with
+     */
+    public Request load(File file, int index, Consumer<T> callback) {
+        synchronized (lock) {
+            Request request = new Request(file, index, nextSequence++, callback);
+            queue.add(request);
+            lock.notify();
+            return request;
+        }
+    }
+
+    /**
+     * Move the focus, the position of the tile in view that thumbnails nearest to are loaded first.
+     *
+     * @param index the position of the tile
+     */
+    public void setFocus(int index) {
+        synchronized (lock) {
+            if (index != focus) {
+                focus = index;
+                PriorityQueue<Request> reordered = new PriorityQueue<>(Math.max(1, queue.size()), byDistance(index));
+                reordered.addAll(queue);
+                queue = reordered;
+            }
+        }
+    }
+
+    /**
+     * Cancel every request waiting or being loaded.
+     */
+    public void cancelAll() {
+        synchronized (lock) {
+            for (Request request : queue) {
+                request.cancelled = true;
+            }
+            queue.clear();
+            for (Request request : loading) {
+                request.cancelled = true;
+            }
+        }
+    }
+
+    /**
+     * Get the number of requests waiting to be loaded.
+     *
+     * @return the number of requests
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * Take the nearest request and load it, for as long as the program runs.
+     */
+    private void work() {
+        while (true) {
+            Request request;
+            synchronized (lock) {
+                while (queue.isEmpty()) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                request = queue.poll();
+                loading.add(request);
+            }
+            T thumbnail = null;
+            try {
+                thumbnail = request.cancelled ? null : decoder.apply(request.file);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                synchronized (lock) {
+                    loading.remove(request);
+                }
+            }
+            if (thumbnail != null && !request.cancelled) {
+                T loaded = thumbnail;
+                resultExecutor.execute(() -> {
+                    if (!request.cancelled) {
+                        request.callback.accept(loaded);
+                    }
+                });
+            }
+        }
+    }
+
+    private Comparator<Request> byDistance(int focus) {
+        return Comparator.<Request>comparingInt(request -> Math.abs(request.index - focus))
+                .thenComparingLong(request -> request.sequence);
+    }
+}
@@ -0,0 +1,275 @@
+package utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * An index of the trigrams (runs of three characters) in a set of names, for narrowing a substring or regex search
+ * down to the names that can possibly match before running the matcher on them. Names are compared in lower case.
+ * <p>
+ * Trigrams are only taken within words, never across whitespace, so text that skips words of a name, such as its
+ * name with the tags left out, still finds it.
+ */
+public class TrigramIndex {
+
+    /**
+     * The id of each name in the index.
+     */
+    private final HashMap<String, Integer> idsByName = new HashMap<>();
+
+    /**
+     * The name of each id, or null for an id that is free.
+     */
+    private final ArrayList<String> namesById = new ArrayList<>();
+
+    /**
+     * Ids of removed names, given out again so the bitmaps stay dense.
+     */
+    private final ArrayDeque<Integer> freeIds = new ArrayDeque<>();
+
+    /**
+     * The ids of the names containing each trigram.
+     */
+    private final HashMap<Long, CompressedBitmap> idsByTrigram = new HashMap<>();
+
+    /**
+     * Add a name to the index. Adding a name that is already in the index does nothing.
+     *
+     * @param name the name to add
+     */
+    public void add(String name) {
+        if (idsByName.containsKey(name)) {
+            return;
+        }
+        int id;
+        if (freeIds.isEmpty()) {
+            id = namesById.size();
+            namesById.add(name);
+        } else {
+            id = freeIds.pop();
+            namesById.set(id, name);
+        }
+        idsByName.put(name, id);
+        for (long trigram : trigramsOf(name)) {
+            CompressedBitmap ids = idsByTrigram.get(trigram);
+            if (ids == null) {
+                ids = new CompressedBitmap();
+                idsByTrigram.put(trigram, ids);
+            }
+            ids.add(id);
+        }
+    }
+
+    /**
+     * Remove a name from the index.
+     *
+     * @param name the name to remove
+     */
+    public void remove(String name) {
+        Integer id = idsByName.remove(name);
+        if (id == null) {
+            return;
+        }
+        for (long trigram : trigramsOf(name)) {
+            CompressedBitmap ids = idsByTrigram.get(trigram);
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                idsByTrigram.remove(trigram);
+            }
+        }
+        namesById.set(id, null);
+        freeIds.push(id);
+    }
+
+    /**
+     * Remove every name from the index.
+     */
+    public void clear() {
+        idsByName.clear();
+        namesById.clear();
+        freeIds.clear();
+        idsByTrigram.clear();
+    }
+
+    /**
+     * Get the number of names in the index.
+     *
+     * @return the number of names
+     */
+    public int size() {
+        return idsByName.size();
+    }
+
+    /**
+     * Get the names that may contain the given text. Every name that does contain it is returned, but some of the
+     * names returned may not, so the caller still has to check them.
+     *
+     * @param text the text to look for
+     * @return a new collection of candidate names
+     */
+    public Collection<String> candidates(String text) {
+        ArrayList<String> literals = new ArrayList<>();
+        literals.add(text);
+        return candidates(literals);
+    }
+
+    /**
+     * Get the names that may match the given regex, going by the literal text that every match of it must contain.
+     * Every name with a match is returned, but some of the names returned may not have one, so the caller still has
+     * to run the regex on them.
+     *
+     * @param regex the regex to look for
+     * @return a new collection of candidate names
+     */
+    public Collection<String> candidatesForRegex(String regex) {
+        return candidates(requiredLiterals(regex));
+    }
+
+    private Collection<String> candidates(Collection<String> literals) {
+        HashSet<Long> trigrams = new HashSet<>();
+        for (String literal : literals) {
+            trigrams.addAll(trigramsOf(literal));
+        }
+        if (trigrams.isEmpty()) {
+            return new ArrayList<>(idsByName.keySet());
+        }
+
+        // Intersect starting from the rarest trigram, so the intermediate results stay small
+        ArrayList<CompressedBitmap> bitmaps = new ArrayList<>();
+        for (long trigram : trigrams) {
+            CompressedBitmap ids = idsByTrigram.get(trigram);
+            if (ids == null) {
+                return new ArrayList<>();
+            }
+            bitmaps.add(ids);
+        }
+        bitmaps.sort((first, second) -> Integer.compare(first.getCardinality(), second.getCardinality()));
+        CompressedBitmap result = bitmaps.get(0);
+        for (int i = 1; i < bitmaps.size() && !result.isEmpty(); i++) {
+            result = CompressedBitmap.and(result, bitmaps.get(i));
+        }
+
+        ArrayList<String> names = new ArrayList<>(result.getCardinality());
+        result.forEach(id -> names.add(namesById.get(id)));
+        return names;
+    }
+
+    /**
+     * Get the trigrams within the words of the given text in lower case, each packed into a long.
+     */
+    private static ArrayList<Long> trigramsOf(String text) {
+        String lowerCase = text.toLowerCase();
+        ArrayList<Long> trigrams = new ArrayList<>(Math.max(lowerCase.length() - 2, 0));
+        for (int i = 0; i + 2 < lowerCase.length(); i++) {
+            if (Character.isWhitespace(lowerCase.charAt(i)) || Character.isWhitespace(lowerCase.charAt(i + 1))
+                    || Character.isWhitespace(lowerCase.charAt(i + 2))) {
+                continue;
+            }
+            trigrams.add(((long) lowerCase.charAt(i) << 32) | ((long) lowerCase.charAt(i + 1) << 16)
+                    | lowerCase.charAt(i + 2));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Find runs of literal text that every match of the given regex must contain. The search is conservative: text
+     * inside groups or made optional by a quantifier is left out, and a regex with alternation gives no literals at
+     * all.
+     *
+     * @param regex the regex
+     * @return the literal runs, possibly none
+     */
+    static ArrayList<String> requiredLiterals(String regex) {
+        ArrayList<String> literals = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int depth = 0;
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '|') {
+                return new ArrayList<>();
+            } else if (c == '\\' && i + 1 < regex.length()) {
+                char next = regex.charAt(i + 1);
+                if (next == 'Q') {
+                    int end = regex.indexOf("\\E", i + 2);
+                    String quoted = end < 0 ? regex.substring(i + 2) : regex.substring(i + 2, end);
+                    if (depth == 0) {
+                        current.append(quoted);
+                    }
+                    i = end < 0 ? regex.length() : end + 2;
+                    continue;
+                } else if (Character.isLetterOrDigit(next)) {
+                    flush(literals, current);
+                } else if (depth == 0) {
+                    current.append(next);
+                }
+                i += 2;
+                continue;
+            } else if (c == '[') {
+                flush(literals, current);
+                i = skipCharacterClass(regex, i);
+                continue;
+            } else if (c == '(') {
+                flush(literals, current);
+                depth++;
+            } else if (c == ')') {
+                flush(literals, current);
+                depth = Math.max(depth - 1, 0);
+            } else if (c == '?' || c == '*' || c == '{') {
+                // The character before the quantifier may not appear at all
+                if (current.length() > 0) {
+                    current.setLength(current.length() - 1);
+                }
+                flush(literals, current);
+                if (c == '{') {
+                    int end = regex.indexOf('}', i);
+                    i = end < 0 ? regex.length() : end + 1;
+                    continue;
+                }
+            } else if (c == '+' || c == '.' || c == '^' || c == '$') {
+                flush(literals, current);
+            } else if (depth == 0) {
+                current.append(c);
+            }
+            i++;
+        }
+        flush(literals, current);
+        return literals;
+    }
+
+    private static void flush(ArrayList<String> literals, StringBuilder current) {
+        if (current.length() > 0) {
+            literals.add(current.toString());
+            current.setLength(0);
+        }
+    }
+
+    /**
+     * Get the position just after the character class starting at the given position.
+     */
+    private static int skipCharacterClass(String regex, int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        int depth = 1;
+        while (i < regex.length() && depth > 0) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+            }
+            i++;
+        }
+        return i;
+    }
+}
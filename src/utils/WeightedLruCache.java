@@ -0,0 +1,119 @@
+package utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * A cache that holds values up to a total weight, such as decoded images up to a number of bytes of pixels. Once the
+ * weight of the values passes the budget, the least recently used values are evicted first. A value heavier than the
+ * whole budget is not kept at all.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class WeightedLruCache<K, V> {
+
+    /**
+     * The values, least recently used first.
+     */
+    private final LinkedHashMap<K, V> values = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final ToLongFunction<V> weigher;
+
+    private final long maxWeight;
+
+    private long weight;
+
+    /**
+     * Constructs a new empty cache.
+     *
+     * @param maxWeight the greatest total weight of the values kept
+     * @param weigher   gives the weight of a value, which must not change while it is cached
+     */
+    public WeightedLruCache(long maxWeight, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Get a value, marking it the most recently used.
+     *
+     * @param key the key of the value
+     * @return the value, or null if it is not cached
+     */
+    public synchronized V get(K key) {
+        return values.get(key);
+    }
+
+    /**
+     * Check if a value is cached, without marking it used.
+     *
+     * @param key the key of the value
+     * @return true if the value is cached
+     */
+    public synchronized boolean contains(K key) {
+        return values.containsKey(key);
+    }
+
+    /**
+     * Cache a value, replacing the one under the same key, and evict the least recently used values until the
+     * cache is within its budget again.
+     *
+     * @param key   the key of the value
+     * @param value the value
+     */
+    public synchronized void put(K key, V value) {
+        remove(key);
+        long valueWeight = weigher.applyAsLong(value);
+        if (valueWeight > maxWeight) {
+            return;
+        }
+        values.put(key, value);
+        weight += valueWeight;
+        Iterator<Map.Entry<K, V>> eldest = values.entrySet().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            weight -= weigher.applyAsLong(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Remove a value.
+     *
+     * @param key the key of the value
+     */
+    public synchronized void remove(K key) {
+        V value = values.remove(key);
+        if (value != null) {
+            weight -= weigher.applyAsLong(value);
+        }
+    }
+
+    /**
+     * Remove every value.
+     */
+    public synchronized void clear() {
+        values.clear();
+        weight = 0;
+    }
+
+    /**
+     * Get the number of values cached.
+     *
+     * @return the number of values
+     */
+    public synchronized int size() {
+        return values.size();
+    }
+
+    /**
+     * Get the total weight of the values cached.
+     *
+     * @return the weight
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+}